@@ -0,0 +1,129 @@
+#!/usr/bin/env bash
+#
+# Compares the JVM and native builds of fraud-decision-service:
+#   - time-to-first-decision (process start -> first 200 from /CardFraudDecision)
+#   - steady-state throughput (requests/sec)
+#   - RSS after startup and peak RSS after the load run
+#
+# Usage:
+#   bench/jvm-vs-native.sh [--build]
+#
+#   --build   run ./mvnw package (JVM) and ./mvnw package -Dnative first
+#
+# Environment overrides:
+#   STARTUP_RUNS=5      startup measurements per mode (median is reported)
+#   DURATION=30s        load duration per mode
+#   CONCURRENCY=32      concurrent clients
+#   PORT=18080          HTTP port used for the runs
+#   EXTRA_ARGS=...      extra -D options passed to both builds
+#
+# Rules are served from the last-known-good snapshot (fraud.rules.snapshot.path)
+# when MSSQL is not reachable, so both modes evaluate the same rules.
+# Throughput uses `hey` (https://github.com/rakyll/hey) when installed and
+# falls back to a sequential curl loop, which is only indicative.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+STARTUP_RUNS=${STARTUP_RUNS:-5}
+DURATION=${DURATION:-30s}
+CONCURRENCY=${CONCURRENCY:-32}
+PORT=${PORT:-18080}
+EXTRA_ARGS=${EXTRA_ARGS:-}
+PAYLOAD=bench/card-decision.json
+URL="http://localhost:${PORT}/CardFraudDecision"
+OUT_DIR=target/bench
+mkdir -p "$OUT_DIR"
+
+if [[ "${1:-}" == "--build" ]]; then
+    ./mvnw -B package -DskipTests
+    ./mvnw -B package -Dnative -DskipTests
+fi
+
+JVM_CMD=(java -jar target/quarkus-app/quarkus-run.jar)
+NATIVE_BIN=$(ls target/*-runner 2>/dev/null | head -n 1 || true)
+
+now_ms() { date +%s%3N; }
+
+rss_kb() { awk '/^VmRSS/ {print $2}' "/proc/$1/status"; }
+hwm_kb() { awk '/^VmHWM/ {print $2}' "/proc/$1/status"; }
+
+# Starts the app in the background and sets APP_PID
+start_app() {
+    local mode=$1
+    # shellcheck disable=SC2086
+    if [[ "$mode" == "jvm" ]]; then
+        "${JVM_CMD[@]}" -Dquarkus.http.port="$PORT" $EXTRA_ARGS >"$OUT_DIR/$mode.log" 2>&1 &
+    else
+        "$NATIVE_BIN" -Dquarkus.http.port="$PORT" $EXTRA_ARGS >"$OUT_DIR/$mode.log" 2>&1 &
+    fi
+    APP_PID=$!
+}
+
+wait_first_decision() {
+    local deadline=$(( $(now_ms) + 120000 ))
+    until curl -sf -o /dev/null -X POST -H 'Content-Type: application/json' -d @"$PAYLOAD" "$URL"; do
+        if (( $(now_ms) > deadline )); then
+            echo "timed out waiting for first decision" >&2
+            return 1
+        fi
+        sleep 0.01
+    done
+}
+
+stop_app() {
+    kill "$1" 2>/dev/null || true
+    wait "$1" 2>/dev/null || true
+}
+
+median() { sort -n | awk '{a[NR]=$1} END {print (NR%2 ? a[(NR+1)/2] : int((a[NR/2]+a[NR/2+1])/2))}'; }
+
+throughput() {
+    if command -v hey >/dev/null 2>&1; then
+        hey -z "$DURATION" -c "$CONCURRENCY" -m POST -T application/json -D "$PAYLOAD" "$URL" \
+            | awk '/Requests\/sec/ {print $2}'
+    else
+        local secs=${DURATION%s} n=0 end=$(( $(date +%s) + ${DURATION%s} ))
+        while (( $(date +%s) < end )); do
+            curl -sf -o /dev/null -X POST -H 'Content-Type: application/json' -d @"$PAYLOAD" "$URL" && n=$((n + 1))
+        done
+        awk -v n="$n" -v s="$secs" 'BEGIN {printf "%.1f", n / s}'
+    fi
+}
+
+bench_mode() {
+    local mode=$1 startups=() pid t0 rss_start rps rss_peak
+    for ((i = 0; i < STARTUP_RUNS; i++)); do
+        t0=$(now_ms)
+        start_app "$mode"
+        pid=$APP_PID
+        wait_first_decision
+        startups+=( $(( $(now_ms) - t0 )) )
+        if (( i < STARTUP_RUNS - 1 )); then
+            stop_app "$pid"
+        fi
+    done
+
+    rss_start=$(rss_kb "$pid")
+    rps=$(throughput)
+    rss_peak=$(hwm_kb "$pid")
+    stop_app "$pid"
+
+    local ttfd
+    ttfd=$(printf '%s\n' "${startups[@]}" | median)
+    echo "$mode,$ttfd,$rps,$((rss_start / 1024)),$((rss_peak / 1024))" | tee -a "$OUT_DIR/results.csv"
+}
+
+echo "mode,time_to_first_decision_ms,throughput_rps,rss_after_start_mb,rss_peak_mb" | tee "$OUT_DIR/results.csv"
+
+if [[ -f target/quarkus-app/quarkus-run.jar ]]; then
+    bench_mode jvm
+else
+    echo "jvm build not found (run with --build)" >&2
+fi
+
+if [[ -n "$NATIVE_BIN" ]]; then
+    bench_mode native
+else
+    echo "native build not found (run with --build)" >&2
+fi
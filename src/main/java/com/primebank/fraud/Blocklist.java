@@ -0,0 +1,86 @@
+package com.primebank.fraud;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable two-layer blocklist: a Bloom filter answers most lookups
+ * ("definitely not blocked") from the heap, and only possible hits are
+ * confirmed against the exact off-heap fingerprint set.
+ */
+public final class Blocklist {
+
+    public static final Blocklist EMPTY = build("empty", new OffHeapFingerprintSet(0), 0.01);
+
+    private final String source;
+    private final BloomFilter bloom;
+    private final OffHeapFingerprintSet exact;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder bloomPositives = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+
+    private Blocklist(String source, BloomFilter bloom, OffHeapFingerprintSet exact) {
+        this.source = source;
+        this.bloom = bloom;
+        this.exact = exact;
+    }
+
+    /** Build the Bloom layer over an already loaded exact set. */
+    static Blocklist build(String source, OffHeapFingerprintSet exact, double fpp) {
+        BloomFilter bloom = BloomFilter.create(exact.size(), fpp);
+        exact.forEach(bloom::put);
+        return new Blocklist(source, bloom, exact);
+    }
+
+    public boolean contains(String key) {
+        if (Fingerprints.isBlank(key)) {
+            return false;
+        }
+        lookups.increment();
+        long hi = Fingerprints.hi(key);
+        long lo = Fingerprints.lo(key);
+        if (!bloom.mightContain(hi, lo)) {
+            return false;
+        }
+        bloomPositives.increment();
+        if (exact.contains(hi, lo)) {
+            confirmed.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /** The exact layer, handed back to the loader once this list is replaced. */
+    OffHeapFingerprintSet exactSet() {
+        return exact;
+    }
+
+    public long size() {
+        return exact.size();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getBloomBytes() {
+        return bloom.sizeInBytes();
+    }
+
+    public long getOffHeapBytes() {
+        return exact.sizeInBytes();
+    }
+
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /** Lookups that passed the Bloom filter (true hits plus false positives). */
+    public long getBloomPositives() {
+        return bloomPositives.sum();
+    }
+
+    public long getConfirmed() {
+        return confirmed.sum();
+    }
+}
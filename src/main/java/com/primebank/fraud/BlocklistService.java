@@ -0,0 +1,232 @@
+package com.primebank.fraud;
+
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compromised card hashes and merchant IDs, held outside the rule snapshot.
+ *
+ * Lists with tens of millions of entries are loaded in bulk into a
+ * {@link Blocklist} (Bloom filter + off-heap exact set) and swapped in
+ * atomically; lookups never touch the DB. Source is either the table
+ *
+ * <pre>
+ * CREATE TABLE fraud_blocklist (
+ *     list_type   VARCHAR(16)  NOT NULL,   -- CARD | MERCHANT
+ *     entry_value VARCHAR(128) NOT NULL,
+ *     is_active   BIT          NOT NULL DEFAULT 1,
+ *     PRIMARY KEY (list_type, entry_value)
+ * )
+ * </pre>
+ *
+ * or one file per list with one entry per line ({@code #} starts a comment,
+ * surrounding whitespace is ignored). Entries match exactly, case included.
+ *
+ * The off-heap sets are double-buffered: a reload fills the set the
+ * previous reload replaced rather than allocating new direct buffers, so a
+ * list of 100M entries costs two tables, not one more per refresh. A
+ * replaced set is reused only once it has been out of service for
+ * {@link #SPARE_MIN_IDLE_MILLIS}, so no lookup can still be reading it; a
+ * manual reload right after another allocates instead.
+ */
+@ApplicationScoped
+public class BlocklistService {
+
+    static final String CARD = "CARD";
+    static final String MERCHANT = "MERCHANT";
+
+    static final long SPARE_MIN_IDLE_MILLIS = 10_000;
+
+    private static final String SELECT_SQL =
+        "SELECT list_type, entry_value FROM fraud_blocklist WHERE is_active = 1";
+
+    @Inject
+    DataSource dataSource;
+
+    // db | file | none
+    @ConfigProperty(name = "fraud.blocklist.source", defaultValue = "db")
+    String source;
+
+    @ConfigProperty(name = "fraud.blocklist.card.file", defaultValue = "data/card-blocklist.txt")
+    String cardFile;
+
+    @ConfigProperty(name = "fraud.blocklist.merchant.file", defaultValue = "data/merchant-blocklist.txt")
+    String merchantFile;
+
+    // Bloom filter false-positive rate; positives are confirmed off-heap, so this only costs lookups
+    @ConfigProperty(name = "fraud.blocklist.bloom-fpp", defaultValue = "0.01")
+    double bloomFpp;
+
+    // Initial off-heap table size; the table grows if the list is larger
+    @ConfigProperty(name = "fraud.blocklist.expected-entries", defaultValue = "100000")
+    long expectedEntries;
+
+    @ConfigProperty(name = "fraud.blocklist.fetch-size", defaultValue = "10000")
+    int fetchSize;
+
+    private volatile Blocklist cards = Blocklist.EMPTY;
+    private volatile Blocklist merchants = Blocklist.EMPTY;
+    // Sets replaced by the last reload, refilled by the next one; guarded by this
+    private OffHeapFingerprintSet spareCards;
+    private OffHeapFingerprintSet spareMerchants;
+    private long sparesRetiredAt;
+
+    private volatile Instant loadedAt;
+    private volatile long loadMillis;
+
+    void onStart(@Observes StartupEvent ev) {
+        // Large lists take a while; decisions run with the previous (empty) lists meanwhile.
+        // Own thread rather than the common pool: a large load can take minutes.
+        Thread loader = new Thread(this::reload, "blocklist-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @Scheduled(every = "{fraud.blocklist.refresh-interval}",
+               delayed = "{fraud.blocklist.refresh-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledReload() {
+        reload();
+    }
+
+    public boolean isCardBlocked(String cardHash) {
+        return cards.contains(cardHash);
+    }
+
+    public boolean isMerchantBlocked(String merchantId) {
+        return merchants.contains(merchantId);
+    }
+
+    /** Reload both lists. Failures keep the lists currently in use. */
+    public synchronized void reload() {
+        if ("none".equalsIgnoreCase(source)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Blocklist newCards;
+            Blocklist newMerchants;
+            if ("file".equalsIgnoreCase(source)) {
+                newCards = loadFile(Paths.get(cardFile), recycle(spareCards));
+                newMerchants = loadFile(Paths.get(merchantFile), recycle(spareMerchants));
+            } else {
+                Blocklist[] lists = loadDb(recycle(spareCards), recycle(spareMerchants));
+                newCards = lists[0];
+                newMerchants = lists[1];
+            }
+            Blocklist oldCards = this.cards;
+            Blocklist oldMerchants = this.merchants;
+            this.cards = newCards;
+            this.merchants = newMerchants;
+            spareCards = retired(oldCards);
+            spareMerchants = retired(oldMerchants);
+            sparesRetiredAt = System.currentTimeMillis();
+            this.loadedAt = Instant.now();
+            this.loadMillis = System.currentTimeMillis() - start;
+            System.err.println("Loaded blocklists: " + newCards.size() + " cards, "
+                + newMerchants.size() + " merchants in " + loadMillis + " ms");
+
+        } catch (Exception e) {
+            System.err.println("Failed to reload blocklists: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("source", source);
+        stats.put("loaded_at", loadedAt == null ? null : loadedAt.toString());
+        stats.put("load_ms", loadMillis);
+        stats.put("card", stats(cards));
+        stats.put("merchant", stats(merchants));
+        return stats;
+    }
+
+    private static Map<String, Object> stats(Blocklist list) {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("source", list.getSource());
+        s.put("entries", list.size());
+        s.put("bloom_bytes", list.getBloomBytes());
+        s.put("off_heap_bytes", list.getOffHeapBytes());
+        s.put("lookups", list.getLookups());
+        s.put("bloom_positives", list.getBloomPositives());
+        s.put("confirmed", list.getConfirmed());
+        return s;
+    }
+
+    /** An empty set to load into: the spare one, cleared, or a new one while the spare may still be read. */
+    private OffHeapFingerprintSet recycle(OffHeapFingerprintSet spare) {
+        if (spare == null || System.currentTimeMillis() - sparesRetiredAt < SPARE_MIN_IDLE_MILLIS) {
+            return new OffHeapFingerprintSet(expectedEntries);
+        }
+        spare.clear();
+        return spare;
+    }
+
+    private static OffHeapFingerprintSet retired(Blocklist list) {
+        // EMPTY is shared and may be swapped in again
+        return list == Blocklist.EMPTY ? null : list.exactSet();
+    }
+
+    private Blocklist[] loadDb(OffHeapFingerprintSet cardSet, OffHeapFingerprintSet merchantSet) throws Exception {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(SELECT_SQL,
+                 ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            ps.setFetchSize(fetchSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String type = rs.getString(1);
+                    String value = rs.getString(2);
+                    if (Fingerprints.isBlank(value)) {
+                        continue;
+                    }
+                    if (CARD.equalsIgnoreCase(type)) {
+                        cardSet.add(Fingerprints.hi(value), Fingerprints.lo(value));
+                    } else if (MERCHANT.equalsIgnoreCase(type)) {
+                        merchantSet.add(Fingerprints.hi(value), Fingerprints.lo(value));
+                    }
+                }
+            }
+        }
+
+        return new Blocklist[] {
+            Blocklist.build("db", cardSet, bloomFpp),
+            Blocklist.build("db", merchantSet, bloomFpp)
+        };
+    }
+
+    private Blocklist loadFile(Path file, OffHeapFingerprintSet set) throws Exception {
+        if (!Files.isRegularFile(file)) {
+            System.err.println("Blocklist file not found, using an empty list: " + file);
+            return Blocklist.build(file.toString(), set, bloomFpp);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String entry = line.trim();
+                if (entry.isEmpty() || entry.startsWith("#")) {
+                    continue;
+                }
+                set.add(Fingerprints.hi(entry), Fingerprints.lo(entry));
+            }
+        }
+        return Blocklist.build(file.toString(), set, bloomFpp);
+    }
+}
@@ -0,0 +1,56 @@
+package com.primebank.fraud;
+
+/**
+ * Fixed-size Bloom filter over 128-bit fingerprints (see {@link Fingerprints}).
+ * Probe positions use double hashing: {@code hi + i * lo}.
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+        this.bits = new long[(int) ((bitCount + 63) >>> 6)];
+    }
+
+    /** Size for {@code expectedEntries} at false-positive rate {@code fpp}. */
+    static BloomFilter create(long expectedEntries, double fpp) {
+        long n = Math.max(1L, expectedEntries);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64L, Math.min(m, (long) Integer.MAX_VALUE * 64L));
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        return new BloomFilter(m, k);
+    }
+
+    void put(long hi, long lo) {
+        long combined = hi;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(combined, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+            combined += lo;
+        }
+    }
+
+    boolean mightContain(long hi, long lo) {
+        long combined = hi;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(combined, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += lo;
+        }
+        return true;
+    }
+
+    long sizeInBytes() {
+        return bits.length * 8L;
+    }
+
+    int hashCount() {
+        return hashCount;
+    }
+}
@@ -0,0 +1,349 @@
+package com.primebank.fraud;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline re-scoring of historical card transactions with the
+ * CardFraudDecision model, for model reviews:
+ *
+ * <pre>
+ * java -Dquarkus.profile=rescore -jar target/quarkus-app/quarkus-run.jar \
+ *     rescore transactions.csv decisions.csv [--threads N] [--chunk-mb 64] [--resume]
+ * </pre>
+ *
+ * Only runs under the {@code rescore} profile, which keeps the process
+ * off everything a service instance owns: no HTTP listener, schedulers,
+ * velocity persistence, journal, audit, stream, partitioning or
+ * last-known-good rule file.
+ *
+ * The input (CSV with a header row, or NDJSON for .ndjson / .jsonl) is
+ * memory-mapped and split into line-aligned chunks that are scored in
+ * parallel, all against rules loaded from the DB at start. Window
+ * features must be columns of the input: no card state is read or
+ * recorded, and nothing is journaled. Decisions
+ * ({@code txn_id,fraud_decision,fraud_reason}) are written in input order.
+ *
+ * After each chunk is written, {@code <output>.checkpoint} records how far
+ * the run got; {@code --resume} continues from there with the same input,
+ * chunk size and rule content (a hash of the loaded snapshot).
+ */
+@ApplicationScoped
+public class BulkRescoreCommand {
+
+    private static final TypeReference<Map<String, Object>> JSON_MAP = new TypeReference<>() {};
+    private static final byte[] OUTPUT_HEADER = "txn_id,fraud_decision,fraud_reason\n".getBytes(StandardCharsets.UTF_8);
+    private static final long PROGRESS_INTERVAL_NANOS = 5_000_000_000L;
+
+    @Inject
+    CardFraudEvaluator evaluator;
+
+    @Inject
+    CardFraudThresholdService thresholdService;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    // Set by the rescore profile
+    @ConfigProperty(name = "fraud.rescore.offline", defaultValue = "false")
+    boolean offline;
+
+    /** Scored output of one chunk, written once every earlier chunk is. */
+    private static final class ChunkResult {
+        final byte[] output;
+        final long records;
+        final long errors;
+
+        ChunkResult(byte[] output, long records, long errors) {
+            this.output = output;
+            this.records = records;
+            this.errors = errors;
+        }
+    }
+
+    /** @return the process exit code */
+    public int run(String... args) throws Exception {
+        if (!offline) {
+            System.err.println("rescore must run with -Dquarkus.profile=rescore, "
+                + "so it does not touch the state of a service instance");
+            return 2;
+        }
+        List<String> positional = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long chunkBytes = 64L << 20;
+        boolean resume = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--chunk-mb":
+                    chunkBytes = Long.parseLong(args[++i]) << 20;
+                    break;
+                case "--resume":
+                    resume = true;
+                    break;
+                default:
+                    positional.add(args[i]);
+            }
+        }
+        if (positional.size() != 2 || threads < 1 || chunkBytes < 1 || chunkBytes > MappedLineChunks.MAX_CHUNK_BYTES) {
+            System.err.println("Usage: rescore <input.csv|input.ndjson> <output.csv> "
+                + "[--threads N] [--chunk-mb 1..1024] [--resume]");
+            return 2;
+        }
+        return rescore(Paths.get(positional.get(0)), Paths.get(positional.get(1)), threads, chunkBytes, resume);
+    }
+
+    private int rescore(Path input, Path output, int threads, long chunkBytes, boolean resume) throws Exception {
+        // Pinned for the whole run: every chunk sees the same rules, straight from the DB
+        RuleSnapshot rules;
+        try {
+            rules = thresholdService.reloadFromDatabase();
+        } catch (Exception e) {
+            System.err.println("Cannot load the card rules from the DB: " + e.getMessage());
+            return 1;
+        }
+        String rulesHash = RuleSnapshotFileStore.contentHash(rules);
+        Path checkpointFile = output.resolveSibling(output.getFileName() + ".checkpoint");
+        boolean ndjson = isNdjson(input);
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            String[] header = ndjson ? null : splitCsv(MappedLineChunks.firstLine(in)).toArray(new String[0]);
+            long dataStart = ndjson ? 0 : MappedLineChunks.firstLineEnd(in);
+            long[] bounds = MappedLineChunks.boundaries(in, dataStart, chunkBytes);
+            int chunks = bounds.length - 1;
+
+            Properties checkpoint = new Properties();
+            checkpoint.setProperty("input", input.toAbsolutePath().toString());
+            checkpoint.setProperty("input_size", Long.toString(in.size()));
+            checkpoint.setProperty("input_modified", Long.toString(Files.getLastModifiedTime(input).toMillis()));
+            checkpoint.setProperty("chunk_bytes", Long.toString(chunkBytes));
+            checkpoint.setProperty("rules_hash", rulesHash);
+
+            int nextChunk = 0;
+            long records = 0;
+            long errors = 0;
+            if (resume) {
+                Properties saved = readCheckpoint(checkpointFile);
+                if (saved == null) {
+                    System.err.println("Cannot resume: no checkpoint at " + checkpointFile);
+                    return 1;
+                }
+                for (String key : checkpoint.stringPropertyNames()) {
+                    if (!checkpoint.getProperty(key).equals(saved.getProperty(key))) {
+                        System.err.println("Cannot resume: " + key + " is " + checkpoint.getProperty(key)
+                            + " but the checkpoint has " + saved.getProperty(key) + "; run again without --resume");
+                        return 1;
+                    }
+                }
+                nextChunk = Integer.parseInt(saved.getProperty("next_chunk"));
+                records = Long.parseLong(saved.getProperty("records"));
+                errors = Long.parseLong(saved.getProperty("errors"));
+                // Drop anything written after the checkpoint
+                out.truncate(Long.parseLong(saved.getProperty("output_bytes")));
+                out.position(out.size());
+            } else {
+                // A stale checkpoint must not point into the new output
+                Files.deleteIfExists(checkpointFile);
+                out.truncate(0);
+                out.write(ByteBuffer.wrap(OUTPUT_HEADER));
+            }
+
+            System.err.printf("rescore: %s, %d chunks from chunk %d, %d threads, rules %s%n",
+                input, chunks, nextChunk, threads, rulesHash);
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "rescore-worker");
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                long start = System.nanoTime();
+                long lastReport = start;
+                long startRecords = records;
+                ArrayDeque<Future<ChunkResult>> pending = new ArrayDeque<>();
+                int submitted = nextChunk;
+
+                for (int chunk = nextChunk; chunk < chunks; chunk++) {
+                    // Keep a bounded number of chunk outputs in memory ahead of the writer
+                    while (submitted < chunks && submitted < chunk + threads * 2) {
+                        long from = bounds[submitted];
+                        long to = bounds[submitted + 1];
+                        pending.add(pool.submit(() -> scoreChunk(in, from, to, header, rules)));
+                        submitted++;
+                    }
+                    ChunkResult result = pending.poll().get();
+                    ByteBuffer buf = ByteBuffer.wrap(result.output);
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                    records += result.records;
+                    errors += result.errors;
+
+                    checkpoint.setProperty("next_chunk", Integer.toString(chunk + 1));
+                    checkpoint.setProperty("output_bytes", Long.toString(out.position()));
+                    checkpoint.setProperty("records", Long.toString(records));
+                    checkpoint.setProperty("errors", Long.toString(errors));
+                    out.force(false);
+                    writeCheckpoint(checkpointFile, checkpoint);
+
+                    long now = System.nanoTime();
+                    if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                        System.err.printf("rescore: chunk %d/%d, %d records, %.0f records/s%n",
+                            chunk + 1, chunks, records, (records - startRecords) * 1e9 / (now - start));
+                        lastReport = now;
+                    }
+                }
+
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.err.printf("rescore: done, %d records (%d errors) in %.1f s, %.0f records/s%n",
+                    records, errors, seconds, seconds > 0 ? (records - startRecords) / seconds : 0);
+                return 0;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private ChunkResult scoreChunk(FileChannel in, long from, long to, String[] header, RuleSnapshot rules)
+            throws IOException {
+        StringBuilder out = new StringBuilder((int) Math.min((to - from) / 4, 64 << 20));
+        long[] counts = new long[2];
+        MappedLineChunks.forEachLine(in, from, to, line -> {
+            counts[0]++;
+            Map<String, Object> txn = null;
+            try {
+                txn = header == null ? objectMapper.readValue(line, JSON_MAP) : csvRow(header, line);
+                Map<String, Object> decision = evaluator.rescore(txn, rules);
+                appendCsvRow(out, txn.get("txn_id"), decision.get("fraud_decision"), decision.get("fraud_reason"));
+            } catch (IOException e) {
+                counts[1]++;
+                appendCsvRow(out, null, "ERROR", "Unreadable line: " + firstLine(e.getMessage()));
+            } catch (Exception e) {
+                counts[1]++;
+                appendCsvRow(out, txn == null ? null : txn.get("txn_id"), "ERROR", firstLine(e.getMessage()));
+            }
+        });
+        return new ChunkResult(out.toString().getBytes(StandardCharsets.UTF_8), counts[0], counts[1]);
+    }
+
+    private static Map<String, Object> csvRow(String[] header, String line) {
+        List<String> values = splitCsv(line);
+        Map<String, Object> txn = new HashMap<>(header.length * 2);
+        for (int i = 0; i < header.length && i < values.size(); i++) {
+            if (!values.get(i).isEmpty()) {
+                txn.put(header[i], values.get(i));
+            }
+        }
+        return txn;
+    }
+
+    /**
+     * Fields of one CSV line: comma separated, optionally double-quoted with
+     * "" for a quote. Records are split on line breaks before this, so a
+     * quoted field cannot contain one.
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    private static void appendCsvRow(StringBuilder out, Object... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            String v = values[i] == null ? "" : String.valueOf(values[i]);
+            if (v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0) {
+                out.append('"').append(v.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(v);
+            }
+        }
+        out.append('\n');
+    }
+
+    private static String firstLine(String message) {
+        return message == null ? "" : message.lines().findFirst().orElse("");
+    }
+
+    private static boolean isNdjson(Path input) {
+        String name = input.getFileName().toString().toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl");
+    }
+
+    /** @return the saved checkpoint, or null if there is none */
+    private static Properties readCheckpoint(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties p = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            p.load(in);
+        }
+        return p;
+    }
+
+    private static void writeCheckpoint(Path file, Properties checkpoint) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                checkpoint.store(out, "rescore checkpoint");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write rescore checkpoint " + file, e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.primebank.fraud;
+
+/**
+ * Carries "rule caches changed" notifications between replicas.
+ * Every replica polls {@link #currentVersion()} and reloads its caches
+ * when the version moves past the last one it has seen.
+ */
+public interface CacheInvalidationBus {
+
+    /**
+     * Announce a rule change to every replica.
+     * @return the new cluster-wide cache version
+     */
+    long publish();
+
+    /**
+     * Latest cluster-wide cache version. Must be cheap enough
+     * to be polled every few seconds by every replica.
+     */
+    long currentVersion();
+}
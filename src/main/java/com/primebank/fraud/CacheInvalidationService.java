@@ -0,0 +1,127 @@
+package com.primebank.fraud;
+
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+/**
+ * Propagates admin cache refreshes to every replica.
+ *
+ * The replica receiving {@code POST /admin/fraud/refresh-cache} reloads
+ * its own caches and bumps the shared version on the configured
+ * {@link CacheInvalidationBus}; all other replicas notice the new version
+ * on their next poll and reload too.
+ */
+@ApplicationScoped
+public class CacheInvalidationService {
+
+    private static final String CACHE_NAME = "fraud-rules";
+
+    @Inject
+    DataSource dataSource;
+
+    @Inject
+    CardFraudThresholdService thresholdService;
+
+    @Inject
+    MyPrimeRuleConfigService myPrimeRuleConfigService;
+
+    // db = shared counter table, local = in-process only (single node / dev)
+    @ConfigProperty(name = "fraud.cache.invalidation.mode", defaultValue = "db")
+    String mode;
+
+    private CacheInvalidationBus bus;
+
+    // -1 until the first poll has recorded the current cluster version
+    private volatile long lastSeenVersion = -1L;
+
+    @PostConstruct
+    void init() {
+        bus = "local".equalsIgnoreCase(mode)
+            ? new InMemoryCacheInvalidationBus()
+            : new JdbcCacheInvalidationBus(dataSource, CACHE_NAME);
+    }
+
+    /**
+     * Refresh this replica now and tell the others to follow.
+     * @return the new cluster-wide cache version, or -1 if the others could
+     *         not be told; this replica is refreshed either way
+     */
+    public synchronized long broadcastRefresh() {
+        refreshLocal();
+        try {
+            long version = bus.publish();
+            advanceTo(version);
+            return version;
+        } catch (Exception e) {
+            // Other replicas still converge within the cache TTL
+            System.err.println("Cache refreshed locally, but the invalidation was not published: " + e.getMessage());
+            return -1L;
+        }
+    }
+
+    /**
+     * Tell the other replicas to reload after this replica already applied
+     * the change locally (write-through); no local reload.
+     * @return the new cluster-wide cache version
+     */
+    public synchronized long announce() {
+        long version = bus.publish();
+        advanceTo(version);
+        return version;
+    }
+
+    /**
+     * Record a version this replica just published. Only a direct successor
+     * of the last seen version is ours alone; a gap means other replicas
+     * published in between, and their changes are not loaded here yet.
+     */
+    private void advanceTo(long version) {
+        if (lastSeenVersion < 0 || version != lastSeenVersion + 1) {
+            refreshLocal();
+        }
+        lastSeenVersion = version;
+    }
+
+    public long getLastSeenVersion() {
+        return lastSeenVersion;
+    }
+
+    @Scheduled(every = "{fraud.cache.invalidation.poll-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    synchronized void poll() {
+        long current;
+        try {
+            current = bus.currentVersion();
+        } catch (Exception e) {
+            // Keep serving current caches; the TTL still bounds staleness
+            System.err.println("Cache invalidation poll failed: " + e.getMessage());
+            return;
+        }
+
+        if (lastSeenVersion < 0) {
+            lastSeenVersion = current;
+            return;
+        }
+
+        if (current > lastSeenVersion) {
+            lastSeenVersion = current;
+            refreshLocal();
+        }
+    }
+
+    private void refreshLocal() {
+        if (thresholdService instanceof CardFraudThresholdServiceImpl) {
+            ((CardFraudThresholdServiceImpl) thresholdService).refreshAllCaches();
+        }
+        try {
+            myPrimeRuleConfigService.refresh();
+        } catch (Exception e) {
+            System.err.println("Failed to refresh MyPrime rule config: " + e.getMessage());
+        }
+    }
+}
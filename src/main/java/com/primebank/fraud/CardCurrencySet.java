@@ -0,0 +1,145 @@
+package com.primebank.fraud;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Distinct currencies one card used in the last hour, in fixed memory.
+ *
+ * Up to four currencies are held inline and exactly, each with the minute
+ * it was last seen. A card that uses a fifth currency within the hour is
+ * promoted to twelve 5-minute buckets of 64-bit linear-counting bitmaps,
+ * which estimate the distinct count. By then MULTI_CCY has long fired, so
+ * the exact range is the one that matters. A promoted card that goes an
+ * hour without a transaction drops the bitmaps and counts exactly again.
+ * Recording never allocates, except when a card is promoted.
+ *
+ * Only the latest use of an inline currency is kept, so an as-of count
+ * leaves out a currency whose latest use is after the as-of minute. Not
+ * thread-safe: guarded by the owning stripe of {@link CurrencyTracker}.
+ */
+final class CardCurrencySet {
+
+    static final int INLINE = 4;
+    private static final int WINDOW_MINUTES = 60;
+    private static final int BUCKET_MINUTES = 5;
+    private static final int BUCKETS = WINDOW_MINUTES / BUCKET_MINUTES;
+
+    private final long[] codes = new long[INLINE];
+    private final long[] lastSeenMinute = new long[INLINE];
+
+    // Non-null once promoted; ring of bitmaps indexed by (minute / BUCKET_MINUTES) % BUCKETS
+    private long[] buckets;
+    private long headBucket;
+
+    long lastEventMillis;
+
+    /** Hash of the trimmed, upper-cased currency code, never 0, so "usd " and "USD" are one currency. */
+    static long code(String currency) {
+        long h = Fingerprints.hash64(currency.trim().toUpperCase(Locale.ROOT), Fingerprints.SEED_HI);
+        return h == 0 ? 1 : h;
+    }
+
+    /** Record a currency use; returns distinct currencies in the hour up to the event. */
+    int record(long code, long eventMillis) {
+        long minute = eventMillis / MinuteRing.MINUTE_MILLIS;
+        lastEventMillis = Math.max(lastEventMillis, eventMillis);
+        if (buckets != null) {
+            if (minute / BUCKET_MINUTES - headBucket < BUCKETS) {
+                addToBuckets(code, minute);
+                return estimate(minute);
+            }
+            demote();
+        }
+
+        int free = -1;
+        for (int i = 0; i < INLINE; i++) {
+            if (codes[i] == code) {
+                // A late event still counts its own currency
+                boolean laterUse = lastSeenMinute[i] > minute;
+                lastSeenMinute[i] = Math.max(lastSeenMinute[i], minute);
+                return count(minute) + (laterUse ? 1 : 0);
+            }
+            if (free < 0 && (codes[i] == 0 || lastSeenMinute[i] <= minute - WINDOW_MINUTES)) {
+                free = i;
+            }
+        }
+        if (free >= 0) {
+            codes[free] = code;
+            lastSeenMinute[free] = minute;
+            return count(minute);
+        }
+
+        promote();
+        addToBuckets(code, minute);
+        return estimate(minute);
+    }
+
+    /** Distinct currencies in the hour ending at {@code atMillis}. */
+    int countAt(long atMillis) {
+        long minute = atMillis / MinuteRing.MINUTE_MILLIS;
+        return buckets != null ? estimate(minute) : count(minute);
+    }
+
+    private int count(long minute) {
+        int n = 0;
+        for (int i = 0; i < INLINE; i++) {
+            if (codes[i] != 0 && lastSeenMinute[i] <= minute && lastSeenMinute[i] > minute - WINDOW_MINUTES) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void promote() {
+        buckets = new long[BUCKETS];
+        long newest = 0;
+        for (int i = 0; i < INLINE; i++) {
+            newest = Math.max(newest, lastSeenMinute[i]);
+        }
+        headBucket = newest / BUCKET_MINUTES;
+        for (int i = 0; i < INLINE; i++) {
+            if (codes[i] != 0) {
+                addToBuckets(codes[i], lastSeenMinute[i]);
+            }
+        }
+    }
+
+    // Every bucket is older than the window, so nothing is lost
+    private void demote() {
+        buckets = null;
+        Arrays.fill(codes, 0);
+    }
+
+    private void addToBuckets(long code, long minute) {
+        long bucket = minute / BUCKET_MINUTES;
+        if (bucket > headBucket) {
+            long steps = Math.min(bucket - headBucket, BUCKETS);
+            for (long b = bucket - steps + 1; b <= bucket; b++) {
+                buckets[(int) (b % BUCKETS)] = 0;
+            }
+            headBucket = bucket;
+        } else if (headBucket - bucket >= BUCKETS) {
+            return;
+        }
+        buckets[(int) (bucket % BUCKETS)] |= 1L << (code >>> 58);
+    }
+
+    private int estimate(long minute) {
+        long at = minute / BUCKET_MINUTES;
+        long union = 0;
+        for (int back = 0; back < BUCKETS; back++) {
+            long b = at - back;
+            if (b > headBucket) {
+                continue;
+            }
+            if (b <= headBucket - BUCKETS) {
+                break;
+            }
+            union |= buckets[(int) (b % BUCKETS)];
+        }
+        int zeros = 64 - Long.bitCount(union);
+        // Linear counting; a full bitmap saturates at 64 ln 64
+        return (int) Math.round(-64 * Math.log(Math.max(zeros, 1) / 64.0));
+    }
+}
@@ -0,0 +1,424 @@
+package com.primebank.fraud;
+
+import org.kie.dmn.api.core.ast.InputDataNode;
+import org.kie.kogito.decision.DecisionModel;
+import org.kie.kogito.decision.DecisionModels;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The card decision itself, shared by every way a transaction arrives
+ * (REST, the event stream): input mapping, in-process card features,
+ * the trusted-pair fast path, the CardFraudDecision DMN, and recording
+ * the verdict. Callers choose the rule snapshot, so a batch of
+ * transactions can be decided against one snapshot read.
+ */
+@ApplicationScoped
+public class CardFraudEvaluator {
+
+    private static final String DMN_NAMESPACE = "https://primebank.com/dmn/card";
+    private static final String DMN_MODEL_NAME = "CardFraudDecision";
+    // Same default as CardFraudThresholdServiceImpl, for snapshots without the threshold
+    private static final double DEFAULT_MAX_TRAVEL_KMH = 1000.0;
+
+    @Inject
+    DecisionModels decisionModels;
+
+    @Inject
+    BlocklistService blocklistService;
+
+    @Inject
+    TrustedPairService trustedPairService;
+
+    @Inject
+    VelocityStore velocityStore;
+
+    @Inject
+    CardTerminalTracker terminalTracker;
+
+    @Inject
+    CurrencyTracker currencyTracker;
+
+    @Inject
+    TravelVelocityService travelVelocity;
+
+    @Inject
+    DecisionJournal decisionJournal;
+
+    @Inject
+    DecisionAuditService auditService;
+
+    @Inject
+    DecisionFlightRecorder flightRecorder;
+
+    /**
+     * Decide one transaction: records it in the card's in-process state
+     * (unless it is an as_of re-score), takes the trusted-pair fast path or
+     * runs the DMN, and hands the verdict to the journal and audit table.
+     * @return the response body for the caller
+     */
+    public Map<String, Object> decide(Map<String, Object> txn, RuleSnapshot rules) {
+        long start = System.nanoTime();
+
+        // Build DMN input context
+        Map<String, Object> dmnInput = buildDmnInput(txn, rules);
+        byte flags = txn.get("as_of") == null ? 0 : DecisionRecord.FLAG_AS_OF;
+        long dmnStart = System.nanoTime();
+
+        // Trusted card/merchant pairs skip DMN, but never past a hard block.
+        // The allowlist is current state, so as-of re-scoring always runs DMN.
+        // The ceiling needs the amount as sent: a missing or unparsable one runs DMN.
+        if (txn.get("as_of") == null && !isHardBlocked(dmnInput) && trustedPairService.isTrusted(
+                asString(txn.get("card_hash")), asString(txn.get("merchant_id")),
+                asNumber(txn.get("txn_amount"), Double.NaN))) {
+            Map<String, Object> response = buildFastPathResponse(txn);
+            long recordStart = System.nanoTime();
+            journal(txn, rules, (byte) (flags | DecisionRecord.FLAG_FAST_PATH), response, dmnInput);
+            flightRecord(txn, rules, response, dmnInput, start, dmnStart, recordStart, recordStart);
+            return response;
+        }
+        
+        // Execute DMN
+        Map<String, Object> dmnResult = evaluateDmn(dmnInput);
+        long dmnEnd = System.nanoTime();
+        trustedPairService.recordEvaluation(dmnEnd - dmnStart);
+        
+        // Build response
+        Map<String, Object> response = buildResponse(txn, dmnResult);
+        long recordStart = System.nanoTime();
+        journal(txn, rules, flags, response, dmnInput);
+        flightRecord(txn, rules, response, dmnInput, start, dmnStart, dmnEnd, recordStart);
+
+        return response;
+    }
+
+    /**
+     * Decide from the transaction's own fields and the given snapshot only:
+     * no card state, no fast path, nothing journaled. For offline re-scoring;
+     * safe to call from many threads.
+     * @return the CardFraudDecision result (fraud_decision, fraud_reason)
+     */
+    public Map<String, Object> rescore(Map<String, Object> txn, RuleSnapshot rules) {
+        return decisionOf(evaluateDmn(buildOfflineInput(txn, rules)));
+    }
+
+    Map<String, Object> buildDmnInput(Map<String, Object> txn, RuleSnapshot rules) {
+        Map<String, Object> input = new HashMap<>();
+
+        // 1. Basic transaction data
+        copyTransactionData(txn, input);
+        
+        // 2. Velocity windows from the in-process store, unless the caller sent them
+        Instant asOf = parseAsOf(txn.get("as_of"));
+        applyVelocity(txn, input, asOf);
+        applyTerminalCounts(txn, input, asOf);
+        applyCurrencyCount(txn, input, asOf);
+
+        // Speed since the card's previous card-present country; as-of re-scoring has no location history
+        if (asOf == null) {
+            putIfAbsent(txn, input, "travel_speed_kmh", travelVelocity.recordAndSpeed(cardKey(txn),
+                asString(txn.get("txn_country")), asString(txn.get("txn_channel")), eventTimeMillis(txn),
+                rules.getCountryIndex()));
+        }
+
+        // 3. Thresholds and rule-derived flags
+        applyRuleData(txn, input, rules, asOf);
+        return input;
+    }
+
+    /**
+     * Input from the transaction's own fields and the rule snapshot only, for
+     * offline re-scoring: no card state is read or recorded, so window
+     * features must come with the transaction.
+     */
+    Map<String, Object> buildOfflineInput(Map<String, Object> txn, RuleSnapshot rules) {
+        Map<String, Object> input = new HashMap<>();
+        copyTransactionData(txn, input);
+        applyRuleData(txn, input, rules, parseAsOf(txn.get("as_of")));
+        return input;
+    }
+
+    private void applyRuleData(Map<String, Object> txn, Map<String, Object> input, RuleSnapshot rules, Instant asOf) {
+        // Add all thresholds, as of the requested instant for historical re-scoring
+        Map<String, BigDecimal> thresholds = asOf == null ? rules.getThresholds() : rules.getThresholdsAt(asOf);
+        thresholds.forEach(input::put);
+
+        // MCC flag precomputed from the bitset (no FEEL list scan)
+        String mccCode = asString(txn.get("mcc_group_id"));
+        input.put("IS_SUSPICIOUS_MCC", rules.getSuspiciousMcc().contains(mccCode));
+
+        // Add country risk
+        String countryCode = asString(txn.get("txn_country"));
+        input.put("COUNTRY_RISK", rules.getCountryIndex().decisionLevel(countryCode, "NORMAL"));
+        input.putIfAbsent("MAX_TRAVEL_KMH", DEFAULT_MAX_TRAVEL_KMH);
+
+        // Add product MCC risk
+        String productCode = asString(txn.get("product_code"));
+        input.put("PRODUCT_MCC_RISK", rules.getProductMccRisk().riskLevel(productCode, mccCode));
+
+        // Blocklist flags (Bloom filter + off-heap set, never a FEEL list)
+        input.put("CARD_BLOCKED", blocklistService.isCardBlocked(asString(txn.get("card_hash"))));
+        input.put("MERCHANT_BLOCKED", blocklistService.isMerchantBlocked(asString(txn.get("merchant_id"))));
+    }
+
+    /**
+     * Record the transaction in the card's velocity windows and fill in any
+     * window feature the request did not carry. As-of re-scoring only reads.
+     */
+    private void applyVelocity(Map<String, Object> txn, Map<String, Object> input, Instant asOf) {
+        String cardKey = cardKey(txn);
+        if (cardKey == null) {
+            return;
+        }
+
+        VelocityFeatures velocity = asOf != null
+            ? velocityStore.read(cardKey, asOf.toEpochMilli())
+            : velocityStore.recordAndRead(cardKey, eventTimeMillis(txn),
+                (Double) input.get("txn_amount"), asString(txn.get("mcc_group_id")));
+
+        putIfAbsent(txn, input, "txn_count_5", velocity.getTxnCount5());
+        putIfAbsent(txn, input, "txn_amount_5", velocity.getTxnAmount5());
+        putIfAbsent(txn, input, "txn_count_30", velocity.getTxnCount30());
+        putIfAbsent(txn, input, "txn_amount_30", velocity.getTxnAmount30());
+        putIfAbsent(txn, input, "mcc_6011_txn_count_1hr", velocity.getMcc6011Count1hr());
+    }
+
+    /** Card x terminal attempts/failures from the decayed sketches, unless the caller sent them. */
+    private void applyTerminalCounts(Map<String, Object> txn, Map<String, Object> input, Instant asOf) {
+        String cardKey = cardKey(txn);
+        String terminalId = asString(txn.get("terminal_id"));
+        if (cardKey == null || terminalId == null) {
+            return;
+        }
+
+        TerminalCounts counts = asOf != null
+            ? terminalTracker.read(cardKey, terminalId, asOf.toEpochMilli())
+            : terminalTracker.recordAttempt(cardKey, terminalId, eventTimeMillis(txn));
+
+        putIfAbsent(txn, input, "card_terminal_txn_cnt1day", counts.getAttempts());
+        putIfAbsent(txn, input, "card_terminal_txn_failed_cnt1day", counts.getFailures());
+    }
+
+    /** Distinct currencies on the card in the last hour, unless the caller sent ccy_cnt1hr. */
+    private void applyCurrencyCount(Map<String, Object> txn, Map<String, Object> input, Instant asOf) {
+        String cardKey = cardKey(txn);
+        if (cardKey == null) {
+            return;
+        }
+        int count = asOf != null
+            ? currencyTracker.count(cardKey, asOf.toEpochMilli())
+            : currencyTracker.recordAndCount(cardKey, asString(txn.get("txn_currency")), eventTimeMillis(txn));
+        if (count >= 0) {
+            putIfAbsent(txn, input, "ccy_cnt1hr", count);
+        }
+    }
+
+    /** Card identity for the in-process stores: card_hash, else account_no. */
+    static String cardKey(Map<String, Object> txn) {
+        String cardKey = asString(txn.get("card_hash"));
+        return cardKey != null ? cardKey : asString(txn.get("account_no"));
+    }
+
+    private static void putIfAbsent(Map<String, Object> txn, Map<String, Object> input, String key, double value) {
+        if (txn.get(key) == null) {
+            input.put(key, value);
+        }
+    }
+
+    /** txn_timestamp, or now if absent or invalid; never more than a minute ahead of the clock. */
+    static long eventTimeMillis(Map<String, Object> txn) {
+        long now = System.currentTimeMillis();
+        try {
+            Instant ts = parseAsOf(txn.get("txn_timestamp"));
+            return ts == null ? now : Math.min(ts.toEpochMilli(), now + 60_000L);
+        } catch (IllegalArgumentException e) {
+            return now;
+        }
+    }
+
+    /** FRAUD outcomes driven purely by rule data, which no allowlist may override. */
+    private static boolean isHardBlocked(Map<String, Object> input) {
+        return "FRAUD".equals(input.get("COUNTRY_RISK"))
+            || Boolean.TRUE.equals(input.get("CARD_BLOCKED"))
+            || Boolean.TRUE.equals(input.get("MERCHANT_BLOCKED"));
+    }
+
+    private void copyTransactionData(Map<String, Object> source, Map<String, Object> target) {
+        // Map all expected DMN inputs
+        target.put("txn_channel", asString(source.get("txn_channel")));
+        target.put("product_code", asString(source.get("product_code")));
+        target.put("mcc_group_id", asString(source.get("mcc_group_id")));
+        
+        target.put("is_magstripe", asBoolean(source.get("is_magstripe"), false));
+        target.put("is_3ds_authenticated", asBoolean(source.get("is_3ds_authenticated"), true));
+        
+        target.put("txn_count_5", asNumber(source.get("txn_count_5"), 0));
+        target.put("txn_amount_5", asNumber(source.get("txn_amount_5"), 0));
+        target.put("txn_count_30", asNumber(source.get("txn_count_30"), 0));
+        target.put("txn_amount_30", asNumber(source.get("txn_amount_30"), 0));
+        
+        target.put("wrong_cvv_10", asNumber(source.get("wrong_cvv_10"), 0));
+        target.put("wrong_pin_10", asNumber(source.get("wrong_pin_10"), 0));
+        
+        target.put("card_failed_cnt1day", asNumber(source.get("card_failed_cnt1day"), 0));
+        target.put("ccy_cnt1hr", asNumber(source.get("ccy_cnt1hr"), 0));
+        
+        target.put("card_terminal_txn_cnt1day", asNumber(source.get("card_terminal_txn_cnt1day"), 0));
+        target.put("card_terminal_txn_failed_cnt1day", asNumber(source.get("card_terminal_txn_failed_cnt1day"), 0));
+        
+        target.put("ml_fraud_score_card", asNumber(source.get("ml_fraud_score_card"), 0));
+        
+        // Additional fields for new rules
+        target.put("processing_code", asString(source.get("processing_code")));
+        target.put("merchant_name", asString(source.get("merchant_name")));
+        target.put("txn_amount", asNumber(source.get("txn_amount"), 0));
+        target.put("mcc_6011_txn_count_1hr", asNumber(source.get("mcc_6011_txn_count_1hr"), 0));
+        target.put("travel_speed_kmh", asNumber(source.get("travel_speed_kmh"), 0));
+
+    }
+
+    Map<String, Object> evaluateDmn(Map<String, Object> input) {
+        DecisionModel model = decisionModels.getDecisionModel(DMN_NAMESPACE, DMN_MODEL_NAME);
+        
+        if (model == null) {
+            throw new IllegalStateException("DMN model not found: " + DMN_MODEL_NAME);
+        }
+        
+        return model.evaluateAll(model.newContext(input)).getContext().getAll();
+    }
+
+    /**
+     * Rule parameters the CardFraudDecision model reads: its numeric input
+     * data named in upper case (VELOCITY_5_COUNT, MAX_TRAVEL_KMH, ...).
+     */
+    Set<String> numericRuleInputs() {
+        DecisionModel model = decisionModels.getDecisionModel(DMN_NAMESPACE, DMN_MODEL_NAME);
+        if (model == null) {
+            throw new IllegalStateException("DMN model not found: " + DMN_MODEL_NAME);
+        }
+        Set<String> names = new TreeSet<>();
+        for (InputDataNode input : model.getDMNModel().getInputs()) {
+            String name = input.getName();
+            if ("number".equals(input.getType().getName()) && name.equals(name.toUpperCase(Locale.ROOT))) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /** The CardFraudDecision result (fraud_decision, fraud_reason) of a DMN evaluation. */
+    static Map<String, Object> decisionOf(Map<String, Object> dmnResult) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> decision = (Map<String, Object>) dmnResult.get(DMN_MODEL_NAME);
+        
+        if (decision == null) {
+            throw new IllegalStateException("DMN returned no decision");
+        }
+        return decision;
+    }
+
+    Map<String, Object> buildResponse(Map<String, Object> txn, Map<String, Object> dmnResult) {
+        Map<String, Object> decision = decisionOf(dmnResult);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("transaction_id", txn.get("txn_id"));
+        response.put("fraud_decision", decision.get("fraud_decision"));
+        response.put("fraud_reason", decision.get("fraud_reason"));
+        response.put("evaluated_at", Instant.now().toString());
+        response.put("model_version", "1.0");
+        if (txn.get("as_of") != null) {
+            response.put("as_of", String.valueOf(txn.get("as_of")));
+        }
+        
+        // Include the full DMN result if needed for debugging
+        if (Boolean.TRUE.equals(txn.get("debug"))) {
+            response.put("dmn_context", dmnResult);
+        }
+        
+        return response;
+    }
+
+    /** Compact copy for the flight recorder; on the fast path the dmn stage is the trusted-pair check. */
+    private void flightRecord(Map<String, Object> txn, RuleSnapshot rules, Map<String, Object> response,
+                              Map<String, Object> dmnInput, long start, long dmnStart, long dmnEnd, long recordStart) {
+        long end = System.nanoTime();
+        flightRecorder.recordCard(txn.get("txn_id"), dmnInput, rules.getVersion(),
+            response.get("fraud_decision"), response.get("fraud_reason"),
+            dmnStart - start, dmnEnd - dmnStart, end - recordStart, end - start);
+    }
+
+    /** Hand the decision to the journal and the audit table; dmnInput is not touched after this. */
+    private void journal(Map<String, Object> txn, RuleSnapshot rules, byte flags,
+                         Map<String, Object> response, Map<String, Object> dmnInput) {
+        String transactionId = asString(txn.get("txn_id"));
+        String decision = asString(response.get("fraud_decision"));
+        String reason = asString(response.get("fraud_reason"));
+        decisionJournal.append(DecisionRecord.MODEL_CARD, flags, rules.getVersion(), transactionId,
+            decision, reason, dmnInput);
+        auditService.record(DecisionRecord.MODEL_CARD, flags, rules.getVersion(), transactionId,
+            decision, reason, dmnInput);
+    }
+
+    private Map<String, Object> buildFastPathResponse(Map<String, Object> txn) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("transaction_id", txn.get("txn_id"));
+        response.put("fraud_decision", "NORMAL");
+        response.put("fraud_reason", "TRUSTED_PAIR");
+        response.put("evaluated_at", Instant.now().toString());
+        response.put("model_version", "1.0");
+        response.put("fast_path", true);
+        return response;
+    }
+
+    // Helper methods
+    static String asString(Object v) {
+        if (v == null) return null;
+        String s = String.valueOf(v).trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    /** ISO instant ("...Z" / offset) or local date-time in the server zone; null if absent or invalid. */
+    static Instant parseAsOf(Object v) {
+        String s = asString(v);
+        if (s == null) return null;
+        try {
+            return OffsetDateTime.parse(s).toInstant();
+        } catch (Exception ignored) {
+            // fall through to local date-time
+        }
+        try {
+            return LocalDateTime.parse(s).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid as_of timestamp: " + s);
+        }
+    }
+
+    static boolean asBoolean(Object v, boolean defaultVal) {
+        if (v == null) return defaultVal;
+        if (v instanceof Boolean) return (Boolean) v;
+        String s = String.valueOf(v).trim().toLowerCase();
+        if (s.isEmpty()) return defaultVal;
+        return s.equals("true") || s.equals("1") || s.equals("yes") || s.equals("y");
+    }
+
+    private static Double asNumber(Object v, double defaultVal) {
+        if (v == null) return defaultVal;
+        if (v instanceof Number) return ((Number) v).doubleValue();
+        try {
+            return Double.parseDouble(String.valueOf(v).trim());
+        } catch (Exception e) {
+            return defaultVal;
+        }
+    }
+}
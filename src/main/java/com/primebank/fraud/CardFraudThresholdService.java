@@ -24,4 +24,16 @@ public interface CardFraudThresholdService {
      * This is injected directly into DMN as a FEEL list.
      */
     List<String> getSuspiciousMccList();
+
+    /**
+     * Current immutable view of all card rule datasets,
+     * reloaded from the DB once the cache TTL has expired.
+     */
+    RuleSnapshot currentSnapshot();
+
+    /**
+     * Load all card rule datasets from the DB now and make them current.
+     * Throws if the DB cannot be read instead of keeping older rules.
+     */
+    RuleSnapshot reloadFromDatabase();
 }
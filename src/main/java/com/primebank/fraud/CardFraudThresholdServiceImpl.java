@@ -1,47 +1,75 @@
 package com.primebank.fraud;
 
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
-import javax.sql.DataSource;
 import java.math.BigDecimal;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ApplicationScoped
 public class CardFraudThresholdServiceImpl implements CardFraudThresholdService {
 
     @Inject
-    DataSource dataSource;
+    RuleDatasetLoader ruleLoader;
+
+    @Inject
+    RuleSnapshotFileStore snapshotStore;
+
+    // All rule datasets are loaded and swapped together
+    private volatile RuleSnapshot snapshot = RuleSnapshot.EMPTY;
+    // Epoch millis after which the next DB load is due (TTL, or backoff after a failure)
+    private volatile long nextRefreshAt = 0L;
+    private final AtomicBoolean backgroundRefresh = new AtomicBoolean();
+    private final AtomicLong snapshotVersion = new AtomicLong();
+
+    // Background DB loads and last-known-good saves, off the request threads and the shared common pool
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "card-rules-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Safe to keep long: admin refreshes are propagated cluster-wide by CacheInvalidationService
+    @ConfigProperty(name = "fraud.cache.ttl.minutes", defaultValue = "5")
+    long cacheTtlMinutes;
+
+    // While the DB is failing, requests are not retrying it more often than this
+    @ConfigProperty(name = "fraud.rules.retry-backoff.seconds", defaultValue = "30")
+    long retryBackoffSeconds;
+
+    void onStart(@Observes StartupEvent ev) {
+        // Serve the last-known-good rules right away, then replace them from the DB
+        RuleSnapshot lastKnownGood = snapshotStore.load();
+        if (lastKnownGood != null) {
+            snapshotVersion.set(lastKnownGood.getVersion());
+            snapshot = lastKnownGood;
+            System.err.println("Loaded last-known-good card rule snapshot v" + lastKnownGood.getVersion()
+                + " from " + lastKnownGood.getLoadedAt());
+        }
+        refreshInBackground();
+    }
 
-    // Cache with TTL
-    private volatile Map<String, BigDecimal> thresholdCache = new ConcurrentHashMap<>();
-    private volatile LocalDateTime lastThresholdRefresh = LocalDateTime.MIN;
-    
-    private volatile List<String> suspiciousMccList = Collections.emptyList();
-    private volatile LocalDateTime lastMccRefresh = LocalDateTime.MIN;
-    
-    private volatile Map<String, Map<String, String>> productMccRiskCache = new ConcurrentHashMap<>();
-    private volatile LocalDateTime lastProductMccRefresh = LocalDateTime.MIN;
-    
-    private volatile Map<String, String> countryRiskCache = new ConcurrentHashMap<>();
-    private volatile LocalDateTime lastCountryRefresh = LocalDateTime.MIN;
-    
-    private static final int CACHE_TTL_MINUTES = 5;
+    void onStop(@Observes ShutdownEvent ev) {
+        background.shutdown();
+    }
 
     @Override
     public void loadActiveThresholds() {
-        loadThresholdsWithCache();
+        loadRulesWithCache();
     }
 
     @Override
     public Number get(String key) {
-        loadThresholdsWithCache();
-        BigDecimal value = thresholdCache.get(key);
+        BigDecimal value = currentSnapshot().getThresholds().get(key);
         if (value == null) {
             // Return default values for missing thresholds
             return getDefaultThreshold(key);
@@ -51,162 +79,87 @@ public class CardFraudThresholdServiceImpl implements CardFraudThresholdService
 
     @Override
     public List<String> getSuspiciousMccList() {
-        loadMccRulesWithCache();
-        return suspiciousMccList;
+        return currentSnapshot().getSuspiciousMccList();
     }
 
     // New method to get all thresholds at once (better for DMN)
     public Map<String, Number> getAllThresholds() {
-        loadThresholdsWithCache();
         Map<String, Number> result = new HashMap<>();
-        thresholdCache.forEach((key, value) -> result.put(key, value));
+        currentSnapshot().getThresholds().forEach((key, value) -> result.put(key, value));
         return result;
     }
 
     // New method to get product MCC risk
     public String getProductMccRisk(String productCode, String mccCode) {
-        loadProductMccRulesWithCache();
-        Map<String, String> productRisks = productMccRiskCache.get(productCode);
-        if (productRisks != null) {
-            String risk = productRisks.get(mccCode);
-            if (risk != null) {
-                return risk;
-            }
-        }
-        return "NORMAL"; // Default
+        return currentSnapshot().getProductMccRisk().riskLevel(productCode, mccCode);
     }
 
     // New method to get country risk
     public String getCountryRisk(String countryName) {
-    loadCountryRulesWithCache();
-    
-        if (countryName == null) {
-            return "NORMAL";
-        }
-    
-        String normalized = normalizeCountryName(countryName);
-        return countryRiskCache.getOrDefault(normalized, "NORMAL");
+        // Codes, names and aliases all resolve in memory
+        return currentSnapshot().getCountryIndex().decisionLevel(countryName, "NORMAL");
     }
 
-    // Private cache management methods
-    private void loadThresholdsWithCache() {
-        if (ChronoUnit.MINUTES.between(lastThresholdRefresh, LocalDateTime.now()) >= CACHE_TTL_MINUTES) {
-            refreshThresholds();
-        }
-    }
-
-    private void loadMccRulesWithCache() {
-        if (ChronoUnit.MINUTES.between(lastMccRefresh, LocalDateTime.now()) >= CACHE_TTL_MINUTES) {
-            refreshMccRules();
-        }
+    @Override
+    public RuleSnapshot currentSnapshot() {
+        loadRulesWithCache();
+        return snapshot;
     }
 
-    private void loadProductMccRulesWithCache() {
-        if (ChronoUnit.MINUTES.between(lastProductMccRefresh, LocalDateTime.now()) >= CACHE_TTL_MINUTES) {
-            refreshProductMccRules();
+    // Private cache management methods
+    private void loadRulesWithCache() {
+        if (System.currentTimeMillis() < nextRefreshAt) {
+            return;
         }
-    }
-
-    private void loadCountryRulesWithCache() {
-        if (ChronoUnit.MINUTES.between(lastCountryRefresh, LocalDateTime.now()) >= 5) {
-            refreshCountryRules();
+        if (snapshot == RuleSnapshot.EMPTY) {
+            // Nothing to serve yet: the first caller waits for the DB
+            refreshRules(false);
+        } else {
+            // Keep serving the current snapshot while the DB is queried
+            refreshInBackground();
         }
     }
 
-    private synchronized void refreshThresholds() {
-        Map<String, BigDecimal> newCache = new HashMap<>();
-        String sql = "SELECT threshold_key, threshold_value FROM fraud_threshold_card WHERE is_active = 1 AND (effective_to IS NULL OR effective_to > GETDATE())";
-
-        try (Connection con = dataSource.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-
-            while (rs.next()) {
-                String key = rs.getString("threshold_key");
-                BigDecimal value = rs.getBigDecimal("threshold_value");
-                newCache.put(key, value);
+    private void refreshInBackground() {
+        if (backgroundRefresh.compareAndSet(false, true)) {
+            try {
+                background.execute(() -> {
+                    try {
+                        refreshRules(false);
+                    } finally {
+                        backgroundRefresh.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                backgroundRefresh.set(false);
             }
-
-            this.thresholdCache = newCache;
-            this.lastThresholdRefresh = LocalDateTime.now();
-
-        } catch (Exception e) {
-            // Log error but don't clear cache
-            System.err.println("Failed to refresh thresholds: " + e.getMessage());
         }
     }
 
-    private synchronized void refreshMccRules() {
-        List<String> newList = new ArrayList<>();
-        String sql = "SELECT mcc_code FROM fraud_mcc_rule WHERE is_active = 1";
-
-        try (Connection con = dataSource.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-
-            while (rs.next()) {
-                newList.add(rs.getString("mcc_code"));
-            }
-
-            this.suspiciousMccList = Collections.unmodifiableList(newList);
-            this.lastMccRefresh = LocalDateTime.now();
-
-        } catch (Exception e) {
-            System.err.println("Failed to refresh MCC rules: " + e.getMessage());
+    private synchronized void refreshRules(boolean force) {
+        if (!force && System.currentTimeMillis() < nextRefreshAt) {
+            // Another caller refreshed (or failed) while we waited for the lock
+            return;
         }
-    }
-
-    private synchronized void refreshProductMccRules() {
-        Map<String, Map<String, String>> newCache = new HashMap<>();
-        String sql = "SELECT product_code, mcc_code, risk_level FROM fraud_mcc_product_rule WHERE is_active = 1";
-
-        try (Connection con = dataSource.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-
-            while (rs.next()) {
-                String productCode = rs.getString("product_code");
-                String mccCode = rs.getString("mcc_code");
-                String riskLevel = rs.getString("risk_level");
-
-                newCache.computeIfAbsent(productCode, k -> new HashMap<>())
-                       .put(mccCode, riskLevel);
-            }
-
-            this.productMccRiskCache = newCache;
-            this.lastProductMccRefresh = LocalDateTime.now();
-
+        try {
+            reloadFromDatabase();
         } catch (Exception e) {
-            System.err.println("Failed to refresh product MCC rules: " + e.getMessage());
+            // Log error but don't clear cache
+            this.nextRefreshAt = System.currentTimeMillis() + retryBackoffSeconds * 1_000L;
+            System.err.println("Failed to refresh card fraud rules: " + e.getMessage());
         }
     }
 
-    private synchronized void refreshCountryRules() {
-        Map<String, String> newCache = new HashMap<>();
-        
-        String sql = "SELECT UPPER(country_name) as country_name, decision_level " + 
-            "FROM fraud_country_block_rule " +
-            "WHERE is_active = 1 " +
-            "UNION SELECT UPPER(country_code) as country_name, decision_level " +
-            "FROM fraud_country_block_rule WHERE is_active = 1 ";
-            
-
-        try (Connection con = dataSource.getConnection();
-            PreparedStatement ps = con.prepareStatement(sql);
-            ResultSet rs = ps.executeQuery()) {
-
-            while (rs.next()) {
-                String countryKey = rs.getString("country_name");
-                String decisionLevel = rs.getString("decision_level");
-                newCache.put(countryKey, decisionLevel);
-            }
-
-            this.countryRiskCache = newCache;
-            this.lastCountryRefresh = LocalDateTime.now();
+    @Override
+    public synchronized RuleSnapshot reloadFromDatabase() {
+        // One round trip for thresholds, MCC, product MCC and country rules
+        RuleSnapshot fresh = ruleLoader.loadAll(snapshotVersion.incrementAndGet());
+        this.snapshot = fresh;
+        this.nextRefreshAt = System.currentTimeMillis() + cacheTtlMinutes * 60_000L;
 
-        } catch (Exception e) {
-            System.err.println("Failed to refresh country rules: " + e.getMessage());
-        }
+        snapshotStore.save(fresh);
+        return fresh;
     }
 
     private Number getDefaultThreshold(String key) {
@@ -219,47 +172,37 @@ public class CardFraudThresholdServiceImpl implements CardFraudThresholdService
             "FAILED_TXN_1DAY", 2.0,
             "ML_FRAUD_THRESHOLD", 0.9,
             "WRONG_CVV_10", 2.0,
-            "WRONG_PIN_10", 2.0
+            "WRONG_PIN_10", 2.0,
+            "MAX_TRAVEL_KMH", 1000.0
         );
-        
+
         return defaults.getOrDefault(key, 0.0);
     }
 
-    // Add method to force refresh cache (for admin operations)
-    public void refreshAllCaches() {
-        refreshThresholds();
-        refreshMccRules();
-        refreshProductMccRules();
-        refreshCountryRules();
+    /**
+     * Apply an admin change to the in-memory rules without a reload.
+     * The DB must already hold the change; readers see either the old or
+     * the new snapshot, never a partial one.
+     */
+    public synchronized RuleSnapshot applyDelta(RuleDelta delta) {
+        RuleSnapshot updated = delta.apply(snapshot, snapshotVersion.incrementAndGet());
+        this.snapshot = updated;
+
+        // Keep the last-known-good file current without blocking the admin call
+        try {
+            background.execute(() -> snapshotStore.save(updated));
+        } catch (RejectedExecutionException e) {
+            System.err.println("Last-known-good rules not saved during shutdown: v" + updated.getVersion());
+        }
+        return updated;
     }
 
-    private String normalizeCountryName(String countryName) {
-        if (countryName == null || countryName.trim().isEmpty()) {
-            return "";
-        }
-        
-        // Trim and convert to uppercase
-        String normalized = countryName.trim().toUpperCase();
-        
-        // Remove extra spaces
-        normalized = normalized.replaceAll("\\s+", " ");
-        
-        // Handle common variations
-        Map<String, String> variations = Map.of(
-            "BURKINA FASSO", "BURKINA FASO",
-            "THE GAMBIA", "GAMBIA",
-            "USA", "UNITED STATES",
-            "UK", "UNITED KINGDOM",
-            "UAE", "UNITED ARAB EMIRATES"
-        );
-        
-        for (Map.Entry<String, String> entry : variations.entrySet()) {
-            if (normalized.equals(entry.getKey()) || normalized.contains(entry.getKey())) {
-                normalized = entry.getValue();
-                break;
-            }
-        }
-        
-        return normalized;
+    public interface RuleDelta {
+        RuleSnapshot apply(RuleSnapshot current, long newVersion);
+    }
+
+    // Add method to force refresh cache (for admin operations)
+    public void refreshAllCaches() {
+        refreshRules(true);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package com.primebank.fraud;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Card x terminal attempts and failures over roughly the last day, for
+ * card_terminal_txn_cnt1day / card_terminal_txn_failed_cnt1day.
+ *
+ * The pair keyspace is far too large to count exactly, so each metric is
+ * a {@link DecayingCountMinSketch} with a 24h time constant and fixed
+ * memory (default 2^20 x 4 floats = 16 MB per metric). Counts are decayed
+ * rather than windowed: an attempt 24h ago still weighs 0.37.
+ *
+ * Error: counts never undercount. With probability at least 1 - e^-4
+ * (about 98%), the overcount is at most e / 2^20 times the decayed total of
+ * that metric. For 5M attempts/day this is about 13 attempts. Failures are
+ * a much smaller stream, so their overcount is usually below 1. An
+ * inflated attempt count only lowers the failure ratio.
+ *
+ * Attempts are counted at decision time. Failures are reported separately
+ * once the authorization outcome is known.
+ */
+@ApplicationScoped
+public class CardTerminalTracker {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    @ConfigProperty(name = "fraud.terminal-sketch.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.terminal-sketch.width", defaultValue = "1048576")
+    int width;
+
+    @ConfigProperty(name = "fraud.terminal-sketch.depth", defaultValue = "4")
+    int depth;
+
+    private DecayingCountMinSketch attempts;
+    private DecayingCountMinSketch failures;
+
+    @PostConstruct
+    void init() {
+        long now = System.currentTimeMillis();
+        attempts = new DecayingCountMinSketch(width, depth, DAY_MILLIS, now);
+        failures = new DecayingCountMinSketch(width, depth, DAY_MILLIS, now);
+    }
+
+    /** Count an attempt and return the pair's counts including it. */
+    public TerminalCounts recordAttempt(String cardKey, String terminalId, long eventMillis) {
+        if (!enabled || cardKey == null || terminalId == null) {
+            return TerminalCounts.NONE;
+        }
+        long hi = Fingerprints.pairHi(cardKey, terminalId);
+        long lo = Fingerprints.pairLo(cardKey, terminalId);
+        double attemptCount = attempts.add(hi, lo, eventMillis);
+        return new TerminalCounts(attemptCount, failures.estimate(hi, lo, eventMillis));
+    }
+
+    /** Count a failed (declined / errored) authorization for the pair. */
+    public void recordFailure(String cardKey, String terminalId, long eventMillis) {
+        if (!enabled || cardKey == null || terminalId == null) {
+            return;
+        }
+        failures.add(Fingerprints.pairHi(cardKey, terminalId), Fingerprints.pairLo(cardKey, terminalId), eventMillis);
+    }
+
+    public TerminalCounts read(String cardKey, String terminalId, long atMillis) {
+        if (!enabled || cardKey == null || terminalId == null) {
+            return TerminalCounts.NONE;
+        }
+        long hi = Fingerprints.pairHi(cardKey, terminalId);
+        long lo = Fingerprints.pairLo(cardKey, terminalId);
+        return new TerminalCounts(attempts.estimate(hi, lo, atMillis), failures.estimate(hi, lo, atMillis));
+    }
+
+    public Map<String, Object> stats() {
+        long now = System.currentTimeMillis();
+        double attemptTotal = attempts.total(now);
+        double failureTotal = failures.total(now);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("width", attempts.width());
+        stats.put("depth", depth);
+        stats.put("bytes", attempts.sizeInBytes() + failures.sizeInBytes());
+        stats.put("decayed_attempts", attemptTotal);
+        stats.put("decayed_failures", failureTotal);
+        // Overcount bound that holds with probability 1 - e^-depth
+        stats.put("attempt_error_bound", Math.E * attemptTotal / attempts.width());
+        stats.put("failure_error_bound", Math.E * failureTotal / failures.width());
+        stats.put("bound_confidence", 1 - Math.exp(-depth));
+        return stats;
+    }
+}
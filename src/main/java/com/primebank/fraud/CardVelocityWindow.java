@@ -0,0 +1,134 @@
+package com.primebank.fraud;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Last hour of activity for one card as 60 one-minute buckets in a ring.
+ *
+ * Memory is fixed per card (60 x int count, double amount, int MCC 6011
+ * count, about 1 KB with headers) no matter how many transactions the card
+ * makes. Windows are whole minutes, so "last 5 minutes" means the event's
+ * minute plus the 4 before it. Not thread-safe: guarded by the owning
+ * stripe of {@link VelocityStore}.
+ */
+final class CardVelocityWindow extends MinuteRing {
+
+    final int[] counts = new int[SLOTS];
+    final double[] amounts = new double[SLOTS];
+    final int[] cashCounts = new int[SLOTS];
+
+    // Newest event seen, for idle expiry
+    long lastEventMillis;
+    // Journal sequence of the last event applied; replay skips anything older
+    long lastSeq;
+
+    CardVelocityWindow(long eventMillis) {
+        super(eventMillis);
+        this.lastEventMillis = eventMillis;
+    }
+
+    /**
+     * Add one transaction. Events older than the ring are not stored.
+     * @return false if the event was too old to record
+     */
+    boolean record(long eventMillis, double amount, boolean cashMcc) {
+        int slot = slotFor(eventMillis / MINUTE_MILLIS);
+        if (slot < 0) {
+            return false;
+        }
+        counts[slot]++;
+        amounts[slot] += amount;
+        if (cashMcc) {
+            cashCounts[slot]++;
+        }
+        lastEventMillis = Math.max(lastEventMillis, eventMillis);
+        return true;
+    }
+
+    /**
+     * Add another window's buckets for the same card, e.g. history handed
+     * over by the previous owner. Minutes older than this ring are dropped.
+     */
+    void merge(CardVelocityWindow other) {
+        slotFor(other.headMinute);
+        for (int back = 0; back < SLOTS; back++) {
+            long minute = other.headMinute - back;
+            if (headMinute - minute >= SLOTS) {
+                break;
+            }
+            int slot = (int) (minute % SLOTS);
+            counts[slot] += other.counts[slot];
+            amounts[slot] += other.amounts[slot];
+            cashCounts[slot] += other.cashCounts[slot];
+        }
+        lastEventMillis = Math.max(lastEventMillis, other.lastEventMillis);
+    }
+
+    @Override
+    void clearSlot(int slot) {
+        counts[slot] = 0;
+        amounts[slot] = 0;
+        cashCounts[slot] = 0;
+    }
+
+    /** Write the non-empty buckets: headMinute, lastEventMillis, lastSeq, n x (slot, count, amount, cash). */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(headMinute);
+        out.writeLong(lastEventMillis);
+        out.writeLong(lastSeq);
+        int used = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (counts[slot] != 0) used++;
+        }
+        out.writeByte(used);
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (counts[slot] != 0) {
+                out.writeByte(slot);
+                out.writeInt(counts[slot]);
+                out.writeDouble(amounts[slot]);
+                out.writeInt(cashCounts[slot]);
+            }
+        }
+    }
+
+    static CardVelocityWindow readFrom(ByteBuffer in) {
+        long headMinute = in.getLong();
+        CardVelocityWindow window = new CardVelocityWindow(headMinute * MINUTE_MILLIS);
+        window.lastEventMillis = in.getLong();
+        window.lastSeq = in.getLong();
+        int used = in.get();
+        for (int i = 0; i < used; i++) {
+            int slot = in.get();
+            window.counts[slot] = in.getInt();
+            window.amounts[slot] = in.getDouble();
+            window.cashCounts[slot] = in.getInt();
+        }
+        return window;
+    }
+
+    /** Window sums ending at the minute of {@code atMillis}. */
+    VelocityFeatures read(long atMillis) {
+        long at = atMillis / MINUTE_MILLIS;
+
+        int count5 = 0, count30 = 0, cash60 = 0;
+        double amount5 = 0, amount30 = 0;
+        for (int back = 0; back < SLOTS; back++) {
+            int slot = slotBack(at, back);
+            if (slot < 0) {
+                continue;
+            }
+            if (back < 5) {
+                count5 += counts[slot];
+                amount5 += amounts[slot];
+            }
+            if (back < 30) {
+                count30 += counts[slot];
+                amount30 += amounts[slot];
+            }
+            cash60 += cashCounts[slot];
+        }
+        return new VelocityFeatures(count5, amount5, count30, amount30, cash60);
+    }
+}
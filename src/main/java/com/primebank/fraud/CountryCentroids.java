@@ -0,0 +1,212 @@
+package com.primebank.fraud;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Country centroids with every pairwise great-circle distance precomputed,
+ * so a distance is one array read. Countries get small dense ids in file
+ * order ({@code geo/country-centroids.csv}: code, name, lat, lon).
+ *
+ * A centroid stands in for wherever in the country the card was used, so
+ * for neighbours ({@code geo/country-neighbours.csv}: a, b, allowance_km)
+ * the distance is reduced by the pair's allowance, by default all of it:
+ * Shenzhen to Hong Kong or Detroit to Windsor is minutes, not the 1,800 or
+ * 2,250 km between the centroids.
+ */
+final class CountryCentroids {
+
+    static final String RESOURCE = "geo/country-centroids.csv";
+    static final String NEIGHBOURS_RESOURCE = "geo/country-neighbours.csv";
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final int MAX_RESOLVED_CACHE = 10_000;
+    private static final int UNKNOWN = -1;
+
+    private final String[] codes;
+    // distances[a * count + b], in km
+    private final float[] distances;
+    // Normalized code or name -> id
+    private final Map<String, Integer> ids;
+    // Raw input -> id (or UNKNOWN), for spellings only the rule CountryIndex knows;
+    // dropped whenever a new rule snapshot brings a new index
+    private volatile Resolved resolved = new Resolved(null);
+
+    private static final class Resolved {
+        final CountryIndex index;
+        final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+        Resolved(CountryIndex index) {
+            this.index = index;
+        }
+    }
+
+    private CountryCentroids(List<String> codes, List<String> names, double[] lat, double[] lon,
+                             List<String[]> neighbours) {
+        int n = codes.size();
+        this.codes = codes.toArray(new String[0]);
+        this.ids = new HashMap<>(n * 4);
+        for (int i = 0; i < n; i++) {
+            ids.put(codes.get(i), i);
+            ids.putIfAbsent(CountryIndex.normalize(names.get(i)), i);
+        }
+
+        this.distances = new float[n * n];
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                float d = (float) haversineKm(lat[a], lon[a], lat[b], lon[b]);
+                distances[a * n + b] = d;
+                distances[b * n + a] = d;
+            }
+        }
+
+        for (String[] pair : neighbours) {
+            Integer a = ids.get(pair[0]);
+            Integer b = ids.get(pair[1]);
+            if (a == null || b == null) {
+                throw new IllegalStateException("Unknown country in neighbour pair " + pair[0] + "," + pair[1]);
+            }
+            float d = distances[a * n + b];
+            float reduced = pair[2].isEmpty() ? 0f : Math.max(0f, d - Float.parseFloat(pair[2]));
+            distances[a * n + b] = reduced;
+            distances[b * n + a] = reduced;
+        }
+    }
+
+    static CountryCentroids load() {
+        List<String> codes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<double[]> points = new ArrayList<>();
+        for (String[] cols : readCsv(RESOURCE, 4)) {
+            codes.add(CountryIndex.normalize(cols[0]));
+            names.add(cols[1]);
+            points.add(new double[] {Double.parseDouble(cols[2]), Double.parseDouble(cols[3])});
+        }
+        List<String[]> neighbours = new ArrayList<>();
+        for (String[] cols : readCsv(NEIGHBOURS_RESOURCE, 3)) {
+            neighbours.add(new String[] {CountryIndex.normalize(cols[0]), CountryIndex.normalize(cols[1]), cols[2].trim()});
+        }
+
+        double[] lat = new double[points.size()];
+        double[] lon = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            lat[i] = points.get(i)[0];
+            lon[i] = points.get(i)[1];
+        }
+        return new CountryCentroids(codes, names, lat, lon, neighbours);
+    }
+
+    /** Data rows of a CSV resource with a header row; blank and # lines are skipped. */
+    private static List<String[]> readCsv(String resource, int columns) {
+        InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("Missing resource " + resource);
+        }
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            boolean header = true;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (header) {
+                    header = false;
+                    continue;
+                }
+                String[] cols = line.split(",", -1);
+                if (cols.length != columns) {
+                    throw new IllegalStateException("Bad row in " + resource + ": " + line);
+                }
+                rows.add(cols);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + resource, e);
+        }
+        return rows;
+    }
+
+    /**
+     * Id for a user-supplied country (code, name, or any spelling the rule
+     * index resolves), or -1 if unknown.
+     */
+    int idOf(String raw, CountryIndex index) {
+        if (raw == null) {
+            return UNKNOWN;
+        }
+        Integer id = ids.get(raw);
+        if (id != null) {
+            return id;
+        }
+        Resolved cache = resolved;
+        if (cache.index != index) {
+            // New rule snapshot: aliases may have changed
+            cache = new Resolved(index);
+            resolved = cache;
+        }
+        id = cache.ids.get(raw);
+        if (id != null) {
+            return id;
+        }
+
+        int found = resolveSlow(raw, index);
+        if (cache.ids.size() >= MAX_RESOLVED_CACHE) {
+            cache.ids.clear();
+        }
+        cache.ids.put(raw, found);
+        return found;
+    }
+
+    float distanceKm(int a, int b) {
+        return distances[a * codes.length + b];
+    }
+
+    String code(int id) {
+        return codes[id];
+    }
+
+    int size() {
+        return codes.length;
+    }
+
+    long sizeInBytes() {
+        return distances.length * 4L;
+    }
+
+    private int resolveSlow(String raw, CountryIndex index) {
+        Integer id = ids.get(CountryIndex.normalize(raw));
+        if (id != null) {
+            return id;
+        }
+        // Aliases known to the rule index ("USA", "UAE")
+        CountryIndex.Entry entry = index.resolve(raw);
+        if (entry == null) {
+            return UNKNOWN;
+        }
+        if (entry.getCode() != null && (id = ids.get(entry.getCode())) != null) {
+            return id;
+        }
+        if (entry.getName() != null && (id = ids.get(entry.getName())) != null) {
+            return id;
+        }
+        return UNKNOWN;
+    }
+
+    private static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+            * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+}
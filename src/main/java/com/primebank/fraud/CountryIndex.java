@@ -0,0 +1,231 @@
+package com.primebank.fraud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory country lookup built once per rule refresh.
+ *
+ * Resolves codes, names and explicit aliases to a canonical country without
+ * JDBC or regex. Matching is exact after normalization (trim, upper-case,
+ * single spaces): there is no partial or fuzzy matching, because "NIGER" must
+ * not pick up NIGERIA's rule nor "OMAN" ROMANIA's. A misspelling that should
+ * match gets a fraud_country_alias row; anything else has no rule. Raw inputs
+ * that needed normalizing are remembered in a bounded cache.
+ */
+public final class CountryIndex {
+
+    /** Built-in aliases, applied before the DB-driven fraud_country_alias rows. */
+    private static final Map<String, String> DEFAULT_ALIASES = Map.of(
+        "BURKINA FASSO", "BURKINA FASO",
+        "THE GAMBIA", "GAMBIA",
+        "REPUBLIC OF KOREA", "SOUTH KOREA",
+        "DPRK", "NORTH KOREA",
+        "USA", "UNITED STATES",
+        "UK", "UNITED KINGDOM",
+        "UAE", "UNITED ARAB EMIRATES"
+    );
+
+    // Bounds the memory spent on remembering unknown / unnormalized inputs
+    private static final int MAX_RESOLVED_CACHE = 10_000;
+
+    private static final Entry NO_MATCH = new Entry(null, null, null);
+
+    public static final CountryIndex EMPTY = builder().build();
+
+    public static final class Entry {
+        private final String code;
+        private final String name;
+        private final String decisionLevel;
+
+        Entry(String code, String name, String decisionLevel) {
+            this.code = code;
+            this.name = name;
+            this.decisionLevel = decisionLevel;
+        }
+
+        /** ISO code as stored in fraud_country_block_rule, may be null for name-only rules. */
+        public String getCode() {
+            return code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** FRAUD | SUSPICIOUS | null when the country has no active rule. */
+        public String getDecisionLevel() {
+            return decisionLevel;
+        }
+    }
+
+    // Normalized name, code or alias -> entry
+    private final Map<String, Entry> exact;
+
+    // Source rows, kept so the index can be persisted and rebuilt
+    private final List<Entry> rules;
+    private final Map<String, String> aliases;
+
+    private final ConcurrentHashMap<String, Entry> resolved = new ConcurrentHashMap<>();
+
+    private CountryIndex(Map<String, Entry> exact, List<Entry> rules, Map<String, String> aliases) {
+        this.exact = exact;
+        this.rules = Collections.unmodifiableList(rules);
+        this.aliases = Collections.unmodifiableMap(aliases);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Resolve a user-supplied country code, name or alias.
+     * @return the matching entry, or null if the input is not an exact match
+     */
+    public Entry resolve(String raw) {
+        if (raw == null) {
+            return null;
+        }
+
+        // Hot path: canonical spellings and previously seen inputs
+        Entry entry = exact.get(raw);
+        if (entry != null) {
+            return entry;
+        }
+        entry = resolved.get(raw);
+        if (entry != null) {
+            return entry == NO_MATCH ? null : entry;
+        }
+
+        entry = exact.get(normalize(raw));
+        if (resolved.size() >= MAX_RESOLVED_CACHE) {
+            resolved.clear();
+        }
+        resolved.put(raw, entry == null ? NO_MATCH : entry);
+        return entry;
+    }
+
+    /** Decision level for the input, or {@code defaultLevel} when unknown or unruled. */
+    public String decisionLevel(String raw, String defaultLevel) {
+        Entry entry = resolve(raw);
+        if (entry == null || entry.decisionLevel == null) {
+            return defaultLevel;
+        }
+        return entry.decisionLevel;
+    }
+
+    public int size() {
+        return exact.size();
+    }
+
+    /**
+     * Copy with the rule for one country replaced, or removed when
+     * {@code decisionLevel} is null. Matched on code, or on name if no code;
+     * a null {@code name} keeps the replaced rule's name, as the DB does.
+     */
+    public CountryIndex withRule(String code, String name, String decisionLevel) {
+        String c = code == null ? null : normalize(code);
+        String n = name == null ? null : normalize(name);
+
+        Builder b = builder();
+        String keptName = null;
+        for (Entry rule : rules) {
+            boolean same = c != null && !c.isEmpty() ? c.equals(rule.code) : n != null && n.equals(rule.name);
+            if (!same) {
+                b.addRule(rule.code, rule.name, rule.decisionLevel);
+            } else if (keptName == null) {
+                keptName = rule.name;
+            }
+        }
+        if (n == null) {
+            n = keptName;
+        }
+        if (decisionLevel != null) {
+            b.addRule(c, n, decisionLevel);
+        }
+        aliases.forEach(b::addAlias);
+        return b.build();
+    }
+
+    /** Active country rules the index was built from. */
+    public List<Entry> getRules() {
+        return rules;
+    }
+
+    /** DB-driven aliases (alias -> code or name); built-ins are not included. */
+    public Map<String, String> getAliases() {
+        return aliases;
+    }
+
+    /** Trim, upper-case and collapse inner whitespace to single spaces. */
+    static String normalize(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    public static final class Builder {
+
+        private final Map<String, Entry> byKey = new LinkedHashMap<>();
+        private final List<Entry> rules = new ArrayList<>();
+        private final Map<String, String> dbAliases = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /** Add an active row of fraud_country_block_rule. */
+        public Builder addRule(String code, String name, String decisionLevel) {
+            String c = code == null ? null : normalize(code);
+            String n = name == null ? null : normalize(name);
+            Entry entry = new Entry(c == null || c.isEmpty() ? null : c, n, decisionLevel);
+            rules.add(entry);
+            if (n != null && !n.isEmpty()) byKey.put(n, entry);
+            if (entry.code != null) byKey.put(entry.code, entry);
+            return this;
+        }
+
+        /** Map an alternative spelling to a country code or name. DB aliases override built-ins. */
+        public Builder addAlias(String alias, String target) {
+            if (alias != null && target != null) {
+                dbAliases.put(normalize(alias), normalize(target));
+            }
+            return this;
+        }
+
+        public CountryIndex build() {
+            Map<String, Entry> exact = new HashMap<>(byKey);
+
+            Map<String, String> aliases = new LinkedHashMap<>(DEFAULT_ALIASES);
+            aliases.putAll(dbAliases);
+
+            for (Map.Entry<String, String> alias : aliases.entrySet()) {
+                Entry target = byKey.get(alias.getValue());
+                if (target == null) {
+                    // Alias to a country without rules: still resolves to its canonical code
+                    target = new Entry(alias.getValue().length() <= 3 ? alias.getValue() : null,
+                                       alias.getValue().length() <= 3 ? null : alias.getValue(), null);
+                }
+                exact.putIfAbsent(alias.getKey(), target);
+            }
+
+            return new CountryIndex(exact, rules, dbAliases);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.primebank.fraud;
+
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Distinct currencies per card over the last hour, for ccy_cnt1hr.
+ *
+ * Cards live in a {@link StripedStore}, like the velocity windows, and are
+ * dropped after an hour idle. Each card holds one {@link CardCurrencySet}
+ * of constant size; the request path looks it up and updates it without
+ * allocating.
+ */
+@ApplicationScoped
+public class CurrencyTracker {
+
+    private static final long IDLE_MILLIS = 60 * MinuteRing.MINUTE_MILLIS;
+    private static final int STRIPES = 64;
+
+    @ConfigProperty(name = "fraud.currency-tracker.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.currency-tracker.max-cards", defaultValue = "1000000")
+    int maxCards;
+
+    private StripedStore<CardCurrencySet> cards;
+
+    @PostConstruct
+    void init() {
+        cards = new StripedStore<>(STRIPES, maxCards, IDLE_MILLIS, MinuteRing.MINUTE_MILLIS, 64,
+            set -> set.lastEventMillis);
+    }
+
+    /**
+     * Record the currency and return the card's distinct currencies in the
+     * last hour, including this one.
+     * @return -1 when not tracked (disabled, missing key or currency, store full)
+     */
+    public int recordAndCount(String cardKey, String currency, long eventMillis) {
+        if (!enabled || cardKey == null || Fingerprints.isBlank(currency)) {
+            return -1;
+        }
+        long code = CardCurrencySet.code(currency);
+        StripedStore.Stripe<CardCurrencySet> stripe = cards.stripeFor(cardKey);
+        CardCurrencySet created = null;
+        int count;
+        stripe.lock.lock();
+        try {
+            CardCurrencySet set = stripe.entries.get(cardKey);
+            if (set == null) {
+                if (!cards.hasRoom(stripe)) {
+                    return -1;
+                }
+                set = new CardCurrencySet();
+                stripe.entries.put(cardKey, set);
+                created = set;
+            }
+            count = set.record(code, eventMillis);
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (created != null) {
+            cards.track(cardKey, created);
+        }
+        return count;
+    }
+
+    /** Read-only count, e.g. for as-of re-scoring; -1 when not tracked. */
+    public int count(String cardKey, long atMillis) {
+        if (!enabled || cardKey == null) {
+            return -1;
+        }
+        StripedStore.Stripe<CardCurrencySet> stripe = cards.stripeFor(cardKey);
+        stripe.lock.lock();
+        try {
+            CardCurrencySet set = stripe.entries.get(cardKey);
+            return set == null ? -1 : set.countAt(atMillis);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Scheduled(every = "{fraud.velocity.expiry-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void expireIdleCards() {
+        cards.expireIdle(System.currentTimeMillis());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("cards", cards.size());
+        stats.put("max_cards", cards.capacity());
+        stats.put("expired_cards", cards.expired());
+        return stats;
+    }
+}
@@ -0,0 +1,157 @@
+package com.primebank.fraud;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-min sketch of exponentially decayed counts.
+ *
+ * An event at time t adds weight {@code exp(-(now - t) / tau)} to its key,
+ * so a count reads as "events in roughly the last tau". Decay is applied
+ * forward: cells store {@code exp((t - landmark) / tau)} and are divided by
+ * the weight of "now" when queried, so nothing has to be swept on a timer.
+ * The landmark is moved (one pass over the cells) before weights could lose
+ * float precision.
+ *
+ * Memory is fixed at {@code depth x width} floats. Updates are conservative
+ * (only the minimal cells grow), so estimates never undercount and, with
+ * probability at least {@code 1 - e^-depth}, overcount by at most
+ * {@code e / width} of the decayed total of all keys.
+ *
+ * Concurrency: cells are raised with compare-and-set, so keys that share a
+ * cell never block each other. Only updates of the same key must not
+ * interleave (both would read the same minimum and one event would be
+ * lost), so keys hash to {@link #STRIPES} locks. Moving the landmark takes
+ * every stripe.
+ */
+final class DecayingCountMinSketch {
+
+    // Re-base once event weights reach e^20; floats stay exact enough well past that
+    private static final double MAX_EXPONENT = 20.0;
+    static final int STRIPES = 64;
+
+    private final int width;
+    private final int depth;
+    private final int mask;
+    private final double tauMillis;
+    // Float bits, raised by compare-and-set
+    private final AtomicIntegerArray cells;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    // Written with every stripe held
+    private volatile long landmarkMillis;
+    private final DoubleAdder total = new DoubleAdder();
+
+    DecayingCountMinSketch(int width, int depth, long tauMillis, long nowMillis) {
+        this.width = Integer.highestOneBit(Math.max(16, width - 1)) << 1;
+        this.depth = depth;
+        this.mask = this.width - 1;
+        this.tauMillis = tauMillis;
+        this.cells = new AtomicIntegerArray(this.width * depth);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.landmarkMillis = nowMillis;
+    }
+
+    /** Count one event at {@code eventMillis}; returns the key's decayed count as of then. */
+    double add(long hi, long lo, long eventMillis) {
+        if ((eventMillis - landmarkMillis) / tauMillis > MAX_EXPONENT) {
+            rebase(eventMillis);
+        }
+        ReentrantLock stripe = stripeFor(lo);
+        stripe.lock();
+        try {
+            double eventWeight = weightAt(eventMillis);
+            float weight = (float) eventWeight;
+            total.add(weight);
+
+            // Conservative update: raise only the cells below the new minimum
+            float target = min(hi, lo) + weight;
+            for (int row = 0; row < depth; row++) {
+                raise(index(row, hi, lo), target);
+            }
+            return target / eventWeight;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /** Decayed count of the key as of {@code atMillis}. */
+    double estimate(long hi, long lo, long atMillis) {
+        ReentrantLock stripe = stripeFor(lo);
+        stripe.lock();
+        try {
+            return min(hi, lo) / weightAt(atMillis);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /** Decayed count of all keys, approximate while other threads add; the error bound scales with this. */
+    double total(long atMillis) {
+        return total.sum() / weightAt(atMillis);
+    }
+
+    int width() {
+        return width;
+    }
+
+    long sizeInBytes() {
+        return cells.length() * 4L;
+    }
+
+    private int index(int row, long hi, long lo) {
+        return row * width + (int) ((hi + row * lo) & mask);
+    }
+
+    private float min(long hi, long lo) {
+        float min = Float.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, Float.intBitsToFloat(cells.get(index(row, hi, lo))));
+        }
+        return min;
+    }
+
+    // Other keys sharing the cell may raise it concurrently; the larger value wins
+    private void raise(int idx, float target) {
+        int bits;
+        while (Float.intBitsToFloat(bits = cells.get(idx)) < target) {
+            if (cells.compareAndSet(idx, bits, Float.floatToRawIntBits(target))) {
+                return;
+            }
+        }
+    }
+
+    private ReentrantLock stripeFor(long lo) {
+        return stripes[(int) Fingerprints.fmix64(lo) & (STRIPES - 1)];
+    }
+
+    private double weightAt(long atMillis) {
+        return Math.exp((atMillis - landmarkMillis) / tauMillis);
+    }
+
+    private void rebase(long newLandmark) {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            // Another thread may have moved it while we waited
+            if ((newLandmark - landmarkMillis) / tauMillis <= MAX_EXPONENT) {
+                return;
+            }
+            float factor = (float) Math.exp((landmarkMillis - newLandmark) / tauMillis);
+            for (int i = 0; i < cells.length(); i++) {
+                cells.set(i, Float.floatToRawIntBits(Float.intBitsToFloat(cells.get(i)) * factor));
+            }
+            double rebased = total.sumThenReset() * factor;
+            total.add(rebased);
+            landmarkMillis = newLandmark;
+        } finally {
+            for (ReentrantLock stripe : stripes) {
+                stripe.unlock();
+            }
+        }
+    }
+}
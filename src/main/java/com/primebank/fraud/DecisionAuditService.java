@@ -0,0 +1,101 @@
+package com.primebank.fraud;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compliance copy of every decision in MSSQL (fraud_decision_audit), via
+ * a {@link DecisionAuditWriter} started with the application. Decisions
+ * are only queued on the request path; when the database is slow or down
+ * the configured overflow policy applies instead of back-pressure.
+ * Off by default: the table must be created first (DDL in
+ * {@link DecisionAuditWriter}), and startup fails if it is missing.
+ */
+@ApplicationScoped
+public class DecisionAuditService {
+
+    @Inject
+    DataSource dataSource;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "fraud.audit.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.audit.batch-size", defaultValue = "500")
+    int batchSize;
+
+    @ConfigProperty(name = "fraud.audit.linger.millis", defaultValue = "200")
+    long lingerMillis;
+
+    @ConfigProperty(name = "fraud.audit.queue-capacity", defaultValue = "50000")
+    int queueCapacity;
+
+    // drop = count and discard, spill = append to a local file and insert later
+    @ConfigProperty(name = "fraud.audit.overflow", defaultValue = "spill")
+    String overflow;
+
+    @ConfigProperty(name = "fraud.audit.spill-dir", defaultValue = "data/audit")
+    String spillDir;
+
+    // Spilled rows beyond this are dropped, so a long outage cannot fill the disk
+    @ConfigProperty(name = "fraud.audit.spill.max-mb", defaultValue = "1024")
+    long spillMaxMb;
+
+    private volatile DecisionAuditWriter writer;
+
+    void onStart(@Observes StartupEvent ev) {
+        if (!enabled) {
+            return;
+        }
+        DecisionAuditWriter.Overflow policy;
+        try {
+            policy = DecisionAuditWriter.Overflow.valueOf(overflow.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("fraud.audit.overflow must be drop or spill, was " + overflow, e);
+        }
+        DecisionAuditWriter w = new DecisionAuditWriter(dataSource, objectMapper, queueCapacity,
+            batchSize, lingerMillis, policy, Paths.get(spillDir), spillMaxMb * 1024 * 1024);
+        w.start();
+        writer = w;
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        DecisionAuditWriter w = writer;
+        if (w != null) {
+            writer = null;
+            w.close();
+        }
+    }
+
+    /** Queue the decision for the audit table; the inputs map must not be changed afterwards. */
+    public void record(byte model, byte flags, long rulesVersion, String transactionId,
+                       String decision, String reason, Map<String, Object> inputs) {
+        DecisionAuditWriter w = writer;
+        if (w != null) {
+            w.submit(model, flags, rulesVersion, transactionId, decision, reason, inputs);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        DecisionAuditWriter w = writer;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (w != null) {
+            stats.putAll(w.stats());
+        }
+        return stats;
+    }
+}
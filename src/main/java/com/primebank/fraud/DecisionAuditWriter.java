@@ -0,0 +1,660 @@
+package com.primebank.fraud;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lands decisions in a database table with JDBC batch inserts, off the
+ * request path. Expects:
+ *
+ * <pre>
+ * CREATE TABLE fraud_decision_audit (
+ *     audit_id       BIGINT IDENTITY PRIMARY KEY,
+ *     model          VARCHAR(16)   NOT NULL,
+ *     transaction_id VARCHAR(64),
+ *     decision       VARCHAR(32),
+ *     reason         VARCHAR(256),
+ *     rules_version  BIGINT        NOT NULL,
+ *     fast_path      BIT           NOT NULL,
+ *     as_of          BIT           NOT NULL,
+ *     decided_at     DATETIME2     NOT NULL,
+ *     inputs         NVARCHAR(MAX)
+ * )
+ * </pre>
+ *
+ * {@link #submit} only offers to a bounded queue and never does I/O: a
+ * row that does not fit is dropped and counted. Text columns are cut to
+ * the column widths above. One writer thread collects up to
+ * {@code batchSize} rows, waiting at most {@code lingerMillis} for a batch
+ * to fill, and inserts them in one transaction.
+ *
+ * A batch failing on a row (SQLState class 22 data / 23 constraint) is
+ * bisected so the other rows still land; a single row that still fails
+ * goes to {@code audit-quarantine.ndjson} and is never retried. Any other
+ * failure counts as the database being unavailable: the writer backs off
+ * (1 s doubling to 60 s) and the rows follow the overflow policy. DROP
+ * counts them; SPILL appends them as NDJSON to {@code audit-spill.ndjson}
+ * until the spill directory holds {@code spillMaxBytes}, after which rows
+ * are dropped. Spilled rows go back in one batch per writer round, next
+ * to live traffic, whenever the database takes inserts; a spill file left
+ * by an earlier process is replayed the same way.
+ *
+ * {@link #start} fails if the table does not exist, rather than spilling
+ * every decision to disk. Plain JDBC with one portable INSERT, so it runs
+ * against any DataSource, e.g. an embedded H2 one in a test.
+ */
+public class DecisionAuditWriter implements AutoCloseable {
+
+    public enum Overflow { DROP, SPILL }
+
+    static final String INSERT_SQL =
+        "INSERT INTO fraud_decision_audit (model, transaction_id, decision, reason, rules_version, " +
+        "fast_path, as_of, decided_at, inputs) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    static final String PROBE_SQL = "SELECT COUNT(*) FROM fraud_decision_audit WHERE 1 = 0";
+
+    static final String SPILL_FILE = "audit-spill.ndjson";
+    static final String QUARANTINE_FILE = "audit-quarantine.ndjson";
+    private static final String REPLAY_PREFIX = "audit-spill-";
+    private static final String REPLAY_SUFFIX = ".replay";
+
+    // Column widths of the table above
+    static final int TRANSACTION_ID_MAX = 64;
+    static final int DECISION_MAX = 32;
+    static final int REASON_MAX = 256;
+
+    private static final long BACKOFF_INITIAL_MILLIS = 1_000;
+    private static final long BACKOFF_MAX_MILLIS = 60_000;
+
+    private enum Outcome { INSERTED, REJECTED, UNAVAILABLE }
+
+    private static final TypeReference<Map<String, Object>> JSON_MAP = new TypeReference<>() {};
+
+    /** One decision waiting to be inserted. */
+    static final class Row {
+        final long decidedAtMillis;
+        final byte model;
+        final byte flags;
+        final long rulesVersion;
+        final String transactionId;
+        final String decision;
+        final String reason;
+        final Map<String, Object> inputs;
+        // Set when the row was read back from a spill file
+        String inputsJson;
+
+        Row(long decidedAtMillis, byte model, byte flags, long rulesVersion,
+            String transactionId, String decision, String reason, Map<String, Object> inputs) {
+            this.decidedAtMillis = decidedAtMillis;
+            this.model = model;
+            this.flags = flags;
+            this.rulesVersion = rulesVersion;
+            this.transactionId = transactionId;
+            this.decision = decision;
+            this.reason = reason;
+            this.inputs = inputs;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final Overflow overflow;
+    private final Path spillDir;
+    private final long spillMaxBytes;
+    private final ArrayBlockingQueue<Row> queue;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    // Writer thread only (and close() once the writer has stopped)
+    private BufferedWriter spillOut;
+    private long spillBytes;
+    private boolean dbHealthy = true;
+    private long backoffMillis = BACKOFF_INITIAL_MILLIS;
+    private long nextAttemptMillis;
+    // Spill or replay files may hold rows; the open replay file and its unread rows
+    private boolean replayPending;
+    private Path replayFile;
+    private BufferedReader replayIn;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder inserted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder queueFull = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder truncated = new LongAdder();
+    private final LongAdder quarantined = new LongAdder();
+
+    public DecisionAuditWriter(DataSource dataSource, ObjectMapper objectMapper, int queueCapacity,
+                               int batchSize, long lingerMillis, Overflow overflow, Path spillDir,
+                               long spillMaxBytes) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMillis = Math.max(0, lingerMillis);
+        this.overflow = overflow;
+        this.spillDir = spillDir;
+        this.spillMaxBytes = spillMaxBytes;
+    }
+
+    public void start() {
+        checkTable();
+        try {
+            Files.createDirectories(spillDir);
+            if (overflow == Overflow.SPILL) {
+                // Rows an earlier process spilled; this one appends to a new spill file
+                moveSpillAside();
+                replayPending = !replayFiles().isEmpty();
+            }
+            spillBytes = spillDirBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create audit spill directory " + spillDir, e);
+        }
+        running = true;
+        writer = new Thread(this::runWriter, "decision-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Stop accepting rows, insert what is queued (or spill it) and close. */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(30_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeSpill();
+        closeReplay();
+    }
+
+    /** Fail fast on a missing table; an unreachable database is only logged, the writer retries. */
+    private void checkTable() {
+        try (Connection con = dataSource.getConnection();
+             Statement st = con.createStatement()) {
+            st.executeQuery(PROBE_SQL).close();
+        } catch (SQLException e) {
+            String state = e.getSQLState();
+            if (state != null && (state.startsWith("42") || state.startsWith("S0"))) {
+                throw new IllegalStateException("Decision audit table fraud_decision_audit is missing or unusable; "
+                    + "create it (DDL in DecisionAuditWriter) or set fraud.audit.enabled=false", e);
+            }
+            System.err.println("Decision audit table not checked, database unavailable: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queue a decision for insertion. Never blocks and never touches the
+     * database or the disk; the inputs map must not be changed after the call.
+     */
+    public void submit(byte model, byte flags, long rulesVersion, String transactionId,
+                       String decision, String reason, Map<String, Object> inputs) {
+        if (!running) {
+            return;
+        }
+        Row row = new Row(System.currentTimeMillis(), model, flags, rulesVersion,
+            clip(transactionId, TRANSACTION_ID_MAX), clip(decision, DECISION_MAX), clip(reason, REASON_MAX), inputs);
+        submitted.increment();
+        if (!queue.offer(row)) {
+            queueFull.increment();
+            dropped.increment();
+        }
+    }
+
+    private String clip(String value, int max) {
+        if (value == null || value.length() <= max) {
+            return value;
+        }
+        truncated.increment();
+        return value.substring(0, max);
+    }
+
+    private void runWriter() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Row first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long wait = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || wait <= 0 || !running) {
+                            break;
+                        }
+                        Row next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                        }
+                    }
+                    overflow(mayAttempt() ? insert(batch) : batch);
+                    batch.clear();
+                }
+                // One spilled batch per round, so replay keeps up under steady traffic;
+                // at the backoff pace while the database is down
+                if (replayPending && mayAttempt()) {
+                    replayNext();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("Decision audit writer error: " + e);
+                overflow(batch);
+            }
+            batch.clear();
+        }
+        closeReplay();
+    }
+
+    /** False while backing off after the database was found unavailable. */
+    private boolean mayAttempt() {
+        return dbHealthy || System.currentTimeMillis() >= nextAttemptMillis;
+    }
+
+    /**
+     * Insert the rows, bisecting batches rejected because of a row and
+     * quarantining single rows that still fail.
+     * @return the rows left over because the database is unavailable, in order
+     */
+    private List<Row> insert(List<Row> rows) {
+        List<Row> unavailable = new ArrayList<>();
+        insert(rows, unavailable);
+        return unavailable;
+    }
+
+    private void insert(List<Row> rows, List<Row> unavailable) {
+        if (!unavailable.isEmpty()) {
+            // Once the database is gone, the rest of the batch follows without more attempts
+            unavailable.addAll(rows);
+            return;
+        }
+        switch (tryInsert(rows)) {
+            case INSERTED:
+                return;
+            case UNAVAILABLE:
+                unavailable.addAll(rows);
+                return;
+            default:
+                if (rows.size() == 1) {
+                    quarantine(rows.get(0));
+                    return;
+                }
+                int mid = rows.size() / 2;
+                insert(rows.subList(0, mid), unavailable);
+                insert(rows.subList(mid, rows.size()), unavailable);
+        }
+    }
+
+    /** Insert the rows in one transaction. */
+    private Outcome tryInsert(List<Row> rows) {
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement(INSERT_SQL)) {
+                for (Row row : rows) {
+                    bind(ps, row);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                con.commit();
+            } catch (Exception e) {
+                con.rollback();
+                if (isRowLevel(e)) {
+                    return Outcome.REJECTED;
+                }
+                throw e;
+            }
+            inserted.add(rows.size());
+            batches.increment();
+            if (!dbHealthy) {
+                System.err.println("Decision audit inserts recovered");
+                dbHealthy = true;
+            }
+            backoffMillis = BACKOFF_INITIAL_MILLIS;
+            return Outcome.INSERTED;
+
+        } catch (Exception e) {
+            failedBatches.increment();
+            // Log the transition only; an outage would otherwise log every batch
+            if (dbHealthy) {
+                System.err.println("Decision audit insert failed, backing off: " + e.getMessage());
+                dbHealthy = false;
+            }
+            nextAttemptMillis = System.currentTimeMillis() + backoffMillis;
+            backoffMillis = Math.min(backoffMillis * 2, BACKOFF_MAX_MILLIS);
+            return Outcome.UNAVAILABLE;
+        }
+    }
+
+    /** Data (22xxx) or constraint (23xxx) errors are caused by a row, not by the database. */
+    static boolean isRowLevel(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                for (SQLException s = (SQLException) t; s != null; s = s.getNextException()) {
+                    String state = s.getSQLState();
+                    if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void bind(PreparedStatement ps, Row row) throws Exception {
+        ps.setString(1, row.model == DecisionRecord.MODEL_MYPRIME ? "MYPRIME" : "CARD");
+        setNullableString(ps, 2, row.transactionId);
+        setNullableString(ps, 3, row.decision);
+        setNullableString(ps, 4, row.reason);
+        ps.setLong(5, row.rulesVersion);
+        ps.setBoolean(6, (row.flags & DecisionRecord.FLAG_FAST_PATH) != 0);
+        ps.setBoolean(7, (row.flags & DecisionRecord.FLAG_AS_OF) != 0);
+        ps.setTimestamp(8, new Timestamp(row.decidedAtMillis));
+        setNullableString(ps, 9, inputsJson(row));
+    }
+
+    private static void setNullableString(PreparedStatement ps, int index, String value) throws Exception {
+        if (value == null) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, value);
+        }
+    }
+
+    /** Flat inputs only; nested values (the MyPrime RULES context) are identified by rules_version. */
+    private String inputsJson(Row row) throws IOException {
+        if (row.inputsJson != null || row.inputs == null) {
+            return row.inputsJson;
+        }
+        Map<String, Object> flat = new LinkedHashMap<>();
+        row.inputs.forEach((k, v) -> {
+            if (!(v instanceof Map) && !(v instanceof Collection)) {
+                flat.put(k, v);
+            }
+        });
+        row.inputsJson = objectMapper.writeValueAsString(flat);
+        return row.inputsJson;
+    }
+
+    /** Rows the database could not take: spilled under the size cap, otherwise dropped. */
+    private void overflow(List<Row> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (overflow == Overflow.SPILL && spill(rows)) {
+            spilled.add(rows.size());
+        } else {
+            dropped.add(rows.size());
+        }
+    }
+
+    private boolean spill(List<Row> rows) {
+        try {
+            List<String> lines = new ArrayList<>(rows.size());
+            long bytes = 0;
+            for (Row row : rows) {
+                String line = toJson(row);
+                lines.add(line);
+                bytes += line.length() + 1;
+            }
+            if (spillBytes + bytes > spillMaxBytes) {
+                return false;
+            }
+            if (spillOut == null) {
+                spillOut = Files.newBufferedWriter(spillDir.resolve(SPILL_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            for (String line : lines) {
+                spillOut.write(line);
+                spillOut.newLine();
+            }
+            spillOut.flush();
+            spillBytes += bytes;
+            replayPending = true;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to spill decision audit rows: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void quarantine(Row row) {
+        try {
+            quarantine(toJson(row));
+        } catch (IOException e) {
+            System.err.println("Failed to quarantine decision audit row: " + e.getMessage());
+        }
+    }
+
+    /** Keep a row the database will not take, for a person to look at; never retried. */
+    private void quarantine(String line) {
+        quarantined.increment();
+        try (BufferedWriter out = Files.newBufferedWriter(spillDir.resolve(QUARANTINE_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            out.write(line);
+            out.newLine();
+            spillBytes += line.length() + 1;
+        } catch (IOException e) {
+            System.err.println("Failed to quarantine decision audit row: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Insert the next batch of spilled rows, oldest file first; a replay
+     * file is deleted once all its rows are in. Once every replay file is
+     * done, the current spill file is moved aside and replayed next. On an
+     * outage the file is rewritten with the rows not inserted yet.
+     */
+    private void replayNext() {
+        try {
+            if (replayIn == null && !openNextReplay()) {
+                replayPending = false;
+                return;
+            }
+            List<Row> batch = new ArrayList<>(batchSize);
+            List<String> batchLines = new ArrayList<>(batchSize);
+            String line;
+            while (batch.size() < batchSize && (line = replayIn.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    batch.add(fromJson(line));
+                    batchLines.add(line);
+                } catch (Exception e) {
+                    // A damaged line must not hold up the rest of the file
+                    quarantine(line);
+                }
+            }
+            if (batch.isEmpty()) {
+                closeReplay();
+                Files.delete(replayFile);
+                replayFile = null;
+                spillBytes = spillDirBytes();
+                return;
+            }
+            List<Row> left = insert(batch);
+            replayed.add(batch.size() - left.size());
+            if (!left.isEmpty()) {
+                // Left-over rows are always the tail of the batch
+                keepRemaining(replayFile, batchLines.subList(batchLines.size() - left.size(), batchLines.size()),
+                    replayIn);
+                closeReplay();
+                spillBytes = spillDirBytes();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to replay decision audit spill: " + e.getMessage());
+            closeReplay();
+        }
+    }
+
+    /** Open the oldest replay file, first moving the spill file aside if none is left. */
+    private boolean openNextReplay() throws IOException {
+        List<Path> files = replayFiles();
+        if (files.isEmpty()) {
+            moveSpillAside();
+            files = replayFiles();
+        }
+        if (files.isEmpty()) {
+            return false;
+        }
+        replayFile = files.get(0);
+        replayIn = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8);
+        return true;
+    }
+
+    private void moveSpillAside() throws IOException {
+        Path spill = spillDir.resolve(SPILL_FILE);
+        if (Files.exists(spill)) {
+            closeSpill();
+            Files.move(spill, spillDir.resolve(REPLAY_PREFIX + System.currentTimeMillis() + REPLAY_SUFFIX));
+        }
+    }
+
+    /** Replay files, oldest first. */
+    private List<Path> replayFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spillDir, REPLAY_PREFIX + "*" + REPLAY_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private void closeReplay() {
+        if (replayIn == null) {
+            return;
+        }
+        try {
+            replayIn.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close decision audit replay file: " + e.getMessage());
+        }
+        replayIn = null;
+    }
+
+    /** Rewrite a replay file with only the rows not inserted yet, so none is inserted twice. */
+    private static void keepRemaining(Path file, List<String> failedLines, BufferedReader rest) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (String line : failedLines) {
+                out.write(line);
+                out.newLine();
+            }
+            String line;
+            while ((line = rest.readLine()) != null) {
+                out.write(line);
+                out.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Bytes held in spill, replay and quarantine files. */
+    private long spillDirBytes() throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDir, "audit-*")) {
+            for (Path file : files) {
+                total += Files.size(file);
+            }
+        }
+        return total;
+    }
+
+    private String toJson(Row row) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("decided_at", row.decidedAtMillis);
+        json.put("model", row.model);
+        json.put("flags", row.flags);
+        json.put("rules_version", row.rulesVersion);
+        json.put("transaction_id", row.transactionId);
+        json.put("decision", row.decision);
+        json.put("reason", row.reason);
+        json.put("inputs", inputsJson(row));
+        return objectMapper.writeValueAsString(json);
+    }
+
+    private Row fromJson(String line) throws IOException {
+        Map<String, Object> json = objectMapper.readValue(line, JSON_MAP);
+        Row row = new Row(((Number) json.get("decided_at")).longValue(),
+            ((Number) json.get("model")).byteValue(),
+            ((Number) json.get("flags")).byteValue(),
+            ((Number) json.get("rules_version")).longValue(),
+            (String) json.get("transaction_id"),
+            (String) json.get("decision"),
+            (String) json.get("reason"),
+            null);
+        row.inputsJson = (String) json.get("inputs");
+        return row;
+    }
+
+    private void closeSpill() {
+        if (spillOut == null) {
+            return;
+        }
+        try {
+            spillOut.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close decision audit spill file: " + e.getMessage());
+        }
+        spillOut = null;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("overflow", overflow.name());
+        stats.put("batch_size", batchSize);
+        stats.put("linger_millis", lingerMillis);
+        stats.put("queued", queue.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("inserted", inserted.sum());
+        stats.put("batches", batches.sum());
+        stats.put("failed_batches", failedBatches.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("dropped_queue_full", queueFull.sum());
+        stats.put("spilled", spilled.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("truncated", truncated.sum());
+        stats.put("quarantined", quarantined.sum());
+        stats.put("spill_bytes", spillBytes);
+        stats.put("spill_max_bytes", spillMaxBytes);
+        stats.put("database_healthy", dbHealthy);
+        return stats;
+    }
+}
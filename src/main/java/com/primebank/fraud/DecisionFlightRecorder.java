@@ -0,0 +1,94 @@
+package com.primebank.fraud;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory flight recorder: the last decisions of each endpoint in a
+ * {@link FlightRecorderRing}, so a production oddity can be looked at
+ * after the fact through /admin/fraud/flight-recorder instead of turning
+ * on {@code debug} and serializing the whole DMN context per request.
+ * Nothing leaves the process and nothing survives a restart; the decision
+ * journal is the durable record.
+ */
+@ApplicationScoped
+public class DecisionFlightRecorder {
+
+    public static final String CARD = "card";
+    public static final String MYPRIME = "myprime";
+
+    // Kept per decision
+    private static final String[] CARD_FEATURES = {
+        "txn_amount", "txn_count_5", "txn_amount_5", "ccy_cnt1hr", "ml_fraud_score_card", "travel_speed_kmh"
+    };
+    private static final String[] MYPRIME_FEATURES = {
+        "total_risk_score", "max_ml_score", "login_cnt1hr", "device_cnt1day", "otp_failed_cnt1hr", "is_new_device"
+    };
+
+    // The DMN input data, hashed together with the rule snapshot version
+    private static final String[] CARD_INPUTS = {
+        "txn_channel", "txn_count_5", "txn_amount_5", "txn_count_30", "txn_amount_30", "wrong_cvv_10",
+        "wrong_pin_10", "card_failed_cnt1day", "ccy_cnt1hr", "card_terminal_txn_cnt1day",
+        "card_terminal_txn_failed_cnt1day", "ml_fraud_score_card", "is_magstripe", "is_3ds_authenticated",
+        "mcc_group_id", "product_code", "IS_SUSPICIOUS_MCC", "PRODUCT_MCC_RISK", "COUNTRY_RISK",
+        "travel_speed_kmh", "MAX_TRAVEL_KMH", "CARD_BLOCKED", "MERCHANT_BLOCKED", "VELOCITY_5_COUNT",
+        "VELOCITY_5_AMOUNT", "VELOCITY_30_COUNT", "VELOCITY_30_AMOUNT", "FAILED_TXN_1DAY",
+        "ML_FRAUD_THRESHOLD", "processing_code", "merchant_name", "mcc_6011_txn_count_1hr"
+    };
+    private static final String[] MYPRIME_INPUTS = {"max_ml_score", "total_risk_score"};
+
+    @ConfigProperty(name = "fraud.flight-recorder.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.flight-recorder.capacity", defaultValue = "4096")
+    int capacity;
+
+    private FlightRecorderRing card;
+    private FlightRecorderRing myPrime;
+
+    @PostConstruct
+    void init() {
+        card = new FlightRecorderRing(capacity, CARD_FEATURES, CARD_INPUTS);
+        myPrime = new FlightRecorderRing(capacity, MYPRIME_FEATURES, MYPRIME_INPUTS);
+    }
+
+    /** Record a card decision; stage times in nanoseconds. */
+    public void recordCard(Object transactionId, Map<String, Object> input, long rulesVersion,
+                           Object verdict, Object reason,
+                           long featuresNanos, long dmnNanos, long recordNanos, long totalNanos) {
+        if (enabled) {
+            card.record(transactionId, input, rulesVersion, verdict, reason,
+                featuresNanos, dmnNanos, recordNanos, totalNanos);
+        }
+    }
+
+    /** Record a MyPrime decision; stage times in nanoseconds. */
+    public void recordMyPrime(Object transactionId, Map<String, Object> input, long rulesVersion,
+                              Object verdict, Object reason,
+                              long featuresNanos, long dmnNanos, long recordNanos, long totalNanos) {
+        if (enabled) {
+            myPrime.record(transactionId, input, rulesVersion, verdict, reason,
+                featuresNanos, dmnNanos, recordNanos, totalNanos);
+        }
+    }
+
+    /** The ring for "card" or "myprime", or null for any other name. */
+    FlightRecorderRing ring(String endpoint) {
+        if (CARD.equalsIgnoreCase(endpoint)) return card;
+        if (MYPRIME.equalsIgnoreCase(endpoint)) return myPrime;
+        return null;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("capacity", card.capacity());
+        stats.put("card_recorded", card.recorded());
+        stats.put("myprime_recorded", myPrime.recorded());
+        return stats;
+    }
+}
@@ -0,0 +1,356 @@
+package com.primebank.fraud;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record of every decision (inputs, rule snapshot version,
+ * verdict, reason) in pre-sized, memory-mapped segment files, so there is
+ * no MSSQL write on the decision path.
+ *
+ * Request threads only enqueue a {@link Pending} into a bounded queue; one
+ * writer thread encodes records and copies them into the current segment,
+ * rolling to a new one when it is full. If the writer falls behind and the
+ * queue fills up, records are dropped and counted rather than slowing the
+ * decision. The input map is encoded later on the writer thread, so
+ * callers must not change it after {@link #append}.
+ *
+ * Durability matches the velocity log: mapped pages survive a process
+ * crash; a host crash loses at most one flush interval. Read the journal
+ * with {@link DecisionJournalReader} / {@link DecisionJournalTailer}, or
+ * export it with {@link DecisionJournalExport}.
+ *
+ * Retention is a time horizon: on each roll, segments last written more
+ * than {@code retention.hours} ago are deleted. {@code max-segments} caps
+ * the disk used on top of that; at about 1 KB per record, 100 segments of
+ * 64 MB hold only some 10 minutes at 10k decisions/s, so size the cap for
+ * the horizon. When the cap deletes a segment still inside the horizon it
+ * is logged and counted, and the stats show how far back the journal
+ * actually reaches.
+ */
+@ApplicationScoped
+public class DecisionJournal {
+
+    @ConfigProperty(name = "fraud.journal.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.journal.dir", defaultValue = "data/journal")
+    String dir;
+
+    @ConfigProperty(name = "fraud.journal.segment-mb", defaultValue = "64")
+    int segmentMb;
+
+    @ConfigProperty(name = "fraud.journal.retention.hours", defaultValue = "24")
+    int retentionHours;
+
+    // Disk cap, 0 = none
+    @ConfigProperty(name = "fraud.journal.max-segments", defaultValue = "100")
+    int maxSegments;
+
+    @ConfigProperty(name = "fraud.journal.queue-capacity", defaultValue = "65536")
+    int queueCapacity;
+
+    @ConfigProperty(name = "fraud.journal.flush-interval.millis", defaultValue = "1000")
+    long flushIntervalMillis;
+
+    /** A decision waiting for the writer thread. */
+    private static final class Pending {
+        final long timestampMillis;
+        final byte model;
+        final byte flags;
+        final long snapshotVersion;
+        final String transactionId;
+        final String decision;
+        final String reason;
+        final Map<String, Object> inputs;
+
+        Pending(long timestampMillis, byte model, byte flags, long snapshotVersion,
+                String transactionId, String decision, String reason, Map<String, Object> inputs) {
+            this.timestampMillis = timestampMillis;
+            this.model = model;
+            this.flags = flags;
+            this.snapshotVersion = snapshotVersion;
+            this.transactionId = transactionId;
+            this.decision = decision;
+            this.reason = reason;
+            this.inputs = inputs;
+        }
+    }
+
+    private ArrayBlockingQueue<Pending> queue;
+    private volatile boolean running;
+    private Thread writer;
+
+    // Writer thread only
+    private Path journalDir;
+    private int segmentId;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private ByteBuffer scratch = ByteBuffer.allocate(64 * 1024);
+    private final CRC32 crc = new CRC32();
+    private long lastForceMillis;
+
+    private final AtomicLong seq = new AtomicLong();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder evictedEarly = new LongAdder();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile Instant lastForceAt;
+    private volatile Instant retainedSince;
+
+    void onStart(@Observes StartupEvent ev) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            journalDir = Paths.get(dir);
+            Files.createDirectories(journalDir);
+            // Continue the sequence after the newest record; appends go to a fresh segment
+            List<Path> existing = DecisionJournalReader.listSegments(journalDir);
+            if (!existing.isEmpty()) {
+                segmentId = DecisionJournalReader.segmentId(existing.get(existing.size() - 1));
+            }
+            // A restart without decisions leaves empty segments behind the last record
+            for (int i = existing.size() - 1; i >= 0 && seq.get() == 0; i--) {
+                seq.set(lastSeq(existing.get(i)));
+            }
+            openSegment(segmentId + 1);
+            applyRetention();
+        } catch (Exception e) {
+            System.err.println("Decision journal disabled: " + e.getMessage());
+            enabled = false;
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::runWriter, "decision-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hand a decision to the writer. Never blocks and never throws; the
+     * record is dropped when the journal is disabled or its queue is full.
+     */
+    public void append(byte model, byte flags, long snapshotVersion, String transactionId,
+                       String decision, String reason, Map<String, Object> inputs) {
+        if (!running) {
+            return;
+        }
+        Pending pending = new Pending(System.currentTimeMillis(), model, flags, snapshotVersion,
+            transactionId, decision, reason, inputs);
+        if (queue.offer(pending)) {
+            appended.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(1024);
+        lastForceMillis = System.currentTimeMillis();
+        while (running || !queue.isEmpty()) {
+            int done = 0;
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, 1023);
+                    for (Pending pending : batch) {
+                        write(pending);
+                        done++;
+                    }
+                    batch.clear();
+                }
+                if (System.currentTimeMillis() - lastForceMillis >= flushIntervalMillis) {
+                    force();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                // Keep the writer alive; the rest of the batch is lost
+                failed.add(batch.size() - done);
+                batch.clear();
+                System.err.println("Decision journal write failed: " + e);
+            }
+        }
+        force();
+        closeSegment();
+    }
+
+    private void write(Pending p) throws IOException {
+        if (segment == null) {
+            // A failed roll left no segment open
+            openSegment(segmentId + 1);
+        }
+        int maxSize = DecisionRecord.maxEncodedSize(p.transactionId, p.decision, p.reason, p.inputs);
+        if (maxSize > segment.capacity() - DecisionJournalReader.SEGMENT_HEADER) {
+            failed.increment();
+            return;
+        }
+        if (maxSize > scratch.capacity()) {
+            scratch = ByteBuffer.allocate(Integer.highestOneBit(maxSize) << 1);
+        }
+        scratch.clear();
+        DecisionRecord.encode(scratch, seq.get() + 1, p.timestampMillis, p.model, p.flags, p.snapshotVersion,
+            p.transactionId, p.decision, p.reason, p.inputs);
+        int length = scratch.position();
+        int payload = length - DecisionRecord.RECORD_HEADER;
+
+        crc.reset();
+        crc.update(scratch.array(), DecisionRecord.RECORD_HEADER, payload);
+        if (segment.position() + length > segment.capacity()) {
+            roll();
+        }
+
+        int pos = segment.position();
+        // Payload first, then CRC, then the length that commits the record for readers
+        segment.put(pos + DecisionRecord.RECORD_HEADER, scratch.array(), DecisionRecord.RECORD_HEADER, payload);
+        segment.putInt(pos + 4, (int) crc.getValue());
+        segment.putInt(pos, payload);
+        segment.position(pos + length);
+
+        seq.incrementAndGet();
+        bytesWritten.addAndGet(length);
+    }
+
+    private void roll() throws IOException {
+        segment.force();
+        closeSegment();
+        openSegment(segmentId + 1);
+        applyRetention();
+    }
+
+    private void openSegment(int id) throws IOException {
+        Path file = DecisionJournalReader.segmentFile(journalDir, id);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        // Mapping extends the file with zeros, so unwritten space reads as "not committed"
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentMb * 1024L * 1024L);
+        segment.putInt(0, DecisionJournalReader.MAGIC);
+        segment.putInt(4, 0);
+        segment.position(DecisionJournalReader.SEGMENT_HEADER);
+        segmentId = id;
+    }
+
+    private void closeSegment() {
+        segment = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to close decision journal segment: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private void force() {
+        if (segment != null) {
+            segment.force();
+        }
+        lastForceMillis = System.currentTimeMillis();
+        lastForceAt = Instant.now();
+    }
+
+    private void applyRetention() {
+        try {
+            List<Path> segments = DecisionJournalReader.listSegments(journalDir);
+            long horizon = System.currentTimeMillis() - retentionHours * 3_600_000L;
+            int overCap = maxSegments > 0 ? segments.size() - maxSegments : 0;
+            int kept = 0;
+            for (int i = 0; i < segments.size() - 1; i++) {
+                Path file = segments.get(i);
+                long lastWritten = Files.getLastModifiedTime(file).toMillis();
+                if (lastWritten >= horizon && i >= overCap) {
+                    break;
+                }
+                if (lastWritten >= horizon) {
+                    evictedEarly.increment();
+                    System.err.println("Decision journal over " + maxSegments + " segments, deleting "
+                        + file.getFileName() + " inside the " + retentionHours + " h retention");
+                }
+                Files.deleteIfExists(file);
+                kept = i + 1;
+            }
+            retainedSince = Files.getLastModifiedTime(segments.get(kept)).toInstant();
+        } catch (IOException e) {
+            System.err.println("Failed to apply decision journal retention: " + e.getMessage());
+        }
+    }
+
+    private static long lastSeq(Path file) throws IOException {
+        long last = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (!DecisionJournalReader.hasHeader(buf)) {
+                return 0;
+            }
+            int pos = DecisionJournalReader.SEGMENT_HEADER;
+            int next;
+            while ((next = DecisionJournalReader.nextRecord(buf, pos)) > 0) {
+                last = buf.getLong(pos + DecisionRecord.RECORD_HEADER);
+                pos = next;
+            }
+        }
+        return last;
+    }
+
+    /** Directory holding the segments, for readers in this process. */
+    public Path directory() {
+        return Paths.get(dir);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("dir", dir);
+        stats.put("last_seq", seq.get());
+        stats.put("appended", appended.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("failed", failed.sum());
+        stats.put("retention_hours", retentionHours);
+        stats.put("retained_since", retainedSince == null ? null : retainedSince.toString());
+        stats.put("evicted_inside_retention", evictedEarly.sum());
+        stats.put("queued", queue == null ? 0 : queue.size());
+        stats.put("bytes_written", bytesWritten.get());
+        stats.put("segment", segmentId);
+        stats.put("last_force", lastForceAt == null ? null : lastForceAt.toString());
+        return stats;
+    }
+}
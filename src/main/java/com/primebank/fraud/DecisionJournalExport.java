@@ -0,0 +1,50 @@
+package com.primebank.fraud;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Dumps a decision journal as NDJSON, one decision per line, to stdout.
+ * Needs only the JDK, so it runs against a live or copied journal
+ * directory without starting the service:
+ *
+ * <pre>
+ * java -cp target/quarkus-app/app/fraud-decision-service-1.0.0.jar \
+ *     com.primebank.fraud.DecisionJournalExport data/journal [fromSeq] &gt; decisions.ndjson
+ * </pre>
+ */
+public final class DecisionJournalExport {
+
+    private DecisionJournalExport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: DecisionJournalExport <journal-dir> [fromSeq]");
+            System.exit(2);
+        }
+        long fromSeq = args.length > 1 ? Long.parseLong(args[1]) : 0;
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        long records;
+        try {
+            records = DecisionJournalReader.read(Paths.get(args[0]), fromSeq, record -> {
+                try {
+                    out.write(record.toJson());
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        System.err.println("Exported " + records + " decisions");
+    }
+}
@@ -0,0 +1,145 @@
+package com.primebank.fraud;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the segments of a {@link DecisionJournal} directory
+ * ({@code decisions-000042.journal}) in order. Each segment starts with
+ * the magic 'FDJ1' and a reserved int, then records as described in
+ * {@link DecisionRecord}. Safe to run while the service is writing: a
+ * record is only visible once its length is set.
+ */
+public final class DecisionJournalReader {
+
+    static final String PREFIX = "decisions-";
+    static final String SUFFIX = ".journal";
+    static final int MAGIC = 0x46444A31; // "FDJ1"
+    static final int SEGMENT_HEADER = 4 + 4;
+
+    private DecisionJournalReader() {
+    }
+
+    /**
+     * Pass every committed record with seq {@code >= fromSeq} to the consumer.
+     * @return number of records read
+     */
+    public static long read(Path dir, long fromSeq, Consumer<DecisionRecord> consumer) throws IOException {
+        long records = 0;
+        for (Path file : listSegments(dir)) {
+            records += readSegment(file, fromSeq, consumer);
+        }
+        return records;
+    }
+
+    /**
+     * Pass the committed records of one segment with seq {@code >= fromSeq}
+     * to the consumer; a segment deleted by retention reads as empty.
+     * @return number of records read
+     */
+    public static long readSegment(Path file, long fromSeq, Consumer<DecisionRecord> consumer) throws IOException {
+        long records = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (!hasHeader(buf)) {
+                return 0;
+            }
+            int pos = SEGMENT_HEADER;
+            int next;
+            while ((next = nextRecord(buf, pos)) > 0) {
+                DecisionRecord record = DecisionRecord.decode(buf, pos + DecisionRecord.RECORD_HEADER);
+                if (record.getSeq() >= fromSeq) {
+                    consumer.accept(record);
+                    records++;
+                }
+                pos = next;
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted by retention while we were listing
+        }
+        return records;
+    }
+
+    /**
+     * Count the committed records of one segment for {@code model} that went
+     * through the DMN (no fast path), reading only their headers.
+     */
+    static long countEvaluated(Path file, byte model) throws IOException {
+        long records = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (!hasHeader(buf)) {
+                return 0;
+            }
+            int pos = SEGMENT_HEADER;
+            int next;
+            while ((next = nextRecord(buf, pos)) > 0) {
+                int payload = pos + DecisionRecord.RECORD_HEADER;
+                if (DecisionRecord.modelAt(buf, payload) == model
+                        && (DecisionRecord.flagsAt(buf, payload) & DecisionRecord.FLAG_FAST_PATH) == 0) {
+                    records++;
+                }
+                pos = next;
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted by retention while we were listing
+        }
+        return records;
+    }
+
+    /**
+     * Offset just past the committed, intact record at {@code pos}, or -1 at
+     * the end of the written data.
+     */
+    static int nextRecord(MappedByteBuffer buf, int pos) {
+        if (pos + DecisionRecord.RECORD_HEADER > buf.capacity()) {
+            return -1;
+        }
+        int length = buf.getInt(pos);
+        int payload = pos + DecisionRecord.RECORD_HEADER;
+        if (length <= 0 || payload + length > buf.capacity()) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.slice(payload, length));
+        if ((int) crc.getValue() != buf.getInt(pos + 4)) {
+            return -1;
+        }
+        return payload + length;
+    }
+
+    static boolean hasHeader(MappedByteBuffer buf) {
+        return buf.capacity() >= SEGMENT_HEADER && buf.getInt(0) == MAGIC;
+    }
+
+    static List<Path> listSegments(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort((a, b) -> Integer.compare(segmentId(a), segmentId(b)));
+        return files;
+    }
+
+    static int segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    static Path segmentFile(Path dir, int id) {
+        return dir.resolve(String.format("%s%06d%s", PREFIX, id, SUFFIX));
+    }
+}
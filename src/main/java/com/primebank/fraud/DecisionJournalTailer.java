@@ -0,0 +1,109 @@
+package com.primebank.fraud;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Follows a {@link DecisionJournal} as it is written, e.g. to feed a
+ * downstream store. Each {@link #poll} returns the records committed since
+ * the previous call, moving on to the next segment once the writer has
+ * rolled over. A tailer that falls behind the segment retention skips
+ * the deleted segments. Not thread-safe; one tailer per consumer.
+ */
+public final class DecisionJournalTailer implements AutoCloseable {
+
+    private final Path dir;
+    private final long fromSeq;
+
+    private int segmentId = -1;
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+    private int pos;
+
+    /** Start at the oldest segment, skipping records with seq below {@code fromSeq}. */
+    public DecisionJournalTailer(Path dir, long fromSeq) {
+        this.dir = dir;
+        this.fromSeq = fromSeq;
+    }
+
+    /**
+     * Pass up to {@code max} newly committed records to the consumer.
+     * @return number of records passed; 0 when caught up
+     */
+    public int poll(Consumer<DecisionRecord> consumer, int max) throws IOException {
+        int n = 0;
+        while (n < max) {
+            if (buf == null && !openNext()) {
+                break;
+            }
+            int next = DecisionJournalReader.nextRecord(buf, pos);
+            if (next < 0) {
+                // End of written data: stay here unless the writer has moved on
+                if (!rolledOver()) {
+                    break;
+                }
+                // The writer finishes a segment before it creates the next one
+                next = DecisionJournalReader.nextRecord(buf, pos);
+                if (next < 0) {
+                    closeSegment();
+                    continue;
+                }
+            }
+            DecisionRecord record = DecisionRecord.decode(buf, pos + DecisionRecord.RECORD_HEADER);
+            pos = next;
+            if (record.getSeq() >= fromSeq) {
+                consumer.accept(record);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+
+    /** A newer segment exists, or retention deleted the one being read. */
+    private boolean rolledOver() {
+        return Files.exists(DecisionJournalReader.segmentFile(dir, segmentId + 1))
+            || !Files.exists(DecisionJournalReader.segmentFile(dir, segmentId));
+    }
+
+    private boolean openNext() throws IOException {
+        List<Path> segments = DecisionJournalReader.listSegments(dir);
+        for (Path file : segments) {
+            int id = DecisionJournalReader.segmentId(file);
+            if (id <= segmentId) {
+                continue;
+            }
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (!DecisionJournalReader.hasHeader(mapped)) {
+                ch.close();
+                // Still being created; try again on the next poll
+                return false;
+            }
+            channel = ch;
+            buf = mapped;
+            segmentId = id;
+            pos = DecisionJournalReader.SEGMENT_HEADER;
+            return true;
+        }
+        return false;
+    }
+
+    private void closeSegment() throws IOException {
+        buf = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
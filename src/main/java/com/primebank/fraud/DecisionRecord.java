@@ -0,0 +1,314 @@
+package com.primebank.fraud;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One decision as stored in the {@link DecisionJournal}, and its binary
+ * encoding:
+ *
+ * <pre>
+ * int    length of the payload (written last: 0 = end of data / not committed)
+ * int    CRC32 of the payload
+ * payload:
+ *   long seq, long timestamp millis, byte model, byte flags,
+ *   long rule snapshot version,
+ *   str  transaction id, str decision, str reason,
+ *   short n, n x (str key, byte type, value)
+ * </pre>
+ *
+ * A str is a short byte length (-1 = null) and UTF-8 bytes. Input values
+ * are null, boolean, double, decimal (as a str) or str; nested maps and
+ * lists (the MyPrime RULES context) are not copied, the snapshot version
+ * identifies them. Only the JDK is used here, so the reader and export
+ * tool run without the service.
+ */
+public final class DecisionRecord {
+
+    public static final byte MODEL_CARD = 1;
+    public static final byte MODEL_MYPRIME = 2;
+
+    public static final byte FLAG_FAST_PATH = 1;
+    public static final byte FLAG_AS_OF = 2;
+
+    static final int RECORD_HEADER = 4 + 4;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_DECIMAL = 3;
+    private static final byte TYPE_STRING = 4;
+
+    // Longer strings are cut; keeps every str within its short length prefix
+    private static final int MAX_STRING_CHARS = 8_000;
+
+    private final long seq;
+    private final long timestampMillis;
+    private final byte model;
+    private final byte flags;
+    private final long snapshotVersion;
+    private final String transactionId;
+    private final String decision;
+    private final String reason;
+    private final Map<String, Object> inputs;
+
+    DecisionRecord(long seq, long timestampMillis, byte model, byte flags, long snapshotVersion,
+                   String transactionId, String decision, String reason, Map<String, Object> inputs) {
+        this.seq = seq;
+        this.timestampMillis = timestampMillis;
+        this.model = model;
+        this.flags = flags;
+        this.snapshotVersion = snapshotVersion;
+        this.transactionId = transactionId;
+        this.decision = decision;
+        this.reason = reason;
+        this.inputs = Collections.unmodifiableMap(inputs);
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /** CARD or MYPRIME. */
+    public String getModel() {
+        return model == MODEL_MYPRIME ? "MYPRIME" : "CARD";
+    }
+
+    public boolean isFastPath() {
+        return (flags & FLAG_FAST_PATH) != 0;
+    }
+
+    public boolean isAsOf() {
+        return (flags & FLAG_AS_OF) != 0;
+    }
+
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getDecision() {
+        return decision;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public Map<String, Object> getInputs() {
+        return inputs;
+    }
+
+    /** One line of NDJSON, without the trailing newline. */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(256 + inputs.size() * 32);
+        sb.append("{\"seq\":").append(seq);
+        sb.append(",\"timestamp\":");
+        json(sb, Instant.ofEpochMilli(timestampMillis).toString());
+        sb.append(",\"model\":");
+        json(sb, getModel());
+        sb.append(",\"fast_path\":").append(isFastPath());
+        sb.append(",\"as_of\":").append(isAsOf());
+        sb.append(",\"snapshot_version\":").append(snapshotVersion);
+        sb.append(",\"transaction_id\":");
+        json(sb, transactionId);
+        sb.append(",\"decision\":");
+        json(sb, decision);
+        sb.append(",\"reason\":");
+        json(sb, reason);
+        sb.append(",\"inputs\":{");
+        boolean first = true;
+        for (Map.Entry<String, Object> e : inputs.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            json(sb, e.getKey());
+            sb.append(':');
+            json(sb, e.getValue());
+        }
+        return sb.append("}}").toString();
+    }
+
+    /**
+     * Encode a record (header included) into {@code out}, which must be
+     * cleared by the caller and large enough.
+     */
+    static void encode(ByteBuffer out, long seq, long timestampMillis, byte model, byte flags, long snapshotVersion,
+                       String transactionId, String decision, String reason, Map<String, Object> inputs) {
+        int start = out.position();
+        out.position(start + RECORD_HEADER);
+        out.putLong(seq).putLong(timestampMillis).put(model).put(flags).putLong(snapshotVersion);
+        putString(out, transactionId);
+        putString(out, decision);
+        putString(out, reason);
+
+        int countAt = out.position();
+        out.putShort((short) 0);
+        int count = 0;
+        for (Map.Entry<String, Object> e : inputs.entrySet()) {
+            Object v = e.getValue();
+            if (v instanceof Map || v instanceof Collection || count == Short.MAX_VALUE) {
+                continue;
+            }
+            putString(out, e.getKey());
+            if (v == null) {
+                out.put(TYPE_NULL);
+            } else if (v instanceof Boolean) {
+                out.put(TYPE_BOOLEAN).put((byte) ((Boolean) v ? 1 : 0));
+            } else if (v instanceof BigDecimal) {
+                out.put(TYPE_DECIMAL);
+                putString(out, ((BigDecimal) v).toPlainString());
+            } else if (v instanceof Number) {
+                out.put(TYPE_DOUBLE).putDouble(((Number) v).doubleValue());
+            } else {
+                out.put(TYPE_STRING);
+                putString(out, String.valueOf(v));
+            }
+            count++;
+        }
+        out.putShort(countAt, (short) count);
+        out.putInt(start, out.position() - start - RECORD_HEADER);
+    }
+
+    /** Upper bound of the encoded size, to size the scratch buffer. */
+    static int maxEncodedSize(String transactionId, String decision, String reason, Map<String, Object> inputs) {
+        int size = RECORD_HEADER + 8 + 8 + 1 + 1 + 8 + 2;
+        size += maxStringSize(transactionId) + maxStringSize(decision) + maxStringSize(reason);
+        for (Map.Entry<String, Object> e : inputs.entrySet()) {
+            Object v = e.getValue();
+            size += maxStringSize(e.getKey()) + 1 + 8;
+            if (v != null && !(v instanceof Boolean) && !(v instanceof Map) && !(v instanceof Collection)
+                    && (!(v instanceof Number) || v instanceof BigDecimal)) {
+                size += maxStringSize(v instanceof BigDecimal ? ((BigDecimal) v).toPlainString() : String.valueOf(v));
+            }
+        }
+        return size;
+    }
+
+    /** Model byte of a committed record, without decoding it. */
+    static byte modelAt(ByteBuffer buf, int payloadOffset) {
+        return buf.get(payloadOffset + 16);
+    }
+
+    /** Flags byte of a committed record, without decoding it. */
+    static byte flagsAt(ByteBuffer buf, int payloadOffset) {
+        return buf.get(payloadOffset + 17);
+    }
+
+    /** Decode the payload of a committed record. */
+    static DecisionRecord decode(ByteBuffer buf, int payloadOffset) {
+        ByteBuffer in = buf.duplicate();
+        in.position(payloadOffset);
+        long seq = in.getLong();
+        long timestampMillis = in.getLong();
+        byte model = in.get();
+        byte flags = in.get();
+        long snapshotVersion = in.getLong();
+        String transactionId = getString(in);
+        String decision = getString(in);
+        String reason = getString(in);
+
+        int count = in.getShort();
+        Map<String, Object> inputs = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = getString(in);
+            byte type = in.get();
+            switch (type) {
+                case TYPE_NULL:
+                    inputs.put(key, null);
+                    break;
+                case TYPE_BOOLEAN:
+                    inputs.put(key, in.get() != 0);
+                    break;
+                case TYPE_DOUBLE:
+                    inputs.put(key, in.getDouble());
+                    break;
+                case TYPE_DECIMAL:
+                    inputs.put(key, new BigDecimal(getString(in)));
+                    break;
+                case TYPE_STRING:
+                    inputs.put(key, getString(in));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown input type " + type + " in decision record " + seq);
+            }
+        }
+        return new DecisionRecord(seq, timestampMillis, model, flags, snapshotVersion,
+            transactionId, decision, reason, inputs);
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        if (s == null) {
+            out.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = (s.length() > MAX_STRING_CHARS ? s.substring(0, MAX_STRING_CHARS) : s)
+            .getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // UTF-8 needs at most 3 bytes per char (surrogate pairs take 4 for 2 chars)
+    private static int maxStringSize(String s) {
+        return 2 + (s == null ? 0 : Math.min(s.length(), MAX_STRING_CHARS) * 3);
+    }
+
+    private static void json(StringBuilder sb, Object v) {
+        if (v == null) {
+            sb.append("null");
+        } else if (v instanceof Boolean || v instanceof BigDecimal) {
+            sb.append(v);
+        } else if (v instanceof Double) {
+            double d = (Double) v;
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                sb.append("null");
+            } else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                sb.append((long) d);
+            } else {
+                sb.append(d);
+            }
+        } else {
+            String s = v.toString();
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"': sb.append("\\\""); break;
+                    case '\\': sb.append("\\\\"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\t': sb.append("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+            sb.append('"');
+        }
+    }
+}
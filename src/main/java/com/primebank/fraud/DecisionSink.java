@@ -0,0 +1,15 @@
+package com.primebank.fraud;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/** Where decisions for streamed transactions are published. */
+public interface DecisionSink {
+
+    /**
+     * Publish the decision for an event. The stage completes when the
+     * downstream system has acknowledged it, and completes exceptionally
+     * if it was not accepted; the event's offset is not committed before.
+     */
+    CompletionStage<Void> publish(StreamEvent event, Map<String, Object> decision);
+}
@@ -0,0 +1,92 @@
+package com.primebank.fraud;
+
+/**
+ * Allocation-free 64-bit hashing of identifiers (card hashes, merchant IDs,
+ * card/terminal pairs). Two hashes with different seeds form a 128-bit
+ * fingerprint, used where collisions must be practically impossible.
+ *
+ * Keys are hashed exactly as given: case and whitespace are part of the
+ * key. Callers that want a looser match normalize before hashing.
+ */
+final class Fingerprints {
+
+    static final long SEED_HI = 0x9E3779B97F4A7C15L;
+    static final long SEED_LO = 0xC2B2AE3D27D4EB4FL;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Fingerprints() {
+    }
+
+    static long hi(CharSequence key) {
+        return hash64(key, SEED_HI);
+    }
+
+    static long lo(CharSequence key) {
+        long h = hash64(key, SEED_LO);
+        // (0, 0) marks an empty slot in the off-heap tables
+        return h == 0 ? 1 : h;
+    }
+
+    /** Murmur3-style hash over the UTF-16 characters of the key. */
+    static long hash64(CharSequence key, long seed) {
+        int length = key.length();
+        long h = seed ^ (length * 0xff51afd7ed558ccdL);
+        long block = 0;
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            block = (block << 16) | key.charAt(i);
+            if (++n == 4) {
+                h = mix(h, block);
+                block = 0;
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            h = mix(h, block ^ ((long) n << 60));
+        }
+        return fmix64(h ^ length);
+    }
+
+    /** 128-bit fingerprint of a key pair such as card x merchant or card x terminal. */
+    static long pairHi(CharSequence a, CharSequence b) {
+        return combine(hi(a), hi(b));
+    }
+
+    static long pairLo(CharSequence a, CharSequence b) {
+        long l = combine(lo(a), lo(b));
+        return l == 0 ? 1 : l;
+    }
+
+    /** Combine two already-hashed values, e.g. card and merchant. */
+    static long combine(long a, long b) {
+        return fmix64(mix(a, b));
+    }
+
+    static boolean isBlank(CharSequence key) {
+        if (key == null) return true;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) > ' ') return false;
+        }
+        return true;
+    }
+
+    private static long mix(long h, long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        h ^= k;
+        h = Long.rotateLeft(h, 27);
+        return h * 5 + 0x52dce729;
+    }
+
+    static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
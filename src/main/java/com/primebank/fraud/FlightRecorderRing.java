@@ -0,0 +1,201 @@
+package com.primebank.fraud;
+
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The last {@code capacity} decisions of one endpoint in preallocated
+ * parallel arrays: inputs hash, a few key features, verdict, reason and
+ * the time spent per stage.
+ *
+ * Writers claim a sequence number with one atomic increment and fill the
+ * slot it maps to; no locks, and nothing is allocated per decision (verdict,
+ * reason and transaction ID are stored by reference). Each slot carries its
+ * sequence number as a seqlock: it is cleared while the slot is written and
+ * set once the write is complete, so readers skip slots that change under
+ * them instead of returning a torn entry.
+ */
+final class FlightRecorderRing {
+
+    static final String[] STAGES = {"features", "dmn", "record"};
+
+    private static final long WRITING = -1;
+
+    private final String[] featureKeys;
+    private final String[] inputKeys;
+    private final int mask;
+
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLongArray versions;
+    private final long[] timestamps;
+    private final long[] inputHashes;
+    private final long[] totalNanos;
+    private final long[] stageNanos;
+    private final double[] features;
+    private final Object[] transactionIds;
+    private final Object[] verdicts;
+    private final Object[] reasons;
+
+    /**
+     * @param featureKeys inputs kept per decision as numbers (booleans as 1 / 0)
+     * @param inputKeys   inputs that make up the inputs hash, with the rule snapshot version
+     */
+    FlightRecorderRing(int capacity, String[] featureKeys, String[] inputKeys) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.mask = size - 1;
+        this.featureKeys = featureKeys;
+        this.inputKeys = inputKeys;
+        this.versions = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            versions.set(i, WRITING);
+        }
+        this.timestamps = new long[size];
+        this.inputHashes = new long[size];
+        this.totalNanos = new long[size];
+        this.stageNanos = new long[size * STAGES.length];
+        this.features = new double[size * featureKeys.length];
+        this.transactionIds = new Object[size];
+        this.verdicts = new Object[size];
+        this.reasons = new Object[size];
+    }
+
+    /** Record one decision; allocation-free for numeric, boolean and string inputs. */
+    void record(Object transactionId, Map<String, Object> input, long rulesVersion, Object verdict, Object reason,
+                long featuresNanos, long dmnNanos, long recordNanos, long total) {
+        long seq = cursor.getAndIncrement();
+        int slot = (int) (seq & mask);
+
+        versions.set(slot, WRITING);
+        VarHandle.storeStoreFence();
+
+        timestamps[slot] = System.currentTimeMillis();
+        inputHashes[slot] = inputsHash(input, rulesVersion);
+        totalNanos[slot] = total;
+        int stage = slot * STAGES.length;
+        stageNanos[stage] = featuresNanos;
+        stageNanos[stage + 1] = dmnNanos;
+        stageNanos[stage + 2] = recordNanos;
+        int feature = slot * featureKeys.length;
+        for (int i = 0; i < featureKeys.length; i++) {
+            features[feature + i] = number(input.get(featureKeys[i]));
+        }
+        transactionIds[slot] = transactionId;
+        verdicts[slot] = verdict;
+        reasons[slot] = reason;
+
+        versions.set(slot, seq);
+    }
+
+    /**
+     * Recorded decisions, newest first (or slowest first).
+     * @param reason           only decisions with this reason (case-insensitive), or null for all
+     * @param minLatencyMicros only decisions that took at least this long in total
+     */
+    List<Map<String, Object>> query(String reason, long minLatencyMicros, boolean slowestFirst, int limit) {
+        long newest = cursor.get() - 1;
+        long oldest = Math.max(0, newest - mask);
+        long minNanos = minLatencyMicros * 1000;
+
+        List<Map<String, Object>> matches = new ArrayList<>();
+        for (long seq = newest; seq >= oldest; seq--) {
+            if (!slowestFirst && matches.size() >= limit) {
+                break;
+            }
+            int slot = (int) (seq & mask);
+            if (versions.get(slot) != seq) {
+                continue;
+            }
+            Object slotReason = reasons[slot];
+            long total = totalNanos[slot];
+            if (total < minNanos || (reason != null && !reason.equalsIgnoreCase(String.valueOf(slotReason)))) {
+                continue;
+            }
+            Map<String, Object> entry = copy(slot, seq, slotReason, total);
+            VarHandle.loadLoadFence();
+            if (versions.get(slot) == seq) {
+                matches.add(entry);
+            }
+        }
+        if (slowestFirst) {
+            matches.sort(Comparator.comparingLong((Map<String, Object> e) -> (Long) e.get("total_micros")).reversed());
+        }
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    long recorded() {
+        return cursor.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    private Map<String, Object> copy(int slot, long seq, Object reason, long total) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("seq", seq);
+        entry.put("timestamp", Instant.ofEpochMilli(timestamps[slot]).toString());
+        entry.put("transaction_id", transactionIds[slot]);
+        entry.put("inputs_hash", String.format("%016x", inputHashes[slot]));
+        entry.put("verdict", verdicts[slot]);
+        entry.put("reason", reason);
+
+        Map<String, Object> keyFeatures = new LinkedHashMap<>();
+        int feature = slot * featureKeys.length;
+        for (int i = 0; i < featureKeys.length; i++) {
+            double value = features[feature + i];
+            keyFeatures.put(featureKeys[i], Double.isNaN(value) ? null : value);
+        }
+        entry.put("features", keyFeatures);
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        int stage = slot * STAGES.length;
+        for (int i = 0; i < STAGES.length; i++) {
+            stages.put(STAGES[i], stageNanos[stage + i] / 1000);
+        }
+        entry.put("stages_micros", stages);
+        entry.put("total_micros", total / 1000);
+        return entry;
+    }
+
+    /**
+     * Order-dependent hash of the input values, so equal hashes mean the DMN
+     * saw the same inputs. Strings hash exactly as given, with no trimming
+     * or case folding, since the DMN compares them that way.
+     */
+    private long inputsHash(Map<String, Object> input, long rulesVersion) {
+        long h = Fingerprints.fmix64(rulesVersion ^ Fingerprints.SEED_HI);
+        for (String key : inputKeys) {
+            Object value = input.get(key);
+            long v;
+            if (value == null) {
+                v = 0;
+            } else if (value instanceof CharSequence) {
+                v = exactHash(value.toString());
+            } else if (value instanceof Number) {
+                v = Double.doubleToLongBits(((Number) value).doubleValue());
+            } else {
+                v = value.hashCode();
+            }
+            h = Fingerprints.combine(h, v);
+        }
+        return h;
+    }
+
+    /** String.hashCode, cached on the string, widened with the length. */
+    private static long exactHash(String value) {
+        return Fingerprints.fmix64(((long) value.length() << 32) ^ (value.hashCode() & 0xffffffffL));
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof Boolean) return (Boolean) value ? 1 : 0;
+        return Double.NaN;
+    }
+}
@@ -5,7 +5,12 @@ import javax.inject.Inject;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Path("/admin/fraud")
@@ -14,19 +19,74 @@ public class FraudAdminResource {
     
     @Inject
     CardFraudThresholdService thresholdService;
+
+    @Inject
+    CacheInvalidationService cacheInvalidationService;
+
+    @Inject
+    RuleWriteRepository ruleWriteRepository;
+
+    @Inject
+    BlocklistService blocklistService;
+
+    @Inject
+    TrustedPairService trustedPairService;
+
+    @Inject
+    VelocityStore velocityStore;
+
+    @Inject
+    CardTerminalTracker terminalTracker;
+
+    @Inject
+    CurrencyTracker currencyTracker;
+
+    @Inject
+    TravelVelocityService travelVelocity;
+
+    @Inject
+    PartitionService partitionService;
+
+    @Inject
+    UserActivityStore userActivityStore;
+
+    @Inject
+    MyPrimeRuleConfigService myPrimeRuleConfigService;
+
+    @Inject
+    DecisionJournal decisionJournal;
+
+    @Inject
+    DecisionAuditService auditService;
+
+    @Inject
+    StreamingDecisionService streamingService;
+
+    @Inject
+    ThresholdSimulationService simulationService;
+
+    @Inject
+    DecisionFlightRecorder flightRecorder;
     
     @POST
     @Path("/refresh-cache")
     @Produces(MediaType.APPLICATION_JSON)
     public Response refreshCache() {
         try {
-            if (thresholdService instanceof CardFraudThresholdServiceImpl) {
-                ((CardFraudThresholdServiceImpl) thresholdService).refreshAllCaches();
+            // Refreshes this replica and signals the others to reload
+            long version = cacheInvalidationService.broadcastRefresh();
+            if (version < 0) {
+                return Response.status(207).entity(Map.of(
+                    "status", "partial",
+                    "message", "Cache refreshed on this replica, but other replicas were not notified",
+                    "timestamp", LocalDateTime.now().toString()
+                )).build();
             }
-            
+
             return Response.ok(Map.of(
                 "status", "success",
                 "message", "Cache refreshed successfully",
+                "cache_version", version,
                 "timestamp", LocalDateTime.now().toString()
             )).build();
             
@@ -45,15 +105,427 @@ public class FraudAdminResource {
     public Response getCacheStatus() {
         if (thresholdService instanceof CardFraudThresholdServiceImpl) {
             CardFraudThresholdServiceImpl service = (CardFraudThresholdServiceImpl) thresholdService;
+            RuleSnapshot snapshot = service.currentSnapshot();
             
             return Response.ok(Map.of(
-                "threshold_count", service.getAllThresholds().size(),
-                "mcc_rules_count", service.getSuspiciousMccList().size(),
+                "threshold_count", snapshot.getThresholds().size(),
+                "mcc_rules_count", snapshot.getSuspiciousMccList().size(),
                 "cache_enabled", true,
-                "last_refresh", LocalDateTime.now().toString()
+                "cache_version", cacheInvalidationService.getLastSeenVersion(),
+                "snapshot_version", snapshot.getVersion(),
+                "dataset_load_micros", snapshot.getDatasetLoadMicros(),
+                "last_refresh", snapshot.getLoadedAt().toString()
             )).build();
         }
         
         return Response.ok(Map.of("cache_enabled", false)).build();
     }
-}
\ No newline at end of file
+
+    @GET
+    @Path("/thresholds")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getThresholds(@QueryParam("as_of") String asOf) {
+        RuleSnapshot snapshot = thresholdService.currentSnapshot();
+        Instant at;
+        try {
+            at = CardFraudEvaluator.parseAsOf(asOf);
+            if (at == null) {
+                at = Instant.now();
+            }
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+
+        long nextChange = snapshot.getThresholdTimeline().nextChangeAfter(at.toEpochMilli());
+        return Response.ok(Map.of(
+            "as_of", at.toString(),
+            "thresholds", snapshot.getThresholdsAt(at),
+            "next_change", nextChange == ThresholdTimeline.OPEN_END ? "none" : Instant.ofEpochMilli(nextChange).toString(),
+            "snapshot_version", snapshot.getVersion()
+        )).build();
+    }
+
+    @GET
+    @Path("/blocklists")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getBlocklists() {
+        return Response.ok(blocklistService.stats()).build();
+    }
+
+    @POST
+    @Path("/blocklists/reload")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response reloadBlocklists() {
+        // Local to this replica: each pod loads the lists from the same source
+        blocklistService.reload();
+        return Response.ok(blocklistService.stats()).build();
+    }
+
+    @GET
+    @Path("/trusted-pairs")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTrustedPairs() {
+        return Response.ok(trustedPairService.stats()).build();
+    }
+
+    @POST
+    @Path("/trusted-pairs/reload")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response reloadTrustedPairs() {
+        trustedPairService.reload();
+        return Response.ok(trustedPairService.stats()).build();
+    }
+
+    @GET
+    @Path("/velocity")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getVelocityStats() {
+        return Response.ok(velocityStore.stats()).build();
+    }
+
+    @GET
+    @Path("/terminal-sketch")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTerminalSketchStats() {
+        return Response.ok(terminalTracker.stats()).build();
+    }
+
+    @GET
+    @Path("/currency-tracker")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCurrencyTrackerStats() {
+        return Response.ok(currencyTracker.stats()).build();
+    }
+
+    @GET
+    @Path("/travel")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTravelStats() {
+        return Response.ok(travelVelocity.stats()).build();
+    }
+
+    @GET
+    @Path("/myprime-activity")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getUserActivityStats() {
+        return Response.ok(userActivityStore.stats()).build();
+    }
+
+    @GET
+    @Path("/myprime-rules")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMyPrimeRuleStats() {
+        return Response.ok(myPrimeRuleConfigService.stats()).build();
+    }
+
+    @GET
+    @Path("/journal")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDecisionJournalStats() {
+        return Response.ok(decisionJournal.stats()).build();
+    }
+
+    @GET
+    @Path("/audit")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDecisionAuditStats() {
+        return Response.ok(auditService.stats()).build();
+    }
+
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStreamStats() {
+        return Response.ok(streamingService.stats()).build();
+    }
+
+    /** Send transactions into the in-memory stream (fraud.stream.source=memory); returns their offsets. */
+    @POST
+    @Path("/stream/events")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response sendStreamEvents(List<Map<String, Object>> txns) {
+        InMemoryTransactionStream stream = streamingService.memoryStream();
+        if (stream == null) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(Map.of("error", "In-memory stream is not enabled"))
+                    .build();
+        }
+        List<Long> offsets = new ArrayList<>(txns.size());
+        for (Map<String, Object> txn : txns) {
+            long offset = stream.send(CardFraudEvaluator.cardKey(txn), txn);
+            if (offset < 0) {
+                // Log full: report what was accepted, the caller resends the rest
+                return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                        .entity(Map.of("error", "In-memory stream log is full", "offsets", offsets))
+                        .build();
+            }
+            offsets.add(offset);
+        }
+        return Response.ok(Map.of("offsets", offsets)).build();
+    }
+
+    /** Take decisions off the in-memory decision topic, which acknowledges waiting publishes. */
+    @GET
+    @Path("/stream/decisions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response takeStreamDecisions(@QueryParam("max") @DefaultValue("100") int max) {
+        InMemoryTransactionStream stream = streamingService.memoryStream();
+        if (stream == null) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(Map.of("error", "In-memory stream is not enabled"))
+                    .build();
+        }
+        return Response.ok(Map.of("decisions", stream.takeDecisions(max))).build();
+    }
+
+    /**
+     * What-if run of proposed threshold values over recent journaled card decisions, e.g.
+     * {"overrides": {"VELOCITY_5_AMOUNT": 50000}, "sample_size": 100000}.
+     */
+    @POST
+    @Path("/simulations/thresholds")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response simulateThresholds(Map<String, Object> body) {
+        Object raw = body == null ? null : body.get("overrides");
+        if (!(raw instanceof Map) || ((Map<?, ?>) raw).isEmpty()) {
+            return badRequest("'overrides' must be a non-empty object of rule parameter to value");
+        }
+        Map<String, BigDecimal> overrides = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> e : ((Map<?, ?>) raw).entrySet()) {
+            String key = String.valueOf(e.getKey());
+            if (!simulationService.isRuleInput(key)) {
+                return badRequest("Not a rule parameter of the CardFraudDecision model: " + key);
+            }
+            BigDecimal value = toBigDecimal(e.getValue());
+            if (value == null) {
+                return badRequest("Override for " + key + " must be a number");
+            }
+            overrides.put(key, value);
+        }
+        BigDecimal sampleSize = toBigDecimal(body.getOrDefault("sample_size", 100000));
+        if (sampleSize == null || sampleSize.signum() <= 0) {
+            return badRequest("'sample_size' must be a positive number");
+        }
+
+        try {
+            Map<String, Object> result = simulationService.simulate(overrides, sampleSize.intValue());
+            if (result == null) {
+                return Response.status(Response.Status.CONFLICT)
+                        .entity(Map.of("error", "A simulation is already running"))
+                        .build();
+            }
+            return Response.ok(result).build();
+        } catch (Exception e) {
+            System.err.println("Threshold simulation failed: " + e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(Map.of("error", "Simulation failed", "message", String.valueOf(e.getMessage())))
+                    .build();
+        }
+    }
+
+    @GET
+    @Path("/flight-recorder")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getFlightRecorderStats() {
+        return Response.ok(flightRecorder.stats()).build();
+    }
+
+    /**
+     * Recent decisions of one endpoint ("card" or "myprime"), newest first or,
+     * with order=latency, slowest first; optionally only one reason or only
+     * decisions slower than min_latency_micros.
+     */
+    @GET
+    @Path("/flight-recorder/{endpoint}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response queryFlightRecorder(@PathParam("endpoint") String endpoint,
+                                        @QueryParam("reason") String reason,
+                                        @QueryParam("min_latency_micros") @DefaultValue("0") long minLatencyMicros,
+                                        @QueryParam("order") @DefaultValue("recent") String order,
+                                        @QueryParam("limit") @DefaultValue("100") int limit) {
+        FlightRecorderRing ring = flightRecorder.ring(endpoint);
+        if (ring == null) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(Map.of("error", "Unknown endpoint: " + endpoint + " (card or myprime)"))
+                    .build();
+        }
+        if (!"recent".equalsIgnoreCase(order) && !"latency".equalsIgnoreCase(order)) {
+            return badRequest("'order' must be recent or latency");
+        }
+        if (limit <= 0) {
+            return badRequest("'limit' must be positive");
+        }
+        List<Map<String, Object>> decisions = ring.query(reason == null || reason.isBlank() ? null : reason.trim(),
+            minLatencyMicros, "latency".equalsIgnoreCase(order), limit);
+        return Response.ok(Map.of("endpoint", endpoint.toLowerCase(), "count", decisions.size(),
+            "decisions", decisions)).build();
+    }
+
+    @GET
+    @Path("/partitions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPartitionStats() {
+        return Response.ok(partitionService.stats()).build();
+    }
+
+    /** Replace the replica list on every old and new member and rebalance card state. */
+    @PUT
+    @Path("/partitions")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response changePartitions(Map<String, Object> body) {
+        List<String> nodes = PartitionResource.nodeList(body);
+        if (nodes == null) {
+            return badRequest("'nodes' must be a list of base URLs");
+        }
+        if (!partitionService.isEnabled()) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(Map.of("error", "Partitioning is disabled"))
+                    .build();
+        }
+        try {
+            return Response.ok(partitionService.changeMembership(nodes, true)).build();
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+    }
+
+    // =========================================================
+    // Write-through rule updates: DB first, then an in-place
+    // delta on the in-memory snapshot (no full reload)
+    // =========================================================
+
+    @PUT
+    @Path("/thresholds/{key}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response upsertThreshold(@PathParam("key") String key, Map<String, Object> body) {
+        BigDecimal value = toBigDecimal(body == null ? null : body.get("value"));
+        if (value == null) {
+            return badRequest("'value' must be a number");
+        }
+        // One instant for the DB row and the in-memory version, so a reload sees the same history
+        Instant from = Instant.ofEpochMilli(System.currentTimeMillis());
+        return writeThrough(
+            () -> ruleWriteRepository.upsertThreshold(key, value, from),
+            (current, version) -> current.withThreshold(version, key, value, from));
+    }
+
+    @PUT
+    @Path("/mcc-rules/{mcc}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response upsertMccRule(@PathParam("mcc") String mccCode, Map<String, Object> body) {
+        boolean active = isActive(body);
+        return writeThrough(
+            () -> ruleWriteRepository.upsertMccRule(mccCode, active),
+            (current, version) -> current.withSuspiciousMcc(version, mccCode, active));
+    }
+
+    @PUT
+    @Path("/product-mcc-rules/{product}/{mcc}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response upsertProductMccRule(@PathParam("product") String productCode,
+                                         @PathParam("mcc") String mccCode,
+                                         Map<String, Object> body) {
+        boolean active = isActive(body);
+        String riskLevel = upper(body == null ? null : body.get("risk_level"));
+        if (active && riskLevel == null) {
+            return badRequest("'risk_level' is required for an active rule");
+        }
+        return writeThrough(
+            () -> ruleWriteRepository.upsertProductMccRule(productCode, mccCode, riskLevel, active),
+            (current, version) -> current.withProductMccRisk(version, productCode, mccCode, active ? riskLevel : null));
+    }
+
+    @PUT
+    @Path("/country-rules/{code}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response upsertCountryRule(@PathParam("code") String countryCode, Map<String, Object> body) {
+        boolean active = isActive(body);
+        String decisionLevel = upper(body == null ? null : body.get("decision_level"));
+        String countryName = body == null || body.get("country_name") == null
+            ? null : String.valueOf(body.get("country_name")).trim();
+        if (active && decisionLevel == null) {
+            return badRequest("'decision_level' is required for an active rule");
+        }
+        // Without country_name the DB keeps the stored one; the in-memory rule must too
+        String[] storedName = {countryName};
+        return writeThrough(
+            () -> storedName[0] = ruleWriteRepository.upsertCountryRule(countryCode, countryName, decisionLevel, active),
+            (current, version) -> current.withCountryRule(version, countryCode, storedName[0], active ? decisionLevel : null));
+    }
+
+    private Response writeThrough(Runnable dbWrite, CardFraudThresholdServiceImpl.RuleDelta delta) {
+        if (!(thresholdService instanceof CardFraudThresholdServiceImpl)) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .entity(Map.of("status", "error", "message", "Rule cache does not support write-through"))
+                .build();
+        }
+        try {
+            dbWrite.run();
+            RuleSnapshot updated = ((CardFraudThresholdServiceImpl) thresholdService).applyDelta(delta);
+
+            // Other replicas reload from the DB, which already holds the change
+            long cacheVersion;
+            try {
+                cacheVersion = cacheInvalidationService.announce();
+            } catch (Exception e) {
+                System.err.println("Failed to announce rule change: " + e.getMessage());
+                // Saved and live here, but other replicas only see it after their cache TTL
+                return Response.status(207).entity(Map.of(
+                    "status", "partial",
+                    "message", "Rule saved and applied on this replica, but other replicas were not notified: "
+                        + e.getMessage(),
+                    "snapshot_version", updated.getVersion(),
+                    "cache_version", cacheInvalidationService.getLastSeenVersion(),
+                    "timestamp", LocalDateTime.now().toString()
+                )).build();
+            }
+
+            return Response.ok(Map.of(
+                "status", "success",
+                "snapshot_version", updated.getVersion(),
+                "cache_version", cacheVersion,
+                "timestamp", LocalDateTime.now().toString()
+            )).build();
+
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .entity(Map.of(
+                    "status", "error",
+                    "message", "Failed to update rule: " + e.getMessage()
+                )).build();
+        }
+    }
+
+    private static Response badRequest(String message) {
+        return Response.status(Response.Status.BAD_REQUEST)
+            .entity(Map.of("status", "error", "message", message))
+            .build();
+    }
+
+    private static boolean isActive(Map<String, Object> body) {
+        Object v = body == null ? null : body.get("active");
+        return v == null || Boolean.parseBoolean(String.valueOf(v));
+    }
+
+    private static String upper(Object v) {
+        if (v == null) return null;
+        String s = String.valueOf(v).trim().toUpperCase();
+        return s.isEmpty() ? null : s;
+    }
+
+    private static BigDecimal toBigDecimal(Object v) {
+        if (v == null) return null;
+        try {
+            return new BigDecimal(String.valueOf(v).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.primebank.fraud;
+
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.QuarkusApplication;
+import io.quarkus.runtime.annotations.QuarkusMain;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+
+/**
+ * Entry point. Without arguments the service runs as usual; with
+ * {@code rescore ...} the same artifact runs {@link BulkRescoreCommand}
+ * and exits.
+ */
+@QuarkusMain
+public class FraudMain implements QuarkusApplication {
+
+    @Inject
+    BulkRescoreCommand rescoreCommand;
+
+    @Override
+    public int run(String... args) throws Exception {
+        if (args.length > 0 && "rescore".equals(args[0])) {
+            return rescoreCommand.run(Arrays.copyOfRange(args, 1, args.length));
+        }
+        Quarkus.waitForExit();
+        return 0;
+    }
+}
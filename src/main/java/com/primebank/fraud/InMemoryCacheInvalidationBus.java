@@ -0,0 +1,22 @@
+package com.primebank.fraud;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for single-node runs, dev mode and tests.
+ * Only replicas sharing the same JVM see each other's versions.
+ */
+public class InMemoryCacheInvalidationBus implements CacheInvalidationBus {
+
+    private final AtomicLong version = new AtomicLong();
+
+    @Override
+    public long publish() {
+        return version.incrementAndGet();
+    }
+
+    @Override
+    public long currentVersion() {
+        return version.get();
+    }
+}
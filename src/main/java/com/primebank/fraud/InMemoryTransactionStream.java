@@ -0,0 +1,181 @@
+package com.primebank.fraud;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local stand-in for dev mode and tests: an in-process transaction log of
+ * at most {@code logCapacity} uncommitted events and a bounded decision
+ * topic. {@link #send} refuses events while the log is full. A decision is acknowledged once it is on the
+ * topic; while the topic is full, publishes stay unacknowledged until
+ * {@link #takeDecisions} makes room, which holds back the consumer the
+ * same way a slow downstream broker would.
+ */
+public class InMemoryTransactionStream implements TransactionSource, DecisionSink {
+
+    private static final class Published {
+        final Map<String, Object> decision;
+        final CompletableFuture<Void> ack;
+
+        Published(Map<String, Object> decision, CompletableFuture<Void> ack) {
+            this.decision = decision;
+            this.ack = ack;
+        }
+    }
+
+    private final int logCapacity;
+    private final int topicCapacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition eventsArrived = lock.newCondition();
+
+    // Uncommitted part of the log; log.peekFirst() has offset firstOffset
+    private final ArrayDeque<StreamEvent> log = new ArrayDeque<>();
+    private long firstOffset;
+    private long nextOffset;
+    private long pollOffset;
+    private long committedOffset = -1;
+
+    private final ArrayDeque<Map<String, Object>> topic = new ArrayDeque<>();
+    private final ArrayDeque<Published> waiting = new ArrayDeque<>();
+
+    public InMemoryTransactionStream(int logCapacity, int topicCapacity) {
+        this.logCapacity = Math.max(1, logCapacity);
+        this.topicCapacity = Math.max(1, topicCapacity);
+    }
+
+    /** Append a transaction to the log; returns its offset, or -1 if the log is full. */
+    public long send(String key, Map<String, Object> payload) {
+        lock.lock();
+        try {
+            if (log.size() >= logCapacity) {
+                return -1;
+            }
+            long offset = nextOffset++;
+            log.addLast(new StreamEvent(offset, key, payload));
+            eventsArrived.signalAll();
+            return offset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<StreamEvent> poll(int maxEvents, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (pollOffset == nextOffset) {
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0) {
+                    return List.of();
+                }
+                eventsArrived.awaitNanos(wait);
+            }
+            List<StreamEvent> events = new ArrayList<>(Math.min(maxEvents, (int) (nextOffset - pollOffset)));
+            int skip = (int) (pollOffset - firstOffset);
+            for (StreamEvent event : log) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                if (events.size() == maxEvents) {
+                    break;
+                }
+                events.add(event);
+            }
+            pollOffset += events.size();
+            return events;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void commit(long offset) {
+        lock.lock();
+        try {
+            // Committed events are never read again
+            while (firstOffset <= offset && !log.isEmpty()) {
+                log.pollFirst();
+                firstOffset++;
+            }
+            committedOffset = Math.max(committedOffset, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> publish(StreamEvent event, Map<String, Object> decision) {
+        lock.lock();
+        try {
+            if (waiting.isEmpty() && topic.size() < topicCapacity) {
+                topic.addLast(decision);
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> ack = new CompletableFuture<>();
+            waiting.addLast(new Published(decision, ack));
+            return ack;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Remove up to {@code max} decisions from the topic, oldest first. */
+    public List<Map<String, Object>> takeDecisions(int max) {
+        List<Map<String, Object>> taken = new ArrayList<>();
+        List<CompletableFuture<Void>> acked = new ArrayList<>();
+        lock.lock();
+        try {
+            while (taken.size() < max && !topic.isEmpty()) {
+                taken.add(topic.pollFirst());
+            }
+            while (topic.size() < topicCapacity && !waiting.isEmpty()) {
+                Published next = waiting.pollFirst();
+                topic.addLast(next.decision);
+                acked.add(next.ack);
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Complete outside the lock: acknowledgement callbacks run on this thread
+        acked.forEach(ack -> ack.complete(null));
+        return taken;
+    }
+
+    public long getCommittedOffset() {
+        lock.lock();
+        try {
+            return committedOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Events sent but not yet committed. */
+    public long lag() {
+        lock.lock();
+        try {
+            return nextOffset - (committedOffset + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int topicSize() {
+        lock.lock();
+        try {
+            return topic.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
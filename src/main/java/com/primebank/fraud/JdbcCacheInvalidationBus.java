@@ -0,0 +1,73 @@
+package com.primebank.fraud;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * DB-backed invalidation counter. Expects a one-row-per-cache table:
+ *
+ * <pre>
+ * CREATE TABLE fraud_cache_version (
+ *     cache_name VARCHAR(64) NOT NULL PRIMARY KEY,
+ *     version    BIGINT      NOT NULL
+ * )
+ * </pre>
+ *
+ * Polling is a primary-key lookup of a single row, so it is cheap even
+ * with every replica polling every few seconds. Publishing is one MERGE
+ * under HOLDLOCK, so two replicas publishing the first version at once
+ * serialize instead of both inserting the row.
+ */
+public class JdbcCacheInvalidationBus implements CacheInvalidationBus {
+
+    private final DataSource dataSource;
+    private final String cacheName;
+
+    public JdbcCacheInvalidationBus(DataSource dataSource, String cacheName) {
+        this.dataSource = dataSource;
+        this.cacheName = cacheName;
+    }
+
+    @Override
+    public long publish() {
+        String sql = "MERGE fraud_cache_version WITH (HOLDLOCK) AS t " +
+            "USING (SELECT ? AS cache_name) AS s ON t.cache_name = s.cache_name " +
+            "WHEN MATCHED THEN UPDATE SET version = t.version + 1 " +
+            "WHEN NOT MATCHED THEN INSERT (cache_name, version) VALUES (s.cache_name, 1) " +
+            "OUTPUT inserted.version;";
+
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            ps.setString(1, cacheName);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalStateException("MERGE returned no version");
+                }
+                return rs.getLong(1);
+            }
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to publish cache invalidation for " + cacheName, e);
+        }
+    }
+
+    @Override
+    public long currentVersion() {
+        String sql = "SELECT version FROM fraud_cache_version WHERE cache_name = ?";
+
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            ps.setString(1, cacheName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read cache version for " + cacheName, e);
+        }
+    }
+}
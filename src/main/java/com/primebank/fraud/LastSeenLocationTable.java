@@ -0,0 +1,117 @@
+package com.primebank.fraud;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Last location and time per card, off-heap, in fixed-width records:
+ *
+ * <pre>
+ * long  card fingerprint hi
+ * long  card fingerprint lo (never 0: marks an empty record)
+ * long  location id (top 16 bits) | event millis (low 48 bits)
+ * </pre>
+ *
+ * The table never grows. A card hashes to one bucket of 8 records (192
+ * bytes) and only that bucket is probed; when the bucket is full the
+ * record with the oldest event is overwritten, so the table behaves like
+ * a cache of the most recently active cards. Each bucket is guarded by
+ * one of a fixed set of lock stripes.
+ */
+final class LastSeenLocationTable {
+
+    /** Returned by {@link #swap} when the card was not in the table. */
+    static final long NONE = -1L;
+
+    private static final int RECORD_BYTES = 24;
+    private static final int BUCKET_RECORDS = 8;
+    private static final int BUCKET_BYTES = RECORD_BYTES * BUCKET_RECORDS;
+    private static final int SEGMENT_SHIFT = 18;
+    private static final long SEGMENT_BUCKETS = 1L << SEGMENT_SHIFT;
+    private static final int LOCK_STRIPES = 1024;
+    private static final long MILLIS_MASK = (1L << 48) - 1;
+    private static final double TARGET_LOAD = 0.75;
+
+    private final ByteBuffer[] segments;
+    private final long bucketMask;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    LastSeenLocationTable(long maxCards) {
+        long needed = (long) Math.ceil(Math.max(BUCKET_RECORDS, maxCards) / (BUCKET_RECORDS * TARGET_LOAD));
+        long buckets = Long.highestOneBit(Math.max(1L, needed - 1)) << 1;
+        this.bucketMask = buckets - 1;
+
+        int segmentCount = (int) Math.max(1L, buckets >>> SEGMENT_SHIFT);
+        int segmentBytes = (int) (Math.min(buckets, SEGMENT_BUCKETS) * BUCKET_BYTES);
+        this.segments = new ByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Direct buffers are zero-filled: every record starts empty
+            segments[i] = ByteBuffer.allocateDirect(segmentBytes);
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Store the card's location unless the table already holds a later
+     * event for it.
+     * @return the previously stored packed value (see {@link #location} and
+     *         {@link #millis}), or {@link #NONE}
+     */
+    long swap(long hi, long lo, int location, long eventMillis) {
+        long packed = pack(location, eventMillis);
+        long bucket = Fingerprints.fmix64(lo) & bucketMask;
+        ByteBuffer seg = segments[(int) (bucket >>> SEGMENT_SHIFT)];
+        int base = (int) (bucket & (SEGMENT_BUCKETS - 1)) * BUCKET_BYTES;
+
+        synchronized (locks[(int) (bucket & (LOCK_STRIPES - 1))]) {
+            int victim = base;
+            long victimMillis = Long.MAX_VALUE;
+            for (int off = base; off < base + BUCKET_BYTES; off += RECORD_BYTES) {
+                long sLo = seg.getLong(off + 8);
+                if (sLo == 0) {
+                    victim = off;
+                    victimMillis = Long.MIN_VALUE;
+                    // Records fill a bucket front to back, so nothing follows
+                    break;
+                }
+                if (sLo == lo && seg.getLong(off) == hi) {
+                    long previous = seg.getLong(off + 16);
+                    if (millis(previous) <= eventMillis) {
+                        seg.putLong(off + 16, packed);
+                    }
+                    return previous;
+                }
+                long sMillis = millis(seg.getLong(off + 16));
+                if (sMillis < victimMillis) {
+                    victim = off;
+                    victimMillis = sMillis;
+                }
+            }
+            seg.putLong(victim, hi);
+            seg.putLong(victim + 8, lo);
+            seg.putLong(victim + 16, packed);
+            return NONE;
+        }
+    }
+
+    static int location(long packed) {
+        return (int) (packed >>> 48);
+    }
+
+    static long millis(long packed) {
+        return packed & MILLIS_MASK;
+    }
+
+    long capacity() {
+        return (bucketMask + 1) * BUCKET_RECORDS;
+    }
+
+    long sizeInBytes() {
+        return (bucketMask + 1) * BUCKET_BYTES;
+    }
+
+    private static long pack(int location, long eventMillis) {
+        return ((long) location << 48) | (Math.max(0L, eventMillis) & MILLIS_MASK);
+    }
+}
@@ -0,0 +1,109 @@
+package com.primebank.fraud;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits a large text file into chunks of roughly equal size that start
+ * and end on line boundaries, and reads the lines of one chunk through a
+ * read-only mapping. Chunks are independent, so they can be read by
+ * different threads; the same file and chunk size always give the same
+ * chunks, which lets a checkpoint refer to a chunk by index.
+ */
+final class MappedLineChunks {
+
+    // One mapping per chunk must stay below 2 GB, lines included
+    static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    private static final int SCAN_WINDOW = 64 * 1024;
+
+    private MappedLineChunks() {
+    }
+
+    /**
+     * Chunk boundaries over {@code [dataStart, size)}: chunk i is
+     * {@code [bounds[i], bounds[i + 1])}.
+     */
+    static long[] boundaries(FileChannel ch, long dataStart, long chunkBytes) throws IOException {
+        long size = ch.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(dataStart);
+        long start = dataStart;
+        while (start < size) {
+            long end = start + chunkBytes >= size ? size : lineEndAfter(ch, start + chunkBytes, size);
+            bounds.add(end);
+            start = end;
+        }
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /** Offset just past the first line, i.e. where the data after a header line starts. */
+    static long firstLineEnd(FileChannel ch) throws IOException {
+        return lineEndAfter(ch, 0, ch.size());
+    }
+
+    /** The first line of the file, without its line terminator. */
+    static String firstLine(FileChannel ch) throws IOException {
+        long end = firstLineEnd(ch);
+        List<String> lines = new ArrayList<>(1);
+        forEachLine(ch, 0, end, lines::add);
+        return lines.isEmpty() ? "" : lines.get(0);
+    }
+
+    /** Pass each non-blank line in {@code [start, end)} to the consumer, without '\n' / "\r\n". */
+    static void forEachLine(FileChannel ch, long start, long end, Consumer<String> consumer) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk too large to map: " + (end - start) + " bytes");
+        }
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        byte[] line = new byte[4096];
+        int length = 0;
+        int limit = buf.limit();
+        for (int i = 0; i <= limit; i++) {
+            byte b = i < limit ? buf.get(i) : (byte) '\n';
+            if (b != '\n') {
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[length++] = b;
+                continue;
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                String text = new String(line, 0, length, StandardCharsets.UTF_8);
+                if (!text.isBlank()) {
+                    consumer.accept(text);
+                }
+            }
+            length = 0;
+        }
+    }
+
+    /** Offset just past the first '\n' at or after {@code from}, or {@code size} if there is none. */
+    private static long lineEndAfter(FileChannel ch, long from, long size) throws IOException {
+        long pos = from;
+        while (pos < size) {
+            int window = (int) Math.min(SCAN_WINDOW, size - pos);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, window);
+            for (int i = 0; i < window; i++) {
+                if (buf.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += window;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,101 @@
+package com.primebank.fraud;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Set of suspicious MCC codes as a bitset over the 4-digit MCC space
+ * (10,000 bits = 1.25 KB). Membership is one array read and a mask,
+ * with no parsing allocation.
+ */
+public final class MccBitSet {
+
+    static final int MCC_SPACE = 10_000;
+
+    public static final MccBitSet EMPTY = new MccBitSet(new long[words()], Collections.emptySet());
+
+    private final long[] bits;
+    // Codes that are not 4-digit numbers are rare; keep them out of the bitset
+    private final Set<String> nonNumeric;
+
+    private MccBitSet(long[] bits, Set<String> nonNumeric) {
+        this.bits = bits;
+        this.nonNumeric = nonNumeric;
+    }
+
+    public static MccBitSet of(Collection<String> mccCodes) {
+        long[] bits = new long[words()];
+        Set<String> nonNumeric = new HashSet<>();
+        for (String code : mccCodes) {
+            int mcc = parseMcc(code);
+            if (mcc >= 0) {
+                bits[mcc >>> 6] |= 1L << mcc;
+            } else if (code != null) {
+                nonNumeric.add(code.trim());
+            }
+        }
+        return new MccBitSet(bits, nonNumeric.isEmpty() ? Collections.emptySet() : nonNumeric);
+    }
+
+    public boolean contains(String mccCode) {
+        int mcc = parseMcc(mccCode);
+        if (mcc >= 0) {
+            return contains(mcc);
+        }
+        return mccCode != null && !nonNumeric.isEmpty() && nonNumeric.contains(mccCode.trim());
+    }
+
+    public boolean contains(int mcc) {
+        return mcc >= 0 && mcc < MCC_SPACE && (bits[mcc >>> 6] & (1L << mcc)) != 0;
+    }
+
+    public int size() {
+        int n = nonNumeric.size();
+        for (long word : bits) {
+            n += Long.bitCount(word);
+        }
+        return n;
+    }
+
+    /**
+     * Parse a 4-digit MCC without allocating.
+     * @return 0..9999, or -1 if the value is not exactly four digits
+     */
+    static int parseMcc(String s) {
+        if (s == null) {
+            return -1;
+        }
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) == ' ') start++;
+        while (end > start && s.charAt(end - 1) == ' ') end--;
+        if (end - start != 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /** Zero-padded 4-digit form of an MCC, e.g. 742 -> "0742". */
+    static String formatMcc(int mcc) {
+        char[] c = new char[4];
+        for (int i = 3; i >= 0; i--) {
+            c[i] = (char) ('0' + mcc % 10);
+            mcc /= 10;
+        }
+        return new String(c);
+    }
+
+    private static int words() {
+        return (MCC_SPACE + 63) >>> 6;
+    }
+}
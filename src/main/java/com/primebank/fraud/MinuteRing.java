@@ -0,0 +1,54 @@
+package com.primebank.fraud;
+
+/**
+ * The last hour as 60 one-minute buckets in a ring, shared by the per-card
+ * and per-user windows. Subclasses hold one array per measure, indexed by
+ * slot, and clear a slot when the ring moves past it. Not thread-safe:
+ * guarded by the owning store's stripe.
+ */
+abstract class MinuteRing {
+
+    static final int SLOTS = 60;
+    static final long MINUTE_MILLIS = 60_000L;
+
+    // Newest minute (epoch minutes) held in the ring
+    long headMinute;
+
+    MinuteRing(long eventMillis) {
+        this.headMinute = eventMillis / MINUTE_MILLIS;
+    }
+
+    /** Reset every measure of one slot. */
+    abstract void clearSlot(int slot);
+
+    /**
+     * Slot for the minute, moving the ring forward and clearing the minutes
+     * it passes over; -1 if the minute is older than the ring.
+     */
+    final int slotFor(long minute) {
+        if (minute > headMinute) {
+            long steps = Math.min(minute - headMinute, SLOTS);
+            for (long m = minute - steps + 1; m <= minute; m++) {
+                clearSlot((int) (m % SLOTS));
+            }
+            headMinute = minute;
+        } else if (headMinute - minute >= SLOTS) {
+            return -1;
+        }
+        return (int) (minute % SLOTS);
+    }
+
+    /**
+     * Slot of the minute {@code back} minutes before {@code atMinute}, without
+     * moving the ring; -1 if that minute is after the newest bucket or older
+     * than the ring. Windows are relative to the read minute, so a read after
+     * the newest bucket only sees the buckets still inside them.
+     */
+    final int slotBack(long atMinute, int back) {
+        long minute = atMinute - back;
+        if (minute > headMinute || headMinute - minute >= SLOTS) {
+            return -1;
+        }
+        return (int) (minute % SLOTS);
+    }
+}
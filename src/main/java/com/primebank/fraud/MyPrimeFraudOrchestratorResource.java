@@ -7,6 +7,8 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
 import java.time.*;
 import java.util.HashMap;
 import java.util.Map;
@@ -26,9 +28,40 @@ public class MyPrimeFraudOrchestratorResource {
     @Inject
     MyPrimeRuleConfigService ruleConfigService;
 
+    @Inject
+    UserActivityStore userActivityStore;
+
+    @Inject
+    PartitionService partitionService;
+
+    @Inject
+    DecisionJournal decisionJournal;
+
+    @Inject
+    DecisionAuditService auditService;
+
+    @Inject
+    DecisionFlightRecorder flightRecorder;
+
     @POST
-    public Map<String, Object> decide(Map<String, Object> txn) {
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> decide(Map<String, Object> txn,
+                                      @HeaderParam(PartitionService.FORWARDED_HEADER) String forwardedBy) {
+
+        // Per-user state lives on the user's owning replica
+        String owner = partitionService.remoteOwner(userKey(txn), forwardedBy);
+        if (owner != null) {
+            Response forwarded = partitionService.forward(owner, "/fraud/myprime/decision", txn);
+            if (forwarded != null) {
+                // The owner answered, or may have recorded the login: deciding here would count it twice
+                if (forwarded.getStatus() == 200 && forwarded.getEntity() instanceof Map) {
+                    return (Map<String, Object>) forwarded.getEntity();
+                }
+                throw new WebApplicationException(forwarded);
+            }
+        }
 
+        long start = System.nanoTime();
         Map<String, Object> dmnInput = new HashMap<>();
         dmnInput.putAll(txn);
 
@@ -37,10 +70,20 @@ public class MyPrimeFraudOrchestratorResource {
         dmnInput.put("max_ml_score", maxNonNull(toDouble(txn.get("ml_fraud_score_myprime")),
                                                toDouble(txn.get("ml_fraud_score_myprime_unstructured_ml"))));
 
-        // DB-driven rule params
-        dmnInput.put("RULES", ruleConfigService.loadActiveRulesContext());
+        // Login / device / OTP velocity from the in-process store, unless the caller sent them
+        applyUserActivity(txn, dmnInput);
+
+        // DB-driven rule params (cached, pre-converted snapshot)
+        MyPrimeRuleSnapshot rules = ruleConfigService.currentSnapshot();
+        dmnInput.put("RULES", rules.getRulesContext());
+
+        // Risk points from the compiled rule configs, unless the caller scored already
+        if (txn.get("total_risk_score") == null) {
+            dmnInput.put("total_risk_score", BigDecimal.valueOf(rules.getScorer().score(dmnInput)));
+        }
 
         // Evaluate DMN
+        long dmnStart = System.nanoTime();
         DecisionModel model = decisionModels.getDecisionModel(DMN_NS, DMN_MODEL);
         if (model == null) throw new WebApplicationException("DMN not found: " + DMN_MODEL, 500);
 
@@ -49,12 +92,117 @@ public class MyPrimeFraudOrchestratorResource {
         Map<String, Object> decision = (Map<String, Object>) result.get(DMN_MODEL);
 
         if (decision == null) throw new WebApplicationException("DMN returned no decision", 500);
+        long dmnEnd = System.nanoTime();
 
         // Add evaluatedAt (optional)
         decision.put("evaluatedAt", Instant.now().toString());
+        decision.put("rulesVersion", rules.getVersion());
+
+        // Inputs and verdict to the decision journal and audit table; RULES itself is identified by the version
+        String transactionId = asString(txn.get("txn_id"));
+        if (transactionId == null) {
+            transactionId = userKey(txn);
+        }
+        String finalDecision = asString(decision.get("FinalDecision"));
+        String reason = asString(decision.get("DecisionReason"));
+        long recordStart = System.nanoTime();
+        decisionJournal.append(DecisionRecord.MODEL_MYPRIME, (byte) 0, rules.getVersion(), transactionId,
+            finalDecision, reason, dmnInput);
+        auditService.record(DecisionRecord.MODEL_MYPRIME, (byte) 0, rules.getVersion(), transactionId,
+            finalDecision, reason, dmnInput);
+        long end = System.nanoTime();
+        flightRecorder.recordMyPrime(transactionId, dmnInput, rules.getVersion(), finalDecision, reason,
+            dmnStart - start, dmnEnd - dmnStart, end - recordStart, end - start);
         return decision;
     }
 
+    /**
+     * Failed OTP reported after the decision, so otp_failed_cnt1hr sees it.
+     * Body: user_id, otp_failed and optionally event_timestamp.
+     */
+    @POST
+    @Path("/outcome")
+    public Response outcome(Map<String, Object> result,
+                            @HeaderParam(PartitionService.FORWARDED_HEADER) String forwardedBy) {
+        String userKey = userKey(result);
+        if (userKey == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "user_id is required"))
+                    .build();
+        }
+        String owner = partitionService.remoteOwner(userKey, forwardedBy);
+        if (owner != null) {
+            Response forwarded = partitionService.forward(owner, "/fraud/myprime/decision/outcome", result);
+            if (forwarded != null) {
+                return forwarded;
+            }
+        }
+        if (isTrue(result.get("otp_failed"))) {
+            userActivityStore.recordOtpFailure(userKey, eventTimeMillis(result.get("event_timestamp")));
+        }
+        return Response.accepted(Map.of("status", "recorded")).build();
+    }
+
+    /**
+     * Login / device / OTP features. Only a request with login_timestamp is a
+     * login and is counted; any other MyPrime decision reads the features.
+     */
+    private void applyUserActivity(Map<String, Object> txn, Map<String, Object> input) {
+        String userKey = userKey(txn);
+        if (userKey == null) {
+            return;
+        }
+        String deviceId = asString(txn.get("device_id"));
+        UserActivity activity;
+        if (txn.get("login_timestamp") != null) {
+            activity = userActivityStore.recordLogin(userKey, deviceId, isTrue(txn.get("otp_failed")),
+                eventTimeMillis(txn.get("login_timestamp")));
+        } else {
+            long now = System.currentTimeMillis();
+            if (isTrue(txn.get("otp_failed"))) {
+                userActivityStore.recordOtpFailure(userKey, now);
+            }
+            activity = userActivityStore.read(userKey, deviceId, now);
+        }
+
+        putIfAbsent(txn, input, "login_cnt1hr", activity.getLogins1hr());
+        putIfAbsent(txn, input, "device_cnt1day", activity.getDevices1day());
+        putIfAbsent(txn, input, "otp_failed_cnt1hr", activity.getOtpFailures1hr());
+        putIfAbsent(txn, input, "is_new_device", activity.isNewDevice());
+    }
+
+    private static void putIfAbsent(Map<String, Object> txn, Map<String, Object> input, String key, Object value) {
+        if (txn.get(key) == null) {
+            input.put(key, value);
+        }
+    }
+
+    private static String userKey(Map<String, Object> txn) {
+        return asString(txn.get("user_id"));
+    }
+
+    /** ISO-8601 event time, or now if absent or invalid; never more than a minute ahead of the clock. */
+    private static long eventTimeMillis(Object timestamp) {
+        long now = System.currentTimeMillis();
+        if (timestamp == null) return now;
+        try {
+            return Math.min(Instant.parse(String.valueOf(timestamp)).toEpochMilli(), now + 60_000L);
+        } catch (Exception e) {
+            return now;
+        }
+    }
+
+    private static String asString(Object v) {
+        if (v == null) return null;
+        String s = String.valueOf(v).trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    private static boolean isTrue(Object v) {
+        if (v instanceof Boolean) return (Boolean) v;
+        return v != null && String.valueOf(v).trim().equalsIgnoreCase("true");
+    }
+
     private static Integer computeLoginHourBd(Object loginTimestamp) {
         if (loginTimestamp == null) return null;
         try {
@@ -0,0 +1,145 @@
+package com.primebank.fraud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MyPrime rule configs compiled into flat arrays, so total_risk_score
+ * is one pass over primitives per request.
+ *
+ * Each rule_code (except GLOBAL) scores the request feature of the same
+ * name in lower case, e.g. IS_NEW_DEVICE reads "is_new_device" and
+ * LOGIN_CNT1HR reads "login_cnt1hr":
+ * <ul>
+ *   <li>value &gt;= threshold1: points x multiplier1</li>
+ *   <li>value &gt;= threshold2: points x multiplier2 instead</li>
+ * </ul>
+ * A missing threshold1 means 1, so boolean flags (true = 1) score when
+ * set. Missing multipliers mean 1; threshold2 without multiplier2 scores
+ * like threshold1. Absent or non-numeric features score nothing; rule
+ * codes whose feature no scored request carried are listed by
+ * {@link #unmatchedRuleCodes}, since they usually name a feature that
+ * does not exist.
+ */
+final class MyPrimeRiskScorer {
+
+    private final String[] ruleCodes;
+    private final String[] features;
+    private final double[] threshold1;
+    // NaN when the rule has a single tier
+    private final double[] threshold2;
+    private final double[] points1;
+    private final double[] points2;
+    // Set once a request carries the feature; racy writes only ever store true
+    private final boolean[] present;
+    private final LongAdder scored = new LongAdder();
+
+    private MyPrimeRiskScorer(int n) {
+        ruleCodes = new String[n];
+        features = new String[n];
+        threshold1 = new double[n];
+        threshold2 = new double[n];
+        points1 = new double[n];
+        points2 = new double[n];
+        present = new boolean[n];
+    }
+
+    /** Compile the RULES context built by {@link MyPrimeRuleConfigServiceImpl}. */
+    static MyPrimeRiskScorer compile(Map<String, Object> rulesContext) {
+        // Sorted so the evaluation order does not depend on HashMap iteration
+        TreeMap<String, Map<?, ?>> rules = new TreeMap<>();
+        rulesContext.forEach((code, ctx) -> {
+            if (!"GLOBAL".equalsIgnoreCase(code) && ctx instanceof Map && ((Map<?, ?>) ctx).get("points") != null) {
+                rules.put(code, (Map<?, ?>) ctx);
+            }
+        });
+
+        MyPrimeRiskScorer scorer = new MyPrimeRiskScorer(rules.size());
+        int i = 0;
+        for (Map.Entry<String, Map<?, ?>> e : rules.entrySet()) {
+            Map<?, ?> ctx = e.getValue();
+            double points = number(ctx.get("points"), 0);
+            double multiplier1 = number(ctx.get("multiplier1"), 1);
+
+            scorer.ruleCodes[i] = e.getKey();
+            scorer.features[i] = e.getKey().trim().toLowerCase(Locale.ROOT);
+            scorer.threshold1[i] = number(ctx.get("threshold1"), 1);
+            scorer.threshold2[i] = number(ctx.get("threshold2"), Double.NaN);
+            scorer.points1[i] = points * multiplier1;
+            scorer.points2[i] = points * number(ctx.get("multiplier2"), multiplier1);
+            i++;
+        }
+        return scorer;
+    }
+
+    /** Sum of the points of every rule the request triggers. Allocation-free for numeric and boolean features. */
+    double score(Map<String, Object> request) {
+        scored.increment();
+        double total = 0;
+        for (int i = 0; i < features.length; i++) {
+            Object feature = request.get(features[i]);
+            if (feature == null) {
+                continue;
+            }
+            if (!present[i]) {
+                present[i] = true;
+            }
+            double value = value(feature);
+            if (value >= threshold2[i]) {
+                total += points2[i];
+            } else if (value >= threshold1[i]) {
+                total += points1[i];
+            }
+        }
+        return total;
+    }
+
+    int size() {
+        return features.length;
+    }
+
+    /** Requests scored so far. */
+    long scored() {
+        return scored.sum();
+    }
+
+    /** Rule codes whose feature none of the requests scored so far carried. */
+    List<String> unmatchedRuleCodes() {
+        List<String> unmatched = new ArrayList<>();
+        for (int i = 0; i < features.length; i++) {
+            if (!present[i]) {
+                unmatched.add(ruleCodes[i]);
+            }
+        }
+        return unmatched;
+    }
+
+    // NaN compares false with everything, so unusable values never score
+    private static double value(Object v) {
+        if (v instanceof Number) {
+            return ((Number) v).doubleValue();
+        }
+        if (v instanceof Boolean) {
+            return (Boolean) v ? 1 : 0;
+        }
+        if (v instanceof String) {
+            String s = ((String) v).trim();
+            if (s.equalsIgnoreCase("true")) return 1;
+            if (s.equalsIgnoreCase("false")) return 0;
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static double number(Object v, double defaultValue) {
+        return v instanceof Number ? ((Number) v).doubleValue() : defaultValue;
+    }
+}
@@ -3,5 +3,19 @@ package com.primebank.fraud;
 import java.util.Map;
 
 public interface MyPrimeRuleConfigService {
+
+    /**
+     * The {@code RULES} context for the MyPrime DMN model.
+     * Served from memory; refreshed in the background.
+     */
     Map<String, Object> loadActiveRulesContext();
+
+    /** Current cached rule config including its version. */
+    MyPrimeRuleSnapshot currentSnapshot();
+
+    /** Reload from dbo.myprime_rule_config now. */
+    void refresh();
+
+    /** Current rules version and the rule codes no scored request had a feature for. */
+    Map<String, Object> stats();
 }
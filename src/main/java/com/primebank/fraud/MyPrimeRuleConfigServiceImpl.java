@@ -1,11 +1,19 @@
 package com.primebank.fraud;
 
+import io.quarkus.scheduler.Scheduled;
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.sql.DataSource;
+import java.math.BigDecimal;
 import java.sql.*;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ApplicationScoped
 public class MyPrimeRuleConfigServiceImpl implements MyPrimeRuleConfigService {
@@ -13,8 +21,74 @@ public class MyPrimeRuleConfigServiceImpl implements MyPrimeRuleConfigService {
     @Inject
     DataSource dataSource;
 
+    // Per-request cost is a volatile read; the DB is only hit by refresh()
+    private volatile MyPrimeRuleSnapshot snapshot;
+    private final AtomicLong version = new AtomicLong();
+
     @Override
     public Map<String, Object> loadActiveRulesContext() {
+        return currentSnapshot().getRulesContext();
+    }
+
+    @Override
+    public MyPrimeRuleSnapshot currentSnapshot() {
+        MyPrimeRuleSnapshot current = snapshot;
+        if (current == null) {
+            // First request before the scheduler ran
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = load();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public synchronized void refresh() {
+        MyPrimeRuleSnapshot previous = snapshot;
+        snapshot = load();
+        if (previous != null) {
+            reportUnmatched(previous);
+        }
+    }
+
+    /** Once per refresh: rules that scored nothing because no request carried their feature. */
+    private static void reportUnmatched(MyPrimeRuleSnapshot previous) {
+        MyPrimeRiskScorer scorer = previous.getScorer();
+        List<String> unmatched = scorer.unmatchedRuleCodes();
+        if (scorer.scored() > 0 && !unmatched.isEmpty()) {
+            System.err.println("MyPrime rules matched no request feature in " + scorer.scored()
+                + " decisions of rules version " + previous.getVersion() + ": " + unmatched
+                + " (rule_code X reads feature x)");
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        MyPrimeRuleSnapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rules_version", current == null ? null : current.getVersion());
+        stats.put("loaded_at", current == null ? null : current.getLoadedAt().toString());
+        stats.put("scored_rules", current == null ? 0 : current.getScorer().size());
+        stats.put("scored_decisions", current == null ? 0 : current.getScorer().scored());
+        stats.put("unmatched_rule_codes", current == null ? List.of() : current.getScorer().unmatchedRuleCodes());
+        return stats;
+    }
+
+    @Scheduled(every = "{fraud.myprime.rules.refresh-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void backgroundRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // Keep serving the last good config
+            System.err.println("Failed to refresh MyPrime rule config: " + e.getMessage());
+        }
+    }
+
+    private MyPrimeRuleSnapshot load() {
 
         String sql =
             "SELECT rule_code, points, threshold1, threshold2, multiplier1, multiplier2 " +
@@ -31,8 +105,9 @@ public class MyPrimeRuleConfigServiceImpl implements MyPrimeRuleConfigService {
 
                 Map<String, Object> ctx = new HashMap<>();
 
-                Integer points = (Integer) rs.getObject("points");
-                if (points != null) ctx.put("points", points);
+                // FEEL numbers are BigDecimal; convert once here instead of per evaluation
+                Object points = rs.getObject("points");
+                if (points instanceof Number) ctx.put("points", BigDecimal.valueOf(((Number) points).longValue()));
 
                 putIfNotNull(ctx, "threshold1", rs.getBigDecimal("threshold1"));
                 putIfNotNull(ctx, "threshold2", rs.getBigDecimal("threshold2"));
@@ -45,13 +120,13 @@ public class MyPrimeRuleConfigServiceImpl implements MyPrimeRuleConfigService {
                     g.put("susp_score", ctx.get("threshold2"));
                     g.put("ml_fraud", ctx.get("multiplier1"));
                     g.put("ml_susp", ctx.get("multiplier2"));
-                    rules.put("GLOBAL", g);
+                    rules.put("GLOBAL", Collections.unmodifiableMap(g));
                 } else {
-                    rules.put(code, ctx);
+                    rules.put(code, Collections.unmodifiableMap(ctx));
                 }
             }
 
-            return rules;
+            return new MyPrimeRuleSnapshot(version.incrementAndGet(), Instant.now(), rules);
 
         } catch (Exception e) {
             throw new IllegalStateException("Failed to load dbo.myprime_rule_config", e);
@@ -0,0 +1,45 @@
+package com.primebank.fraud;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable, versioned MyPrime rule config, already shaped as the
+ * {@code RULES} context the MyPrime DMN model consumes (nested maps,
+ * numbers as BigDecimal like FEEL's own number type), plus the
+ * {@link MyPrimeRiskScorer} compiled from it.
+ */
+public final class MyPrimeRuleSnapshot {
+
+    private final long version;
+    private final Instant loadedAt;
+    private final Map<String, Object> rulesContext;
+    private final MyPrimeRiskScorer scorer;
+
+    public MyPrimeRuleSnapshot(long version, Instant loadedAt, Map<String, Object> rulesContext) {
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.rulesContext = Collections.unmodifiableMap(rulesContext);
+        // Compiled once per refresh, shared by every request
+        this.scorer = MyPrimeRiskScorer.compile(rulesContext);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    /** The {@code RULES} DMN input; shared by every request, never mutate. */
+    public Map<String, Object> getRulesContext() {
+        return rulesContext;
+    }
+
+    /** The same rules compiled for total_risk_score. */
+    MyPrimeRiskScorer getScorer() {
+        return scorer;
+    }
+}
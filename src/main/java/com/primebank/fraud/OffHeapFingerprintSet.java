@@ -0,0 +1,144 @@
+package com.primebank.fraud;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Exact set of 128-bit fingerprints stored off-heap in an open-addressing
+ * table (linear probing, 16 bytes per slot, load factor at most 0.75).
+ *
+ * The table is split into direct-buffer segments of 4M slots (64 MB), so it
+ * is not limited by the 2 GB size of a single ByteBuffer. With 128-bit
+ * fingerprints, the chance of any false match among 100M entries is about
+ * 10^-23. Writes are single-threaded during load; the set is read-only once
+ * it is published. A set nobody reads any more can be {@link #clear() cleared}
+ * and loaded again, which keeps its direct buffers instead of leaving them
+ * to the garbage collector.
+ */
+final class OffHeapFingerprintSet {
+
+    private static final int SLOT_BYTES = 16;
+    private static final int SEGMENT_SHIFT = 22;
+    private static final long SEGMENT_SLOTS = 1L << SEGMENT_SHIFT;
+    private static final double MAX_LOAD = 0.75;
+
+    private ByteBuffer[] segments;
+    private long capacity;
+    private long mask;
+    private long size;
+
+    OffHeapFingerprintSet(long expectedEntries) {
+        allocate(tableSizeFor(expectedEntries));
+    }
+
+    /** @return true if the fingerprint was not yet present */
+    boolean add(long hi, long lo) {
+        if (size + 1 > capacity * MAX_LOAD) {
+            rehash(capacity << 1);
+        }
+        return insert(hi, lo);
+    }
+
+    /** Empty the set, keeping its capacity; only for a set no reader can reach. */
+    void clear() {
+        for (ByteBuffer seg : segments) {
+            for (int off = 0; off < seg.capacity(); off += 8) {
+                seg.putLong(off, 0L);
+            }
+        }
+        size = 0;
+    }
+
+    boolean contains(long hi, long lo) {
+        long slot = Fingerprints.fmix64(lo) & mask;
+        while (true) {
+            ByteBuffer seg = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int off = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+            long sHi = seg.getLong(off);
+            long sLo = seg.getLong(off + 8);
+            if (sHi == 0 && sLo == 0) {
+                return false;
+            }
+            if (sHi == hi && sLo == lo) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    long sizeInBytes() {
+        return capacity * SLOT_BYTES;
+    }
+
+    interface Visitor {
+        void visit(long hi, long lo);
+    }
+
+    void forEach(Visitor visitor) {
+        for (long slot = 0; slot < capacity; slot++) {
+            ByteBuffer seg = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int off = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+            long hi = seg.getLong(off);
+            long lo = seg.getLong(off + 8);
+            if (hi != 0 || lo != 0) {
+                visitor.visit(hi, lo);
+            }
+        }
+    }
+
+    private boolean insert(long hi, long lo) {
+        long slot = Fingerprints.fmix64(lo) & mask;
+        while (true) {
+            ByteBuffer seg = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int off = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+            long sHi = seg.getLong(off);
+            long sLo = seg.getLong(off + 8);
+            if (sHi == 0 && sLo == 0) {
+                seg.putLong(off, hi);
+                seg.putLong(off + 8, lo);
+                size++;
+                return true;
+            }
+            if (sHi == hi && sLo == lo) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(long newCapacity) {
+        ByteBuffer[] old = segments;
+        long oldCapacity = capacity;
+        allocate(newCapacity);
+        size = 0;
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer seg = old[(int) (slot >>> SEGMENT_SHIFT)];
+            int off = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+            long hi = seg.getLong(off);
+            long lo = seg.getLong(off + 8);
+            if (hi != 0 || lo != 0) {
+                insert(hi, lo);
+            }
+        }
+    }
+
+    private void allocate(long slots) {
+        capacity = slots;
+        mask = slots - 1;
+        int segmentCount = (int) Math.max(1L, slots >>> SEGMENT_SHIFT);
+        int segmentBytes = (int) (Math.min(slots, SEGMENT_SLOTS) * SLOT_BYTES);
+        segments = new ByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Direct buffers are zero-filled: every slot starts empty
+            segments[i] = ByteBuffer.allocateDirect(segmentBytes);
+        }
+    }
+
+    private static long tableSizeFor(long expectedEntries) {
+        long needed = (long) Math.ceil(Math.max(16L, expectedEntries) / MAX_LOAD);
+        return Long.highestOneBit(needed - 1) << 1;
+    }
+}
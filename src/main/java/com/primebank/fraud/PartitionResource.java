@@ -0,0 +1,76 @@
+package com.primebank.fraud;
+
+import javax.inject.Inject;
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replica-to-replica calls of {@link PartitionService}. Not for operators:
+ * authenticated with the shared fraud.partition.token, not a user role.
+ * Both endpoints answer 404 while partitioning is disabled.
+ */
+@Path("/internal/partition")
+public class PartitionResource {
+
+    @Inject
+    PartitionService partitionService;
+
+    @POST
+    @Path("/membership")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response membership(@HeaderParam(PartitionService.TOKEN_HEADER) String token, Map<String, Object> body) {
+        if (!partitionService.isEnabled()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        if (!partitionService.isTrustedPeer(token)) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        List<String> nodes = nodeList(body);
+        if (nodes == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "'nodes' must be a list of base URLs"))
+                    .build();
+        }
+        try {
+            return Response.ok(partitionService.applyMembership(nodes)).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
+        }
+    }
+
+    @POST
+    @Path("/handoff")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response handoff(@HeaderParam(PartitionService.TOKEN_HEADER) String token, byte[] cards) {
+        if (!partitionService.isEnabled()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        if (!partitionService.isTrustedPeer(token)) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        return Response.ok(Map.of("cards", partitionService.receiveHandoff(cards))).build();
+    }
+
+    /** The "nodes" list of a membership body, or null if missing or malformed. */
+    static List<String> nodeList(Map<String, Object> body) {
+        Object nodes = body == null ? null : body.get("nodes");
+        if (!(nodes instanceof List) || ((List<?>) nodes).isEmpty()) {
+            return null;
+        }
+        for (Object node : (List<?>) nodes) {
+            if (!(node instanceof String)) {
+                return null;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<String> list = (List<String>) nodes;
+        return list;
+    }
+}
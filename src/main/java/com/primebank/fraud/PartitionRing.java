@@ -0,0 +1,118 @@
+package com.primebank.fraud;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consistent-hash ring mapping card keys to the node that owns their
+ * in-process state. Each node is placed at {@code virtualNodes} points; a
+ * key belongs to the first point at or after its hash. Adding a node moves
+ * only the keys that now fall on its points, about 1/n of them.
+ *
+ * Immutable; a membership change builds a new ring.
+ */
+final class PartitionRing {
+
+    private static final long POINT_SEED = 0x5bd1e9955bd1e995L;
+    private static final double RING_SIZE = 0x1p64;
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    private PartitionRing(List<String> nodes, long[] points, int[] owners) {
+        this.nodes = nodes;
+        this.points = points;
+        this.owners = owners;
+    }
+
+    /** Ring over distinct, non-blank node ids (base URLs), in the given order. */
+    static PartitionRing of(List<String> nodeIds, int virtualNodes) {
+        LinkedHashSet<String> distinct = new LinkedHashSet<>();
+        for (String node : nodeIds) {
+            String id = normalizeNode(node);
+            if (id != null) {
+                distinct.add(id);
+            }
+        }
+        List<String> nodes = Collections.unmodifiableList(new ArrayList<>(distinct));
+        int perNode = Math.max(1, virtualNodes);
+
+        long[] rawPoints = new long[nodes.size() * perNode];
+        int n = 0;
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int v = 0; v < perNode; v++) {
+                rawPoints[n++] = Fingerprints.hash64(nodes.get(node) + "#" + v, POINT_SEED);
+            }
+        }
+        // Sort point indices by point value; ties (practically impossible) keep node order
+        Integer[] order = new Integer[rawPoints.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(rawPoints[a], rawPoints[b]));
+
+        long[] points = new long[order.length];
+        int[] owners = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            points[i] = rawPoints[order[i]];
+            owners[i] = order[i] / perNode;
+        }
+        return new PartitionRing(nodes, points, owners);
+    }
+
+    /** Owning node of the key, or null if the ring is empty. */
+    String ownerOf(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int i = Arrays.binarySearch(points, Fingerprints.hi(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return nodes.get(owners[i == points.length ? 0 : i]);
+    }
+
+    List<String> nodes() {
+        return nodes;
+    }
+
+    boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    /** Fraction of the hash space each node owns. */
+    Map<String, Double> shares() {
+        double[] arcs = new double[nodes.size()];
+        for (int i = 0; i < points.length; i++) {
+            // Arc (previous point, this point], wrapping around at the start
+            long length = points[i] - points[i == 0 ? points.length - 1 : i - 1];
+            arcs[owners[i]] += length >= 0 ? (double) length : length + RING_SIZE;
+        }
+        if (points.length == 1) {
+            arcs[0] = RING_SIZE;
+        }
+        Map<String, Double> shares = new LinkedHashMap<>();
+        for (int node = 0; node < nodes.size(); node++) {
+            shares.put(nodes.get(node), arcs[node] / RING_SIZE);
+        }
+        return shares;
+    }
+
+    /** Trimmed node id without a trailing slash, or null if blank. */
+    static String normalizeNode(String node) {
+        if (node == null) {
+            return null;
+        }
+        String id = node.trim();
+        while (id.endsWith("/")) {
+            id = id.substring(0, id.length() - 1);
+        }
+        return id.isEmpty() ? null : id;
+    }
+}
@@ -0,0 +1,349 @@
+package com.primebank.fraud;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.core.Response;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Card-affinity partitioning: every card's in-process state (velocity,
+ * terminal, currency and travel features) lives on one replica, the
+ * card's owner on a {@link PartitionRing}, and any replica that receives
+ * the card's request forwards it there. MyPrime requests are placed the
+ * same way by user_id.
+ *
+ * Forwarded requests carry {@link #FORWARDED_HEADER} and are always
+ * evaluated where they land, so a request is forwarded at most once even
+ * while replicas disagree about membership. If the owner refuses the
+ * connection the request never reached it and is evaluated locally on the
+ * partial state this replica has. If it times out or fails with a 5xx the
+ * owner may already have recorded the transaction, so the caller gets a
+ * 503 instead of a second, local evaluation counting it twice.
+ *
+ * Membership is static config, changed at runtime with
+ * PUT /admin/fraud/partitions on any replica, which pushes the new node
+ * list to every old and new member. Only nodes in fraud.partition.peers
+ * (default: the configured nodes) are accepted. Each member then hands
+ * the velocity windows of cards it no longer owns to their new owner.
+ *
+ * Replicas authenticate each other with fraud.partition.token, which has
+ * no default: partitioning refuses to start without it, and the internal
+ * endpoints answer 404 while partitioning is off. Terminal sketches
+ * are not per card and stay where they are; currency and travel state is
+ * short-lived and rebuilds on the new owner within the hour, MyPrime user
+ * activity within the day.
+ *
+ * Several replicas on one machine, e.g. a second one with:
+ * <pre>
+ * -Dquarkus.http.port=8081 -Dfraud.partition.self=http://localhost:8081
+ * -Dfraud.velocity.persistence.dir=data/velocity-8081
+ * </pre>
+ */
+@ApplicationScoped
+public class PartitionService {
+
+    static final String FORWARDED_HEADER = "X-Fraud-Forwarded-By";
+    static final String TOKEN_HEADER = "X-Fraud-Partition-Token";
+
+    private static final TypeReference<Map<String, Object>> JSON_MAP = new TypeReference<>() {};
+
+    @Inject
+    VelocityStore velocityStore;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "fraud.partition.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.partition.self", defaultValue = "http://localhost:8080")
+    String self;
+
+    @ConfigProperty(name = "fraud.partition.nodes", defaultValue = "http://localhost:8080")
+    String nodes;
+
+    @ConfigProperty(name = "fraud.partition.virtual-nodes", defaultValue = "128")
+    int virtualNodes;
+
+    @ConfigProperty(name = "fraud.partition.forward-timeout.millis", defaultValue = "500")
+    long forwardTimeoutMillis;
+
+    // Nodes a membership change may name; empty means the configured nodes
+    @ConfigProperty(name = "fraud.partition.peers")
+    Optional<String> peers;
+
+    @ConfigProperty(name = "fraud.partition.token")
+    Optional<String> token;
+
+    private volatile PartitionRing ring;
+    private Set<String> allowedNodes;
+    private HttpClient http;
+    private final Object membershipLock = new Object();
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder forwardFailures = new LongAdder();
+    private final LongAdder receivedForwarded = new LongAdder();
+    private final LongAdder misrouted = new LongAdder();
+    private final LongAdder cardsHandedOff = new LongAdder();
+    private final LongAdder cardsReceived = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        self = PartitionRing.normalizeNode(self);
+        ring = PartitionRing.of(Arrays.asList(nodes.split(",")), virtualNodes);
+        allowedNodes = new LinkedHashSet<>(ring.nodes());
+        peers.ifPresent(list -> allowedNodes.addAll(normalizeNodes(Arrays.asList(list.split(",")))));
+        allowedNodes.add(self);
+        if (enabled && token.map(String::isBlank).orElse(true)) {
+            throw new IllegalStateException("fraud.partition.token must be set when fraud.partition.enabled=true");
+        }
+        http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(forwardTimeoutMillis))
+            .build();
+    }
+
+    /**
+     * Node to forward the card's request to, or null to handle it here:
+     * partitioning off, no card key, this replica owns the card, or the
+     * request was already forwarded once.
+     */
+    public String remoteOwner(String cardKey, String forwardedBy) {
+        if (!enabled || cardKey == null) {
+            return null;
+        }
+        String owner = ring.ownerOf(cardKey);
+        if (forwardedBy != null) {
+            receivedForwarded.increment();
+            if (owner != null && !owner.equals(self)) {
+                // Sender and this replica disagree about membership (e.g. mid-rebalance)
+                misrouted.increment();
+            }
+            return null;
+        }
+        return owner == null || owner.equals(self) ? null : owner;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * POST the JSON body to the same path on the owner.
+     * @return the owner's response; a 503 if the request may have reached the
+     *         owner without an answer (timeout, 5xx); null only if the owner
+     *         refused the connection, so the caller can safely evaluate locally
+     */
+    public Response forward(String owner, String path, Map<String, Object> body) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(owner + path))
+                .timeout(Duration.ofMillis(forwardTimeoutMillis))
+                .header("Content-Type", "application/json")
+                .header(FORWARDED_HEADER, self)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+            HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() >= 500) {
+                forwardFailures.increment();
+                return ownerUnavailable(owner, "HTTP " + response.statusCode());
+            }
+            forwarded.increment();
+            Object entity = response.body().length == 0 ? null : objectMapper.readValue(response.body(), JSON_MAP);
+            return Response.status(response.statusCode()).entity(entity).build();
+
+        } catch (HttpConnectTimeoutException | ConnectException e) {
+            // Never reached the owner: nothing was recorded there
+            forwardFailures.increment();
+            System.err.println("Partition owner " + owner + " unreachable, deciding locally: " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            forwardFailures.increment();
+            return ownerUnavailable(owner, "interrupted");
+        } catch (Exception e) {
+            forwardFailures.increment();
+            System.err.println("Failed to forward to partition owner " + owner + ": " + e.getMessage());
+            return ownerUnavailable(owner, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static Response ownerUnavailable(String owner, String cause) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+            .entity(Map.of(
+                "error", "Partition owner did not answer; the transaction was not decided",
+                "owner", owner,
+                "message", cause))
+            .build();
+    }
+
+    /**
+     * Apply a new node list here and, unless this call came from a peer,
+     * push it to every old and new member. Each member hands off the cards
+     * it no longer owns.
+     */
+    public Map<String, Object> changeMembership(List<String> newNodes, boolean propagate) {
+        checkMembership(newNodes);
+        List<String> previous = ring.nodes();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put(self, applyMembership(newNodes));
+
+        if (propagate) {
+            Set<String> peers = new LinkedHashSet<>(previous);
+            peers.addAll(ring.nodes());
+            peers.remove(self);
+            for (String peer : peers) {
+                result.put(peer, sendInternal(peer, "/internal/partition/membership",
+                    "application/json", membershipBody(newNodes)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Switch to the new ring, then hand each moved card to its new owner.
+     * Only the switch and the export hold the lock; the transfers do not.
+     */
+    Map<String, Object> applyMembership(List<String> newNodes) {
+        checkMembership(newNodes);
+        PartitionRing next = PartitionRing.of(newNodes, virtualNodes);
+        Map<String, byte[]> exports = new LinkedHashMap<>();
+        synchronized (membershipLock) {
+            // Switch first: requests for moved cards go to the new owner from here on
+            this.ring = next;
+            for (String owner : next.nodes()) {
+                if (!owner.equals(self)) {
+                    exports.put(owner, velocityStore.exportCards(cardKey -> owner.equals(next.ownerOf(cardKey))));
+                }
+            }
+        }
+
+        Map<String, Object> handoff = new LinkedHashMap<>();
+        exports.forEach((owner, cards) -> {
+            Object sent = sendInternal(owner, "/internal/partition/handoff", "application/octet-stream", cards);
+            if (sent instanceof Map && ((Map<?, ?>) sent).get("cards") instanceof Number) {
+                cardsHandedOff.add(((Number) ((Map<?, ?>) sent).get("cards")).longValue());
+            } else {
+                // Keep the state rather than lose it; the next rebalance retries
+                velocityStore.importCards(cards);
+            }
+            handoff.put(owner, sent);
+        });
+        velocityStore.checkpoint();
+        return Map.of("nodes", next.nodes(), "handoff", handoff);
+    }
+
+    /** Partitioning must be on, and every node must be a known peer. */
+    private void checkMembership(List<String> newNodes) {
+        if (!enabled) {
+            throw new IllegalStateException("Partitioning is disabled");
+        }
+        Set<String> normalized = normalizeNodes(newNodes);
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("Partition membership needs at least one node");
+        }
+        for (String node : normalized) {
+            if (!allowedNodes.contains(node)) {
+                throw new IllegalArgumentException("Not a configured partition peer: " + node);
+            }
+        }
+    }
+
+    /** Merge velocity state handed over by the previous owner. */
+    int receiveHandoff(byte[] cards) {
+        int imported = velocityStore.importCards(cards);
+        cardsReceived.add(imported);
+        velocityStore.checkpoint();
+        return imported;
+    }
+
+    private static Set<String> normalizeNodes(List<String> list) {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String node : list) {
+            String id = PartitionRing.normalizeNode(node);
+            if (id != null) {
+                normalized.add(id);
+            }
+        }
+        return normalized;
+    }
+
+    boolean isTrustedPeer(String presentedToken) {
+        if (!enabled || presentedToken == null || token.isEmpty()) {
+            return false;
+        }
+        return MessageDigest.isEqual(presentedToken.getBytes(StandardCharsets.UTF_8),
+            token.get().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Map<String, Object> stats() {
+        PartitionRing current = ring;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("self", self);
+        stats.put("nodes", current.nodes());
+        stats.put("peers", new ArrayList<>(allowedNodes));
+        stats.put("owns_self", current.contains(self));
+        stats.put("shares", current.shares());
+        stats.put("forwarded", forwarded.sum());
+        stats.put("forward_failures", forwardFailures.sum());
+        stats.put("received_forwarded", receivedForwarded.sum());
+        stats.put("misrouted", misrouted.sum());
+        stats.put("cards_handed_off", cardsHandedOff.sum());
+        stats.put("cards_received", cardsReceived.sum());
+        return stats;
+    }
+
+    private byte[] membershipBody(List<String> newNodes) {
+        try {
+            return objectMapper.writeValueAsBytes(Map.of("nodes", new ArrayList<>(newNodes)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot serialize partition membership", e);
+        }
+    }
+
+    /** POST to a peer's internal endpoint; returns its JSON reply, or an error map. */
+    private Object sendInternal(String peer, String path, String contentType, byte[] body) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(peer + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", contentType)
+                .header(TOKEN_HEADER, token.orElse(""))
+                .header(FORWARDED_HEADER, self)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+            HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() / 100 != 2) {
+                return Map.of("error", "HTTP " + response.statusCode());
+            }
+            return objectMapper.readValue(response.body(), JSON_MAP);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Map.of("error", "interrupted");
+        } catch (Exception e) {
+            System.err.println("Partition request to " + peer + path + " failed: " + e.getMessage());
+            return Map.of("error", String.valueOf(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.primebank.fraud;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense product x MCC table of risk levels.
+ *
+ * Each product gets a row of 10,000 bytes (one per MCC) holding an index
+ * into a small table of risk level strings, so a lookup is one hash of the
+ * product code plus one array read and returns a shared String constant.
+ */
+public final class ProductMccRiskTable {
+
+    public static final String DEFAULT_LEVEL = "NORMAL";
+
+    public static final ProductMccRiskTable EMPTY = builder().build();
+
+    private final Map<String, Integer> productIds;
+    private final byte[] risks;
+    // Level 0 is always NORMAL (the default for an unset cell)
+    private final String[] levels;
+    // Rows whose MCC is not a 4-digit number: product -> (mcc -> level)
+    private final Map<String, Map<String, String>> nonNumeric;
+
+    private ProductMccRiskTable(Map<String, Integer> productIds, byte[] risks, String[] levels,
+                                Map<String, Map<String, String>> nonNumeric) {
+        this.productIds = productIds;
+        this.risks = risks;
+        this.levels = levels;
+        this.nonNumeric = nonNumeric;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** @return the configured risk level, or NORMAL if none */
+    public String riskLevel(String productCode, String mccCode) {
+        if (productCode == null) {
+            return DEFAULT_LEVEL;
+        }
+        Integer productId = productIds.get(productCode);
+        if (productId == null) {
+            return DEFAULT_LEVEL;
+        }
+        int mcc = MccBitSet.parseMcc(mccCode);
+        if (mcc >= 0) {
+            return levels[risks[productId * MccBitSet.MCC_SPACE + mcc]];
+        }
+        Map<String, String> other = nonNumeric.get(productCode);
+        String level = other == null || mccCode == null ? null : other.get(mccCode.trim());
+        return level == null ? DEFAULT_LEVEL : level;
+    }
+
+    public int productCount() {
+        return productIds.size();
+    }
+
+    /** Copy with one cell set, or reset to NORMAL when {@code riskLevel} is null. */
+    public ProductMccRiskTable with(String productCode, String mccCode, String riskLevel) {
+        Builder b = builder();
+        forEach(b::put);
+        if (riskLevel == null) {
+            b.remove(productCode, mccCode);
+        } else {
+            b.put(productCode, mccCode, riskLevel);
+        }
+        return b.build();
+    }
+
+    public interface CellVisitor {
+        void visit(String productCode, String mccCode, String riskLevel);
+    }
+
+    /** Visit every non-default cell, e.g. to persist or copy the table. */
+    public void forEach(CellVisitor visitor) {
+        for (Map.Entry<String, Integer> product : productIds.entrySet()) {
+            int base = product.getValue() * MccBitSet.MCC_SPACE;
+            for (int mcc = 0; mcc < MccBitSet.MCC_SPACE; mcc++) {
+                byte level = risks[base + mcc];
+                if (level != 0) {
+                    visitor.visit(product.getKey(), MccBitSet.formatMcc(mcc), levels[level]);
+                }
+            }
+        }
+        nonNumeric.forEach((product, cells) ->
+            cells.forEach((mcc, level) -> visitor.visit(product, mcc, level)));
+    }
+
+    public static final class Builder {
+
+        private final Map<String, Integer> productIds = new HashMap<>();
+        private final List<byte[]> rows = new ArrayList<>();
+        private final List<String> levels = new ArrayList<>(List.of(DEFAULT_LEVEL, "SUSPICIOUS", "FRAUD"));
+        private final Map<String, Map<String, String>> nonNumeric = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder put(String productCode, String mccCode, String riskLevel) {
+            if (productCode == null || riskLevel == null) {
+                return this;
+            }
+            int mcc = MccBitSet.parseMcc(mccCode);
+            if (mcc < 0) {
+                if (mccCode != null) {
+                    nonNumeric.computeIfAbsent(productCode, k -> new HashMap<>()).put(mccCode.trim(), riskLevel);
+                }
+                return this;
+            }
+
+            Integer productId = productIds.get(productCode);
+            if (productId == null) {
+                productId = rows.size();
+                productIds.put(productCode, productId);
+                rows.add(new byte[MccBitSet.MCC_SPACE]);
+            }
+            rows.get(productId)[mcc] = levelCode(riskLevel);
+            return this;
+        }
+
+        public Builder remove(String productCode, String mccCode) {
+            int mcc = MccBitSet.parseMcc(mccCode);
+            if (mcc < 0) {
+                Map<String, String> cells = nonNumeric.get(productCode);
+                if (cells != null && mccCode != null) cells.remove(mccCode.trim());
+                return this;
+            }
+            Integer productId = productIds.get(productCode);
+            if (productId != null) {
+                rows.get(productId)[mcc] = 0;
+            }
+            return this;
+        }
+
+        private byte levelCode(String riskLevel) {
+            String level = riskLevel.trim().toUpperCase();
+            int idx = levels.indexOf(level);
+            if (idx < 0) {
+                if (levels.size() > Byte.MAX_VALUE) {
+                    throw new IllegalStateException("Too many distinct risk levels: " + level);
+                }
+                levels.add(level);
+                idx = levels.size() - 1;
+            }
+            return (byte) idx;
+        }
+
+        public ProductMccRiskTable build() {
+            byte[] risks = new byte[rows.size() * MccBitSet.MCC_SPACE];
+            for (int p = 0; p < rows.size(); p++) {
+                System.arraycopy(rows.get(p), 0, risks, p * MccBitSet.MCC_SPACE, MccBitSet.MCC_SPACE);
+            }
+            return new ProductMccRiskTable(new HashMap<>(productIds), risks,
+                levels.toArray(new String[0]), new HashMap<>(nonNumeric));
+        }
+    }
+}
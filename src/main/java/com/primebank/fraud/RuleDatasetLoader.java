@@ -0,0 +1,177 @@
+package com.primebank.fraud;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads every card rule dataset in a single round trip, plus one for the
+ * optional country aliases.
+ *
+ * The SELECTs are sent as one batch on one connection and read back
+ * as consecutive result sets, so a cold start or forced refresh costs one
+ * DB latency instead of one per dataset.
+ *
+ * Country aliases are read with a separate query after the batch, from an
+ * optional table. Where it has not been created, the snapshot has no DB
+ * aliases, and thresholds and country rules still load:
+ *
+ * <pre>
+ * CREATE TABLE fraud_country_alias (
+ *     alias        NVARCHAR(100) NOT NULL PRIMARY KEY,
+ *     country_code VARCHAR(3)    NOT NULL,
+ *     is_active    BIT           NOT NULL DEFAULT 1
+ * )
+ * </pre>
+ */
+@ApplicationScoped
+public class RuleDatasetLoader {
+
+    static final String DS_THRESHOLDS = "thresholds";
+    static final String DS_MCC = "mcc_rules";
+    static final String DS_PRODUCT_MCC = "product_mcc_rules";
+    static final String DS_COUNTRY = "country_rules";
+    static final String DS_COUNTRY_ALIAS = "country_aliases";
+
+    // Order must match the result-set handling in loadAll().
+    // Thresholds include expired versions within the history window and
+    // future-dated ones, for as-of evaluation and on-time cutovers.
+    private static final String BATCH_SQL =
+        "SELECT threshold_key, threshold_value, effective_from, effective_to FROM fraud_threshold_card " +
+            "WHERE is_active = 1 AND (effective_to IS NULL OR effective_to > DATEADD(DAY, -%d, GETDATE()));\n" +
+        "SELECT mcc_code FROM fraud_mcc_rule WHERE is_active = 1;\n" +
+        "SELECT product_code, mcc_code, risk_level FROM fraud_mcc_product_rule WHERE is_active = 1;\n" +
+        // Single scan: name and code come back on the same row
+        "SELECT UPPER(country_name) AS country_name, UPPER(country_code) AS country_code, decision_level " +
+            "FROM fraud_country_block_rule WHERE is_active = 1;";
+
+    private static final String ALIAS_SQL =
+        "SELECT alias, country_code FROM fraud_country_alias WHERE is_active = 1";
+
+    @Inject
+    DataSource dataSource;
+
+    @ConfigProperty(name = "fraud.rules.fetch-size", defaultValue = "500")
+    int fetchSize;
+
+    // How far back expired threshold versions are kept for as-of evaluation
+    @ConfigProperty(name = "fraud.rules.history.days", defaultValue = "400")
+    int historyDays;
+
+    // Warn once, not on every refresh, while the alias table is missing
+    private volatile boolean aliasTableMissing;
+
+    public RuleSnapshot loadAll(long version) {
+        ThresholdTimeline.Builder thresholds = ThresholdTimeline.builder();
+        List<String> mccList = new ArrayList<>();
+        ProductMccRiskTable.Builder productMccRisk = ProductMccRiskTable.builder();
+        CountryIndex.Builder countries = CountryIndex.builder();
+        Map<String, Long> timings = new LinkedHashMap<>();
+
+        try (Connection con = dataSource.getConnection();
+             Statement st = con.createStatement()) {
+
+            st.setFetchSize(fetchSize);
+
+            long mark = System.nanoTime();
+            boolean hasResult = st.execute(String.format(BATCH_SQL, historyDays));
+
+            // 1. Thresholds, effective-dated (DB datetimes are read in the JVM time zone)
+            try (ResultSet rs = nextResultSet(st, hasResult, DS_THRESHOLDS)) {
+                while (rs.next()) {
+                    Timestamp from = rs.getTimestamp(3);
+                    Timestamp to = rs.getTimestamp(4);
+                    thresholds.add(rs.getString(1), from == null ? ThresholdTimeline.OPEN_START : from.getTime(),
+                        to == null ? ThresholdTimeline.OPEN_END : to.getTime(), rs.getBigDecimal(2));
+                }
+            }
+            mark = record(timings, DS_THRESHOLDS, mark);
+
+            // 2. Suspicious MCC codes
+            try (ResultSet rs = nextResultSet(st, st.getMoreResults(), DS_MCC)) {
+                while (rs.next()) {
+                    mccList.add(rs.getString(1));
+                }
+            }
+            mark = record(timings, DS_MCC, mark);
+
+            // 3. Product + MCC risk
+            try (ResultSet rs = nextResultSet(st, st.getMoreResults(), DS_PRODUCT_MCC)) {
+                while (rs.next()) {
+                    productMccRisk.put(rs.getString(1), rs.getString(2), rs.getString(3));
+                }
+            }
+            mark = record(timings, DS_PRODUCT_MCC, mark);
+
+            // 4. Country rules, keyed by both name and code
+            try (ResultSet rs = nextResultSet(st, st.getMoreResults(), DS_COUNTRY)) {
+                while (rs.next()) {
+                    countries.addRule(rs.getString(2), rs.getString(1), rs.getString(3));
+                }
+            }
+            mark = record(timings, DS_COUNTRY, mark);
+
+            // 5. Country aliases (alias -> ISO code), optional
+            loadAliases(con, countries);
+            record(timings, DS_COUNTRY_ALIAS, mark);
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load card fraud rule datasets", e);
+        }
+
+        return new RuleSnapshot(version, Instant.now(),
+            thresholds.build(), mccList, productMccRisk.build(), countries.build(), timings);
+    }
+
+    private void loadAliases(Connection con, CountryIndex.Builder countries) throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery(ALIAS_SQL)) {
+            rs.setFetchSize(fetchSize);
+            while (rs.next()) {
+                countries.addAlias(rs.getString(1), rs.getString(2));
+            }
+            aliasTableMissing = false;
+        } catch (SQLException e) {
+            // 42S02 / 42xxx: table missing or not readable, not a failed load
+            if (e.getSQLState() == null || !e.getSQLState().startsWith("42")) {
+                throw e;
+            }
+            if (!aliasTableMissing) {
+                aliasTableMissing = true;
+                System.err.println("Country alias table not available, loading without DB aliases: "
+                    + e.getMessage());
+            }
+        }
+    }
+
+    private ResultSet nextResultSet(Statement st, boolean hasResult, String dataset) throws Exception {
+        // Skip update counts (e.g. from NOCOUNT OFF) until the next result set
+        while (!hasResult) {
+            if (st.getUpdateCount() == -1) {
+                throw new IllegalStateException("Missing result set for " + dataset);
+            }
+            hasResult = st.getMoreResults();
+        }
+        ResultSet rs = st.getResultSet();
+        rs.setFetchSize(fetchSize);
+        return rs;
+    }
+
+    private static long record(Map<String, Long> timings, String dataset, long since) {
+        long now = System.nanoTime();
+        timings.put(dataset, (now - since) / 1_000L);
+        return now;
+    }
+}
@@ -0,0 +1,151 @@
+package com.primebank.fraud;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of every card rule dataset, loaded together so a
+ * decision never mixes thresholds from one refresh with MCC or
+ * country rules from another.
+ *
+ * Thresholds are kept as a {@link ThresholdTimeline}. The set in force
+ * "now" is memoized until the next scheduled change, so future-dated
+ * rows switch over exactly on time without a reload.
+ */
+public final class RuleSnapshot {
+
+    public static final RuleSnapshot EMPTY = new RuleSnapshot(
+        0L, Instant.EPOCH,
+        ThresholdTimeline.EMPTY, Collections.emptyList(),
+        ProductMccRiskTable.EMPTY, CountryIndex.EMPTY,
+        Collections.emptyMap());
+
+    private final long version;
+    private final Instant loadedAt;
+    private final ThresholdTimeline thresholdTimeline;
+    private final List<String> suspiciousMccList;
+    private final MccBitSet suspiciousMcc;
+    private final ProductMccRiskTable productMccRisk;
+    private final CountryIndex countryIndex;
+    private final Map<String, Long> datasetLoadMicros;
+
+    // Thresholds in force now, valid until the next scheduled change
+    private volatile CurrentThresholds current;
+
+    private static final class CurrentThresholds {
+        final Map<String, BigDecimal> values;
+        final long validFrom;
+        final long validUntil;
+
+        CurrentThresholds(Map<String, BigDecimal> values, long validFrom, long validUntil) {
+            this.values = values;
+            this.validFrom = validFrom;
+            this.validUntil = validUntil;
+        }
+    }
+
+    public RuleSnapshot(long version,
+                        Instant loadedAt,
+                        ThresholdTimeline thresholdTimeline,
+                        List<String> suspiciousMccList,
+                        ProductMccRiskTable productMccRisk,
+                        CountryIndex countryIndex,
+                        Map<String, Long> datasetLoadMicros) {
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.thresholdTimeline = thresholdTimeline;
+        this.suspiciousMccList = Collections.unmodifiableList(suspiciousMccList);
+        this.suspiciousMcc = MccBitSet.of(suspiciousMccList);
+        this.productMccRisk = productMccRisk;
+        this.countryIndex = countryIndex;
+        this.datasetLoadMicros = Collections.unmodifiableMap(datasetLoadMicros);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    /** Thresholds in force right now. */
+    public Map<String, BigDecimal> getThresholds() {
+        long now = System.currentTimeMillis();
+        CurrentThresholds c = current;
+        if (c == null || now >= c.validUntil || now < c.validFrom) {
+            // First use, or a scheduled change has just come into force
+            c = new CurrentThresholds(thresholdTimeline.resolveAt(now), now, thresholdTimeline.nextChangeAfter(now));
+            current = c;
+        }
+        return c.values;
+    }
+
+    /** Thresholds that were (or will be) in force at the given instant. */
+    public Map<String, BigDecimal> getThresholdsAt(Instant asOf) {
+        return thresholdTimeline.resolveAt(asOf.toEpochMilli());
+    }
+
+    /** Full effective-dated threshold history held in memory. */
+    public ThresholdTimeline getThresholdTimeline() {
+        return thresholdTimeline;
+    }
+
+    public List<String> getSuspiciousMccList() {
+        return suspiciousMccList;
+    }
+
+    /** Suspicious MCCs as a bitset for O(1) membership checks. */
+    public MccBitSet getSuspiciousMcc() {
+        return suspiciousMcc;
+    }
+
+    /** product_code x mcc_code -> risk_level */
+    public ProductMccRiskTable getProductMccRisk() {
+        return productMccRisk;
+    }
+
+    /** Country rules resolvable by code, name, alias or near-miss spelling. */
+    public CountryIndex getCountryIndex() {
+        return countryIndex;
+    }
+
+    // ---- Copy-on-write deltas for admin write-through ----
+
+    /** Copy where one threshold takes a new value from {@code from} on, or ends then when {@code value} is null. */
+    public RuleSnapshot withThreshold(long newVersion, String key, BigDecimal value, Instant from) {
+        ThresholdTimeline copy = thresholdTimeline.withValueFrom(key, value, from.toEpochMilli());
+        return new RuleSnapshot(newVersion, Instant.now(), copy, suspiciousMccList,
+            productMccRisk, countryIndex, datasetLoadMicros);
+    }
+
+    /** Copy with one MCC added to or removed from the suspicious list. */
+    public RuleSnapshot withSuspiciousMcc(long newVersion, String mccCode, boolean active) {
+        List<String> copy = new ArrayList<>(suspiciousMccList);
+        copy.remove(mccCode);
+        if (active) copy.add(mccCode);
+        return new RuleSnapshot(newVersion, Instant.now(), thresholdTimeline, copy,
+            productMccRisk, countryIndex, datasetLoadMicros);
+    }
+
+    /** Copy with one product x MCC risk set, or reset when {@code riskLevel} is null. */
+    public RuleSnapshot withProductMccRisk(long newVersion, String productCode, String mccCode, String riskLevel) {
+        return new RuleSnapshot(newVersion, Instant.now(), thresholdTimeline, suspiciousMccList,
+            productMccRisk.with(productCode, mccCode, riskLevel), countryIndex, datasetLoadMicros);
+    }
+
+    /** Copy with one country rule replaced, or removed when {@code decisionLevel} is null. */
+    public RuleSnapshot withCountryRule(long newVersion, String code, String name, String decisionLevel) {
+        return new RuleSnapshot(newVersion, Instant.now(), thresholdTimeline, suspiciousMccList,
+            productMccRisk, countryIndex.withRule(code, name, decisionLevel), datasetLoadMicros);
+    }
+
+    /** Time spent reading each dataset during the load, in microseconds. */
+    public Map<String, Long> getDatasetLoadMicros() {
+        return datasetLoadMicros;
+    }
+}
@@ -0,0 +1,298 @@
+package com.primebank.fraud;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Last-known-good copy of the card rule snapshot on local disk.
+ *
+ * Written after every successful DB load and read at startup, so a pod can
+ * serve real rules before MSSQL is reachable. The file is a compact binary
+ * layout read through a memory map:
+ *
+ * <pre>
+ * int   magic ('FRS2')
+ * int   payload length
+ * long  CRC32 of payload
+ * payload:
+ *   long version, long loadedAt (epoch millis)
+ *   int n, n x (str key, long from, long to,
+ *               bytes unscaled, int scale)               threshold versions
+ *   int n, n x str                                       suspicious MCC
+ *   int n, n x (str product, str mcc, str level)         product MCC risk
+ *   int n, n x (str code, str name, str level)           country rules
+ *   int n, n x (str alias, str target)                   country aliases
+ * str = int byte length (-1 for null) + UTF-8 bytes
+ * </pre>
+ *
+ * Writes go to a temp file that is atomically renamed, so a crash never
+ * leaves a half-written snapshot behind.
+ */
+@ApplicationScoped
+public class RuleSnapshotFileStore {
+
+    private static final int MAGIC = 0x46525332; // "FRS2"
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+
+    @ConfigProperty(name = "fraud.rules.snapshot.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.rules.snapshot.path", defaultValue = "data/rule-snapshot.bin")
+    String path;
+
+    // Saves may run on background threads; never let an older snapshot overwrite a newer one
+    private long lastSavedVersion = Long.MIN_VALUE;
+
+    /**
+     * Read the last persisted snapshot.
+     * @return the snapshot, or null if disabled, missing or corrupt
+     */
+    public RuleSnapshot load() {
+        if (!enabled) {
+            return null;
+        }
+        Path file = Paths.get(path);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return decode(buf, (System.nanoTime() - start) / 1_000L);
+
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable rule snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Persist a freshly loaded snapshot. Failures are logged, never thrown. */
+    public synchronized void save(RuleSnapshot snapshot) {
+        if (!enabled || snapshot.getVersion() < lastSavedVersion) {
+            return;
+        }
+        Path file = Paths.get(path);
+        try {
+            byte[] payload = encodePayload(snapshot);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(payload.length).putLong(crc.getValue()).flip();
+
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.write(header);
+                ch.write(ByteBuffer.wrap(payload));
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSavedVersion = snapshot.getVersion();
+
+        } catch (Exception e) {
+            System.err.println("Failed to persist rule snapshot to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * SHA-256 (hex) of the snapshot's rules, independent of its version, load
+     * time and row order: equal for two loads of the same DB content, in any
+     * process.
+     */
+    public static String contentHash(RuleSnapshot snapshot) {
+        List<String> rows = new ArrayList<>();
+        snapshot.getThresholdTimeline().forEach((key, from, to, value) ->
+            rows.add("T\t" + key + "\t" + from + "\t" + to + "\t" + value.stripTrailingZeros().toPlainString()));
+        for (String mcc : snapshot.getSuspiciousMccList()) {
+            rows.add("M\t" + mcc);
+        }
+        snapshot.getProductMccRisk().forEach((product, mcc, level) -> rows.add("P\t" + product + "\t" + mcc + "\t" + level));
+        for (CountryIndex.Entry rule : snapshot.getCountryIndex().getRules()) {
+            rows.add("C\t" + rule.getCode() + "\t" + rule.getName() + "\t" + rule.getDecisionLevel());
+        }
+        snapshot.getCountryIndex().getAliases().forEach((alias, target) -> rows.add("A\t" + alias + "\t" + target));
+        Collections.sort(rows);
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String row : rows) {
+                digest.update(row.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] encodePayload(RuleSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeLong(snapshot.getVersion());
+        out.writeLong(snapshot.getLoadedAt().toEpochMilli());
+
+        ThresholdTimeline timeline = snapshot.getThresholdTimeline();
+        out.writeInt(timeline.versionCount());
+        IOException[] failure = new IOException[1];
+        timeline.forEach((key, from, to, value) -> {
+            try {
+                writeString(out, key);
+                out.writeLong(from);
+                out.writeLong(to);
+                byte[] unscaled = value.unscaledValue().toByteArray();
+                out.writeInt(unscaled.length);
+                out.write(unscaled);
+                out.writeInt(value.scale());
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        out.writeInt(snapshot.getSuspiciousMccList().size());
+        for (String mcc : snapshot.getSuspiciousMccList()) {
+            writeString(out, mcc);
+        }
+
+        List<String[]> cells = new ArrayList<>();
+        snapshot.getProductMccRisk().forEach((product, mcc, level) -> cells.add(new String[]{product, mcc, level}));
+        out.writeInt(cells.size());
+        for (String[] cell : cells) {
+            writeString(out, cell[0]);
+            writeString(out, cell[1]);
+            writeString(out, cell[2]);
+        }
+
+        CountryIndex countries = snapshot.getCountryIndex();
+        out.writeInt(countries.getRules().size());
+        for (CountryIndex.Entry rule : countries.getRules()) {
+            writeString(out, rule.getCode());
+            writeString(out, rule.getName());
+            writeString(out, rule.getDecisionLevel());
+        }
+        out.writeInt(countries.getAliases().size());
+        for (Map.Entry<String, String> alias : countries.getAliases().entrySet()) {
+            writeString(out, alias.getKey());
+            writeString(out, alias.getValue());
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static RuleSnapshot decode(ByteBuffer buf, long mapMicros) {
+        if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) {
+            throw new IllegalStateException("not a rule snapshot file");
+        }
+        int length = buf.getInt();
+        long expectedCrc = buf.getLong();
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalStateException("truncated rule snapshot");
+        }
+
+        ByteBuffer payload = buf.slice();
+        payload.limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if (crc.getValue() != expectedCrc) {
+            throw new IllegalStateException("rule snapshot checksum mismatch");
+        }
+
+        long start = System.nanoTime();
+        long version = payload.getLong();
+        Instant loadedAt = Instant.ofEpochMilli(payload.getLong());
+
+        int n = payload.getInt();
+        ThresholdTimeline.Builder thresholds = ThresholdTimeline.builder();
+        for (int i = 0; i < n; i++) {
+            String key = readString(payload);
+            long from = payload.getLong();
+            long to = payload.getLong();
+            byte[] unscaled = new byte[payload.getInt()];
+            payload.get(unscaled);
+            thresholds.add(key, from, to, new BigDecimal(new BigInteger(unscaled), payload.getInt()));
+        }
+
+        n = payload.getInt();
+        List<String> mccList = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            mccList.add(readString(payload));
+        }
+
+        n = payload.getInt();
+        ProductMccRiskTable.Builder productMcc = ProductMccRiskTable.builder();
+        for (int i = 0; i < n; i++) {
+            productMcc.put(readString(payload), readString(payload), readString(payload));
+        }
+
+        CountryIndex.Builder countries = CountryIndex.builder();
+        n = payload.getInt();
+        for (int i = 0; i < n; i++) {
+            countries.addRule(readString(payload), readString(payload), readString(payload));
+        }
+        n = payload.getInt();
+        for (int i = 0; i < n; i++) {
+            countries.addAlias(readString(payload), readString(payload));
+        }
+
+        Map<String, Long> timings = new LinkedHashMap<>();
+        timings.put("snapshot_file", mapMicros + (System.nanoTime() - start) / 1_000L);
+
+        return new RuleSnapshot(version, loadedAt, thresholds.build(), mccList,
+            productMcc.build(), countries.build(), timings);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
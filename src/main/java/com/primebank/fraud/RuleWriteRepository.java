@@ -0,0 +1,135 @@
+package com.primebank.fraud;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Upserts single card rule rows for the admin write-through API.
+ * Each method is one MERGE on one connection, except thresholds, which
+ * are effective-dated and get a new version instead of an update.
+ */
+@ApplicationScoped
+public class RuleWriteRepository {
+
+    @Inject
+    DataSource dataSource;
+
+    /**
+     * New threshold version from {@code from} on, in one transaction: the
+     * version in force at that instant is closed there, and a new open-ended
+     * row starts there. Past values and future-dated rows are left as they
+     * are, matching {@link ThresholdTimeline#withValueFrom}.
+     */
+    public void upsertThreshold(String key, BigDecimal value, Instant from) {
+        String close =
+            "UPDATE fraud_threshold_card SET effective_to = ? " +
+            "WHERE threshold_key = ? AND is_active = 1 " +
+                "AND (effective_from IS NULL OR effective_from <= ?) " +
+                "AND (effective_to IS NULL OR effective_to > ?);";
+        String insert =
+            "INSERT INTO fraud_threshold_card (threshold_key, threshold_value, effective_from, effective_to, is_active) " +
+            "VALUES (?, ?, ?, NULL, 1);";
+
+        // DB datetimes are read back in the JVM time zone, so write them the same way
+        Timestamp at = Timestamp.from(from);
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement closeOpen = con.prepareStatement(close);
+                 PreparedStatement insertNew = con.prepareStatement(insert)) {
+
+                closeOpen.setTimestamp(1, at);
+                closeOpen.setString(2, key);
+                closeOpen.setTimestamp(3, at);
+                closeOpen.setTimestamp(4, at);
+                closeOpen.executeUpdate();
+
+                insertNew.setString(1, key);
+                insertNew.setBigDecimal(2, value);
+                insertNew.setTimestamp(3, at);
+                insertNew.executeUpdate();
+
+                con.commit();
+            } catch (Exception e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to write threshold " + key, e);
+        }
+    }
+
+    public void upsertMccRule(String mccCode, boolean active) {
+        String sql =
+            "MERGE fraud_mcc_rule AS t " +
+            "USING (SELECT ? AS mcc_code, ? AS is_active) AS s " +
+            "ON t.mcc_code = s.mcc_code " +
+            "WHEN MATCHED THEN UPDATE SET is_active = s.is_active " +
+            "WHEN NOT MATCHED THEN INSERT (mcc_code, is_active) VALUES (s.mcc_code, s.is_active);";
+
+        execute(sql, "MCC rule " + mccCode, mccCode, active);
+    }
+
+    public void upsertProductMccRule(String productCode, String mccCode, String riskLevel, boolean active) {
+        String sql =
+            "MERGE fraud_mcc_product_rule AS t " +
+            "USING (SELECT ? AS product_code, ? AS mcc_code, ? AS risk_level, ? AS is_active) AS s " +
+            "ON t.product_code = s.product_code AND t.mcc_code = s.mcc_code " +
+            "WHEN MATCHED THEN UPDATE SET risk_level = s.risk_level, is_active = s.is_active " +
+            "WHEN NOT MATCHED THEN INSERT (product_code, mcc_code, risk_level, is_active) " +
+                "VALUES (s.product_code, s.mcc_code, s.risk_level, s.is_active);";
+
+        execute(sql, "product MCC rule " + productCode + "/" + mccCode, productCode, mccCode, riskLevel, active);
+    }
+
+    /**
+     * Upsert a country rule; a null {@code countryName} keeps the stored name.
+     * @return the country name the row holds afterwards
+     */
+    public String upsertCountryRule(String countryCode, String countryName, String decisionLevel, boolean active) {
+        String sql =
+            "MERGE fraud_country_block_rule AS t " +
+            "USING (SELECT ? AS country_code, ? AS country_name, ? AS decision_level, ? AS is_active) AS s " +
+            "ON t.country_code = s.country_code " +
+            "WHEN MATCHED THEN UPDATE SET country_name = COALESCE(s.country_name, t.country_name), " +
+                "decision_level = s.decision_level, is_active = s.is_active " +
+            "WHEN NOT MATCHED THEN INSERT (country_code, country_name, decision_level, is_active) " +
+                "VALUES (s.country_code, s.country_name, s.decision_level, s.is_active) " +
+            "OUTPUT inserted.country_name;";
+
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, countryCode);
+            ps.setString(2, countryName);
+            ps.setString(3, decisionLevel);
+            ps.setBoolean(4, active);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : countryName;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to write country rule " + countryCode, e);
+        }
+    }
+
+    private void execute(String sql, String what, Object... params) {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            ps.executeUpdate();
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to write " + what, e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.primebank.fraud;
+
+import java.util.Map;
+
+/** One card transaction read from a {@link TransactionSource}. */
+public final class StreamEvent {
+
+    private final long offset;
+    private final String key;
+    private final Map<String, Object> payload;
+
+    public StreamEvent(long offset, String key, Map<String, Object> payload) {
+        this.offset = offset;
+        this.key = key;
+        this.payload = payload;
+    }
+
+    /** Position in the source; strictly increasing in poll order. */
+    public long getOffset() {
+        return offset;
+    }
+
+    /** Partitioning key the producer used (the card), may be null. */
+    public String getKey() {
+        return key;
+    }
+
+    /** The transaction, in the same shape as a POST /CardFraudDecision body. */
+    public Map<String, Object> getPayload() {
+        return payload;
+    }
+}
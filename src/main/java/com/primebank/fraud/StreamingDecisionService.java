@@ -0,0 +1,349 @@
+package com.primebank.fraud;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streaming mode: consumes card transactions from a {@link TransactionSource}
+ * and publishes decisions to a {@link DecisionSink}, next to the REST API.
+ *
+ * Events are decided in micro-batches of up to {@code batch-size}, each
+ * against one rule snapshot read, with the same {@link CardFraudEvaluator}
+ * as POST /CardFraudDecision. At most {@code max-in-flight} decisions may
+ * wait for a downstream acknowledgement; when that many are outstanding
+ * the consumer stops polling. Offsets are committed in order, up to the
+ * last event whose decision and all earlier ones were acknowledged, so a
+ * restart re-decides at most the unacknowledged tail. A decision the sink
+ * rejects is published again after a backoff (100 ms doubling to 5 s),
+ * at most {@code publish.max-attempts} times; after that it is logged,
+ * counted as abandoned and its offset released, so one undeliverable
+ * decision cannot stall the stream.
+ *
+ * Card state is per replica, so the source must be partitioned by card
+ * (the same affinity as {@link PartitionService}); streamed events are
+ * not forwarded. {@code source=memory} uses an {@link InMemoryTransactionStream},
+ * fed through /admin/fraud/stream.
+ */
+@ApplicationScoped
+public class StreamingDecisionService {
+
+    @Inject
+    CardFraudEvaluator evaluator;
+
+    @Inject
+    CardFraudThresholdService thresholdService;
+
+    @ConfigProperty(name = "fraud.stream.enabled", defaultValue = "false")
+    boolean enabled;
+
+    // memory = in-process stand-in; a broker-backed source/sink plugs in here
+    @ConfigProperty(name = "fraud.stream.source", defaultValue = "memory")
+    String sourceType;
+
+    @ConfigProperty(name = "fraud.stream.batch-size", defaultValue = "256")
+    int batchSize;
+
+    @ConfigProperty(name = "fraud.stream.poll-timeout.millis", defaultValue = "50")
+    long pollTimeoutMillis;
+
+    @ConfigProperty(name = "fraud.stream.max-in-flight", defaultValue = "4096")
+    int maxInFlight;
+
+    @ConfigProperty(name = "fraud.stream.publish.max-attempts", defaultValue = "10")
+    int maxPublishAttempts;
+
+    @ConfigProperty(name = "fraud.stream.memory.log-capacity", defaultValue = "100000")
+    int memoryLogCapacity;
+
+    @ConfigProperty(name = "fraud.stream.memory.topic-capacity", defaultValue = "10000")
+    int memoryTopicCapacity;
+
+    private static final long RETRY_BACKOFF_INITIAL_MILLIS = 100;
+    private static final long RETRY_BACKOFF_MAX_MILLIS = 5_000;
+
+    /** A decided event whose publish was rejected and must be retried. */
+    private static final class Unacked {
+        final StreamEvent event;
+        final Map<String, Object> decision;
+        final int slot;
+        final int attempts;
+        final long notBeforeMillis;
+
+        Unacked(StreamEvent event, Map<String, Object> decision, int slot, int attempts) {
+            this.event = event;
+            this.decision = decision;
+            this.slot = slot;
+            this.attempts = attempts;
+            long backoff = RETRY_BACKOFF_INITIAL_MILLIS << Math.min(attempts - 1, 16);
+            this.notBeforeMillis = System.currentTimeMillis() + Math.min(backoff, RETRY_BACKOFF_MAX_MILLIS);
+        }
+    }
+
+    /**
+     * Offsets of published, not yet committed events in poll order, with
+     * their acknowledgement flags. Bounded by max-in-flight.
+     */
+    static final class OffsetWindow {
+        private final long[] offsets;
+        private final boolean[] acked;
+        private long head;
+        private long tail;
+
+        OffsetWindow(int capacity) {
+            offsets = new long[capacity];
+            acked = new boolean[capacity];
+        }
+
+        synchronized int free() {
+            return offsets.length - (int) (tail - head);
+        }
+
+        /** Track a new event; the caller has checked {@link #free()}. */
+        synchronized int add(long offset) {
+            int slot = (int) (tail++ % offsets.length);
+            offsets[slot] = offset;
+            acked[slot] = false;
+            return slot;
+        }
+
+        synchronized void ack(int slot) {
+            acked[slot] = true;
+            notifyAll();
+        }
+
+        /** Drop the acknowledged prefix; returns its last offset, or -1 if none. */
+        synchronized long drainAcked() {
+            long last = -1;
+            while (head < tail && acked[(int) (head % offsets.length)]) {
+                last = offsets[(int) (head++ % offsets.length)];
+            }
+            return last;
+        }
+
+        synchronized int size() {
+            return (int) (tail - head);
+        }
+
+        /** Wait until something is acknowledged or the timeout passes. */
+        synchronized void awaitAck(long timeoutMillis) throws InterruptedException {
+            wait(timeoutMillis);
+        }
+    }
+
+    private TransactionSource source;
+    private DecisionSink sink;
+    private InMemoryTransactionStream memoryStream;
+    private OffsetWindow window;
+    private final ConcurrentLinkedQueue<Unacked> retries = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running;
+    private Thread consumer;
+    private volatile long committedOffset = -1;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder republished = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+
+    void onStart(@Observes StartupEvent ev) {
+        if (!enabled) {
+            return;
+        }
+        if (!"memory".equalsIgnoreCase(sourceType)) {
+            throw new IllegalStateException("Unknown fraud.stream.source: " + sourceType);
+        }
+        memoryStream = new InMemoryTransactionStream(memoryLogCapacity, memoryTopicCapacity);
+        start(memoryStream, memoryStream);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        stop();
+    }
+
+    /** Start consuming from the given source; one consumer per service. */
+    synchronized void start(TransactionSource source, DecisionSink sink) {
+        if (consumer != null) {
+            throw new IllegalStateException("Stream consumer already running");
+        }
+        this.source = source;
+        this.sink = sink;
+        this.window = new OffsetWindow(Math.max(1, maxInFlight));
+        running = true;
+        consumer = new Thread(this::runConsumer, "decision-stream-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    synchronized void stop() {
+        if (consumer == null) {
+            return;
+        }
+        running = false;
+        try {
+            consumer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        consumer = null;
+    }
+
+    /** The in-memory stand-in, or null when streaming is off or uses another source. */
+    public InMemoryTransactionStream memoryStream() {
+        return memoryStream;
+    }
+
+    private void runConsumer() {
+        while (running) {
+            try {
+                retryRejected();
+                commitAcknowledged();
+
+                int room = Math.min(batchSize, window.free());
+                if (room == 0) {
+                    // Downstream is behind: wait for acknowledgements (or retry backoffs) instead of polling
+                    stalls.increment();
+                    window.awaitAck(pollTimeoutMillis);
+                    continue;
+                }
+                List<StreamEvent> polled = source.poll(room, pollTimeoutMillis);
+                if (polled.isEmpty()) {
+                    continue;
+                }
+                decideBatch(polled);
+
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("Decision stream consumer error: " + e);
+            }
+        }
+        // Let outstanding acknowledgements land, then commit what we can
+        try {
+            for (int i = 0; i < 20 && window.size() > 0; i++) {
+                window.awaitAck(100);
+                commitAcknowledged();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commitAcknowledged();
+    }
+
+    /**
+     * One pass over the rejected publishes queued so far. Entries still in
+     * their backoff go back to the queue; anything a retry re-queues waits
+     * for the next pass, so a sink that keeps throwing cannot spin here.
+     */
+    private void retryRejected() {
+        long now = System.currentTimeMillis();
+        for (int pending = retries.size(); pending > 0 && running; pending--) {
+            Unacked retry = retries.poll();
+            if (retry == null) {
+                return;
+            }
+            if (retry.notBeforeMillis > now) {
+                retries.add(retry);
+                continue;
+            }
+            republished.increment();
+            publish(retry.event, retry.decision, retry.slot, retry.attempts + 1);
+        }
+    }
+
+    private void decideBatch(List<StreamEvent> polled) {
+        // One snapshot read for the whole micro-batch
+        RuleSnapshot rules = thresholdService.currentSnapshot();
+        batches.increment();
+        for (StreamEvent event : polled) {
+            Map<String, Object> decision;
+            try {
+                decision = evaluator.decide(event.getPayload(), rules);
+            } catch (Exception e) {
+                // Publish the failure like the REST error body, so the offset still advances
+                errors.increment();
+                decision = new HashMap<>();
+                decision.put("transaction_id", event.getPayload().get("txn_id"));
+                decision.put("error", "Fraud decision failed");
+                decision.put("message", e.getMessage());
+                decision.put("timestamp", Instant.now().toString());
+            }
+            events.increment();
+            publish(event, decision, window.add(event.getOffset()), 1);
+        }
+    }
+
+    private void publish(StreamEvent event, Map<String, Object> decision, int slot, int attempt) {
+        CompletionStage<Void> ack;
+        try {
+            ack = sink.publish(event, decision);
+        } catch (Exception e) {
+            rejected(event, decision, slot, attempt, e);
+            return;
+        }
+        ack.whenComplete((ok, failure) -> {
+            if (failure == null) {
+                window.ack(slot);
+            } else {
+                rejected(event, decision, slot, attempt, failure);
+            }
+        });
+    }
+
+    private void rejected(StreamEvent event, Map<String, Object> decision, int slot, int attempt, Throwable cause) {
+        if (attempt < maxPublishAttempts) {
+            retries.add(new Unacked(event, decision, slot, attempt));
+            return;
+        }
+        // Give up on this one so later offsets can still be committed; the journal has the decision
+        abandoned.increment();
+        System.err.println("Decision for stream offset " + event.getOffset() + " abandoned after "
+            + attempt + " publish attempts: " + cause);
+        window.ack(slot);
+    }
+
+    private void commitAcknowledged() {
+        long offset = window.drainAcked();
+        if (offset >= 0) {
+            source.commit(offset);
+            committedOffset = offset;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("source", sourceType);
+        stats.put("running", running);
+        stats.put("batch_size", batchSize);
+        stats.put("batches", batches.sum());
+        stats.put("events", events.sum());
+        stats.put("errors", errors.sum());
+        stats.put("in_flight", window == null ? 0 : window.size());
+        stats.put("max_in_flight", maxInFlight);
+        stats.put("backpressure_waits", stalls.sum());
+        stats.put("republished", republished.sum());
+        stats.put("retry_queue", retries.size());
+        stats.put("abandoned", abandoned.sum());
+        stats.put("committed_offset", committedOffset);
+        if (memoryStream != null) {
+            stats.put("lag", memoryStream.lag());
+            stats.put("topic_size", memoryStream.topicSize());
+        }
+        return stats;
+    }
+}
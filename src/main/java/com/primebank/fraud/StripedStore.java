@@ -0,0 +1,146 @@
+package com.primebank.fraud;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Per-key windows (cards, users) in lock stripes, each a plain HashMap
+ * behind its own lock, with a cap on tracked keys and a {@link TimingWheel}
+ * that drops keys idle for {@code idleMillis}. Shared by
+ * {@link VelocityStore}, {@link CurrencyTracker} and {@link UserActivityStore}.
+ *
+ * Callers hold the stripe's lock around every access to its entries, so a
+ * record and the read that follows it see each other; a key added under
+ * the lock is handed to {@link #track} after the lock is released.
+ */
+final class StripedStore<V> {
+
+    static final class Stripe<V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final HashMap<String, V> entries = new HashMap<>();
+    }
+
+    private final List<Stripe<V>> stripes;
+    private final int perStripeLimit;
+    private final long idleMillis;
+    private final ToLongFunction<V> lastEventMillis;
+    private final TimingWheel<String> expiry;
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * @param stripeCount     rounded up to a power of two
+     * @param lastEventMillis newest event of a window, for idle expiry
+     */
+    StripedStore(int stripeCount, int maxEntries, long idleMillis, long tickMillis, int wheelSlots,
+                 ToLongFunction<V> lastEventMillis) {
+        int n = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            stripes.add(new Stripe<>());
+        }
+        this.perStripeLimit = Math.max(1, maxEntries / n);
+        this.idleMillis = idleMillis;
+        this.lastEventMillis = lastEventMillis;
+        this.expiry = new TimingWheel<>(tickMillis, wheelSlots, System.currentTimeMillis());
+    }
+
+    Stripe<V> stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes.get((h ^ (h >>> 16)) & (stripes.size() - 1));
+    }
+
+    Stripe<V> stripe(int index) {
+        return stripes.get(index);
+    }
+
+    int stripeCount() {
+        return stripes.size();
+    }
+
+    /** Whether the stripe may take another key; call under its lock. */
+    boolean hasRoom(Stripe<V> stripe) {
+        return stripe.entries.size() < perStripeLimit;
+    }
+
+    boolean isIdle(V window, long nowMillis) {
+        return lastEventMillis.applyAsLong(window) + idleMillis <= nowMillis;
+    }
+
+    /** Schedule idle expiry for a key just added. */
+    void track(String key, V window) {
+        expiry.schedule(key, lastEventMillis.applyAsLong(window) + idleMillis);
+    }
+
+    /** Schedule every key, after a bulk load that bypassed {@link #track}. */
+    void trackAll() {
+        for (Stripe<V> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.entries.forEach(this::track);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    void clear() {
+        for (Stripe<V> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.entries.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /** Drop the keys that have gone idle; from one scheduler thread. */
+    void expireIdle(long nowMillis) {
+        expiry.advance(nowMillis, this::expireIfIdle);
+    }
+
+    private long expireIfIdle(String key, long nowMillis) {
+        Stripe<V> stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            V window = stripe.entries.get(key);
+            if (window == null) {
+                return -1;
+            }
+            long idleUntil = lastEventMillis.applyAsLong(window) + idleMillis;
+            if (idleUntil > nowMillis) {
+                return idleUntil;
+            }
+            stripe.entries.remove(key);
+            expired.increment();
+            return -1;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (Stripe<V> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    long capacity() {
+        return (long) perStripeLimit * stripes.size();
+    }
+
+    long expired() {
+        return expired.sum();
+    }
+}
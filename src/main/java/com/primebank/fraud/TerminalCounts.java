@@ -0,0 +1,23 @@
+package com.primebank.fraud;
+
+/** Decayed card x terminal attempt and failure counts from {@link CardTerminalTracker}. */
+public final class TerminalCounts {
+
+    public static final TerminalCounts NONE = new TerminalCounts(0, 0);
+
+    private final double attempts;
+    private final double failures;
+
+    TerminalCounts(double attempts, double failures) {
+        this.attempts = attempts;
+        this.failures = failures;
+    }
+
+    public double getAttempts() {
+        return attempts;
+    }
+
+    public double getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,287 @@
+package com.primebank.fraud;
+
+import io.quarkus.runtime.ShutdownEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * What-if simulation of threshold changes: re-evaluates recent card
+ * decisions from the {@link DecisionJournal} (their recorded DMN inputs)
+ * once as recorded and once with the proposed threshold values, and
+ * counts the decisions and reasons that would flip.
+ *
+ * Everything runs on a dedicated pool of at most
+ * {@code fraud.simulation.parallelism} threads and never more than all
+ * cores but one, so live decisions keep a core; not the common pool or
+ * request threads, and only one simulation runs at a time. The journal is
+ * streamed: a header-only scan finds where the newest {@code sample_size}
+ * decisions start, then they are decoded and evaluated
+ * {@value #CHUNK_SIZE} at a time, so at most two chunks of inputs are on
+ * the heap. Fast-path decisions never reached the DMN and are left out of
+ * the sample.
+ */
+@ApplicationScoped
+public class ThresholdSimulationService {
+
+    // Records per leaf task; small enough to balance, large enough to amortize the split
+    private static final int LEAF_SIZE = 256;
+    // Decoded inputs handed to the pool at a time
+    static final int CHUNK_SIZE = 8_192;
+
+    @Inject
+    CardFraudEvaluator evaluator;
+
+    @Inject
+    DecisionJournal decisionJournal;
+
+    @ConfigProperty(name = "fraud.simulation.parallelism", defaultValue = "4")
+    int parallelism;
+
+    @ConfigProperty(name = "fraud.simulation.max-sample", defaultValue = "200000")
+    int maxSample;
+
+    private ForkJoinPool pool;
+    private final AtomicBoolean busy = new AtomicBoolean();
+    // Overridable keys, read once from the DMN model
+    private volatile Set<String> ruleInputs;
+
+    @PostConstruct
+    void init() {
+        int threads = Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors() - 1));
+        pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("threshold-simulation-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        pool.shutdownNow();
+    }
+
+    /** Counts for one slice of the sample; merged up the fork-join tree. */
+    static final class Tally {
+        long evaluated;
+        long flipped;
+        long errors;
+        final Map<String, Long> baseline = new HashMap<>();
+        final Map<String, Long> proposed = new HashMap<>();
+        final Map<String, Long> decisionFlips = new HashMap<>();
+        final Map<String, Long> reasonFlips = new HashMap<>();
+
+        void merge(Tally other) {
+            evaluated += other.evaluated;
+            flipped += other.flipped;
+            errors += other.errors;
+            other.baseline.forEach((k, v) -> baseline.merge(k, v, Long::sum));
+            other.proposed.forEach((k, v) -> proposed.merge(k, v, Long::sum));
+            other.decisionFlips.forEach((k, v) -> decisionFlips.merge(k, v, Long::sum));
+            other.reasonFlips.forEach((k, v) -> reasonFlips.merge(k, v, Long::sum));
+        }
+    }
+
+    private final class EvaluateSlice extends RecursiveTask<Tally> {
+        private final List<Map<String, Object>> sample;
+        private final Map<String, BigDecimal> overrides;
+        private final int from;
+        private final int to;
+
+        EvaluateSlice(List<Map<String, Object>> sample, Map<String, BigDecimal> overrides, int from, int to) {
+            this.sample = sample;
+            this.overrides = overrides;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                EvaluateSlice left = new EvaluateSlice(sample, overrides, from, mid);
+                left.fork();
+                Tally tally = new EvaluateSlice(sample, overrides, mid, to).compute();
+                tally.merge(left.join());
+                return tally;
+            }
+            Tally tally = new Tally();
+            Map<String, Object> scratch = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                evaluate(sample.get(i), overrides, tally, scratch);
+            }
+            return tally;
+        }
+    }
+
+    /**
+     * Run a simulation over the newest {@code sampleSize} journaled card decisions.
+     * @param overrides proposed values for rule parameters of the model
+     * @return counts of baseline and proposed decisions and of flips, or null
+     *         if another simulation is running
+     */
+    public Map<String, Object> simulate(Map<String, BigDecimal> overrides, int sampleSize) throws Exception {
+        if (!busy.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            int limit = Math.max(1, Math.min(sampleSize, maxSample));
+            // Reading and decoding the journal happens on the pool as well
+            return pool.submit(() -> run(overrides, limit)).get();
+        } finally {
+            busy.set(false);
+        }
+    }
+
+    /** Rule parameters of the CardFraudDecision model; overrides must use one of them. */
+    public boolean isRuleInput(String key) {
+        Set<String> inputs = ruleInputs;
+        if (inputs == null) {
+            inputs = evaluator.numericRuleInputs();
+            ruleInputs = inputs;
+        }
+        return inputs.contains(key);
+    }
+
+    private Map<String, Object> run(Map<String, BigDecimal> overrides, int limit) throws IOException {
+        long start = System.nanoTime();
+        Path dir = decisionJournal.directory();
+        List<Path> segments = DecisionJournalReader.listSegments(dir);
+
+        // Newest first, headers only: the segment the sample starts in
+        int first = segments.size();
+        long available = 0;
+        while (first > 0 && available < limit) {
+            first--;
+            available += DecisionJournalReader.countEvaluated(segments.get(first), DecisionRecord.MODEL_CARD);
+        }
+
+        ChunkedSample sample = new ChunkedSample(overrides, Math.max(0, available - limit), limit);
+        for (int i = first; i < segments.size() && sample.taken < limit; i++) {
+            DecisionJournalReader.readSegment(segments.get(i), 0, sample);
+        }
+        Tally tally = sample.finish();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("overrides", overrides);
+        result.put("sample", sample.taken);
+        result.put("evaluated", tally.evaluated);
+        result.put("errors", tally.errors);
+        result.put("flipped", tally.flipped);
+        result.put("baseline_decisions", new TreeMap<>(tally.baseline));
+        result.put("proposed_decisions", new TreeMap<>(tally.proposed));
+        result.put("decision_flips", new TreeMap<>(tally.decisionFlips));
+        result.put("reason_flips", new TreeMap<>(tally.reasonFlips));
+        result.put("parallelism", pool.getParallelism());
+        result.put("elapsed_millis", (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    /**
+     * Collects DMN-evaluated card inputs into chunks while the journal is
+     * read, forking each full chunk; one chunk is evaluated while the next
+     * is decoded. Runs on a pool thread.
+     */
+    private final class ChunkedSample implements Consumer<DecisionRecord> {
+        private final Map<String, BigDecimal> overrides;
+        private final int limit;
+        private long skip;
+        int taken;
+        private List<Map<String, Object>> chunk = new ArrayList<>(CHUNK_SIZE);
+        private final ArrayDeque<EvaluateSlice> running = new ArrayDeque<>();
+        private final Tally tally = new Tally();
+
+        ChunkedSample(Map<String, BigDecimal> overrides, long skip, int limit) {
+            this.overrides = overrides;
+            this.skip = skip;
+            this.limit = limit;
+        }
+
+        @Override
+        public void accept(DecisionRecord record) {
+            if (taken >= limit || !"CARD".equals(record.getModel()) || record.isFastPath()) {
+                return;
+            }
+            if (skip > 0) {
+                skip--;
+                return;
+            }
+            chunk.add(record.getInputs());
+            taken++;
+            if (chunk.size() == CHUNK_SIZE) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            if (running.size() == 1) {
+                tally.merge(running.poll().join());
+            }
+            EvaluateSlice slice = new EvaluateSlice(chunk, overrides, 0, chunk.size());
+            slice.fork();
+            running.add(slice);
+            chunk = new ArrayList<>(CHUNK_SIZE);
+        }
+
+        Tally finish() {
+            if (!chunk.isEmpty()) {
+                submit();
+            }
+            while (!running.isEmpty()) {
+                tally.merge(running.poll().join());
+            }
+            return tally;
+        }
+    }
+
+    /** Evaluate one recorded input as is and with the overrides; {@code scratch} is reused per leaf. */
+    private void evaluate(Map<String, Object> recorded, Map<String, BigDecimal> overrides, Tally tally,
+                          Map<String, Object> scratch) {
+        try {
+            scratch.clear();
+            scratch.putAll(recorded);
+            Map<String, Object> before = CardFraudEvaluator.decisionOf(evaluator.evaluateDmn(scratch));
+            String decisionBefore = String.valueOf(before.get("fraud_decision"));
+            String reasonBefore = String.valueOf(before.get("fraud_reason"));
+
+            scratch.clear();
+            scratch.putAll(recorded);
+            scratch.putAll(overrides);
+            Map<String, Object> after = CardFraudEvaluator.decisionOf(evaluator.evaluateDmn(scratch));
+            String decisionAfter = String.valueOf(after.get("fraud_decision"));
+            String reasonAfter = String.valueOf(after.get("fraud_reason"));
+
+            tally.evaluated++;
+            tally.baseline.merge(decisionBefore, 1L, Long::sum);
+            tally.proposed.merge(decisionAfter, 1L, Long::sum);
+            if (!decisionBefore.equals(decisionAfter) || !reasonBefore.equals(reasonAfter)) {
+                tally.flipped++;
+                if (!decisionBefore.equals(decisionAfter)) {
+                    tally.decisionFlips.merge(decisionBefore + " -> " + decisionAfter, 1L, Long::sum);
+                }
+                tally.reasonFlips.merge(reasonBefore + " -> " + reasonAfter, 1L, Long::sum);
+            }
+        } catch (Exception e) {
+            tally.errors++;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.primebank.fraud;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-indexed history of card fraud thresholds built from the
+ * effective_from / effective_to columns of fraud_threshold_card.
+ *
+ * Each key holds its versions sorted by effective_from. A value is in force
+ * on {@code [from, to)}; when versions overlap the one that started last wins.
+ * Open ends are stored as Long.MIN_VALUE / Long.MAX_VALUE epoch millis.
+ */
+public final class ThresholdTimeline {
+
+    public static final long OPEN_START = Long.MIN_VALUE;
+    public static final long OPEN_END = Long.MAX_VALUE;
+
+    public static final ThresholdTimeline EMPTY = builder().build();
+
+    private static final class Versions {
+        final long[] from;
+        final long[] to;
+        final BigDecimal[] values;
+
+        Versions(long[] from, long[] to, BigDecimal[] values) {
+            this.from = from;
+            this.to = to;
+            this.values = values;
+        }
+
+        BigDecimal valueAt(long at) {
+            // Latest start at or before 'at' that has not ended yet
+            for (int i = from.length - 1; i >= 0; i--) {
+                if (from[i] <= at && at < to[i]) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    public interface VersionVisitor {
+        void visit(String key, long effectiveFrom, long effectiveTo, BigDecimal value);
+    }
+
+    private final Map<String, Versions> byKey;
+
+    private ThresholdTimeline(Map<String, Versions> byKey) {
+        this.byKey = byKey;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Threshold in force at the given instant, or null if none. */
+    public BigDecimal valueAt(String key, long atMillis) {
+        Versions v = byKey.get(key);
+        return v == null ? null : v.valueAt(atMillis);
+    }
+
+    /** Every threshold in force at the given instant. */
+    public Map<String, BigDecimal> resolveAt(long atMillis) {
+        Map<String, BigDecimal> result = new HashMap<>(byKey.size() * 2);
+        byKey.forEach((key, versions) -> {
+            BigDecimal value = versions.valueAt(atMillis);
+            if (value != null) {
+                result.put(key, value);
+            }
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * First instant after {@code atMillis} at which any threshold changes,
+     * or OPEN_END if nothing is scheduled.
+     */
+    public long nextChangeAfter(long atMillis) {
+        long next = OPEN_END;
+        for (Versions v : byKey.values()) {
+            for (int i = 0; i < v.from.length; i++) {
+                if (v.from[i] > atMillis && v.from[i] < next) next = v.from[i];
+                if (v.to[i] > atMillis && v.to[i] < next) next = v.to[i];
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Copy where {@code key} takes {@code value} from {@code fromMillis} on,
+     * ending every version in force at that point. Versions that start later
+     * are kept and still win from their start. A null value just ends them.
+     */
+    public ThresholdTimeline withValueFrom(String key, BigDecimal value, long fromMillis) {
+        Builder b = builder();
+        forEach((k, from, to, v) -> {
+            if (k.equals(key) && from <= fromMillis && to > fromMillis) {
+                if (from < fromMillis) b.add(k, from, fromMillis, v);
+            } else {
+                b.add(k, from, to, v);
+            }
+        });
+        if (value != null) {
+            b.add(key, fromMillis, OPEN_END, value);
+        }
+        return b.build();
+    }
+
+    public void forEach(VersionVisitor visitor) {
+        byKey.forEach((key, v) -> {
+            for (int i = 0; i < v.from.length; i++) {
+                visitor.visit(key, v.from[i], v.to[i], v.values[i]);
+            }
+        });
+    }
+
+    public int versionCount() {
+        int n = 0;
+        for (Versions v : byKey.values()) {
+            n += v.from.length;
+        }
+        return n;
+    }
+
+    public static final class Builder {
+
+        private static final class Row {
+            final long from;
+            final long to;
+            final BigDecimal value;
+
+            Row(long from, long to, BigDecimal value) {
+                this.from = from;
+                this.to = to;
+                this.value = value;
+            }
+        }
+
+        private final Map<String, List<Row>> rows = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder add(String key, long effectiveFrom, long effectiveTo, BigDecimal value) {
+            if (key != null && value != null && effectiveFrom < effectiveTo) {
+                rows.computeIfAbsent(key, k -> new ArrayList<>()).add(new Row(effectiveFrom, effectiveTo, value));
+            }
+            return this;
+        }
+
+        public ThresholdTimeline build() {
+            Map<String, Versions> byKey = new HashMap<>(rows.size() * 2);
+            rows.forEach((key, list) -> {
+                list.sort((a, b) -> Long.compare(a.from, b.from));
+                long[] from = new long[list.size()];
+                long[] to = new long[list.size()];
+                BigDecimal[] values = new BigDecimal[list.size()];
+                for (int i = 0; i < list.size(); i++) {
+                    from[i] = list.get(i).from;
+                    to[i] = list.get(i).to;
+                    values[i] = list.get(i).value;
+                }
+                byKey.put(key, new Versions(from, to, values));
+            });
+            return new ThresholdTimeline(byKey);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.primebank.fraud;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hashed timing wheel for expiring idle keys from the in-process stores.
+ *
+ * Each key sits in the slot of its expiry tick. When a slot comes due,
+ * the owner is asked whether the key is really idle; live keys report their
+ * new expiry and are moved forward. Each key is therefore scheduled once,
+ * however often it is touched, and expiry costs O(expired keys) per tick
+ * instead of a scan of the whole store.
+ */
+final class TimingWheel<K> {
+
+    interface ExpiryHandler<K> {
+        /**
+         * @return the key's next expiry (epoch millis), or a negative value
+         *         once the key has been removed
+         */
+        long onDue(K key, long nowMillis);
+    }
+
+    private final long tickMillis;
+    private final List<Set<K>> slots;
+    private volatile long currentTick;
+
+    TimingWheel(long tickMillis, int slotCount, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(ConcurrentHashMap.newKeySet());
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /** Schedule a key; expiries past the wheel's horizon are re-checked when it wraps. */
+    void schedule(K key, long expireAtMillis) {
+        long now = currentTick;
+        long tick = Math.max(expireAtMillis / tickMillis, now + 1);
+        tick = Math.min(tick, now + slots.size() - 1);
+        slots.get((int) (tick % slots.size())).add(key);
+    }
+
+    /** Process every slot due up to {@code nowMillis}. Not for concurrent callers. */
+    void advance(long nowMillis, ExpiryHandler<K> handler) {
+        long target = nowMillis / tickMillis;
+        // After a long pause one full turn covers every slot
+        long from = Math.max(currentTick + 1, target - slots.size() + 1);
+        for (long tick = from; tick <= target; tick++) {
+            currentTick = tick;
+            Iterator<K> it = slots.get((int) (tick % slots.size())).iterator();
+            while (it.hasNext()) {
+                K key = it.next();
+                it.remove();
+                long next = handler.onDue(key, nowMillis);
+                if (next >= 0) {
+                    schedule(key, next);
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, target);
+    }
+
+    long tickMillis() {
+        return tickMillis;
+    }
+}
@@ -0,0 +1,24 @@
+package com.primebank.fraud;
+
+import java.util.List;
+
+/**
+ * Card transactions arriving as a stream (one topic partition or queue)
+ * instead of REST calls. Consumed by a single {@link StreamingDecisionService}
+ * thread; offsets are strictly increasing in poll order.
+ */
+public interface TransactionSource {
+
+    /**
+     * Next events after the last polled one, at most {@code maxEvents}.
+     * Waits up to {@code timeoutMillis} for the first event.
+     * @return the events, empty if none arrived in time
+     */
+    List<StreamEvent> poll(int maxEvents, long timeoutMillis) throws InterruptedException;
+
+    /**
+     * Every event up to and including {@code offset} is decided and its
+     * decision acknowledged downstream; a restarted consumer resumes after it.
+     */
+    void commit(long offset);
+}
@@ -0,0 +1,88 @@
+package com.primebank.fraud;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Geo-velocity for impossible-travel checks: distance between the card's
+ * previous and current country centroids divided by the time in between,
+ * in km/h (travel_speed_kmh).
+ *
+ * Only card-present transactions are tracked; for ECOM, txn_country is the
+ * merchant's country and says nothing about where the card is. Per
+ * authorization this is two fingerprint hashes, one 192-byte bucket scan
+ * and one array read. Elapsed time is floored at a minute, so two countries
+ * in the same instant give a large but finite speed.
+ */
+@ApplicationScoped
+public class TravelVelocityService {
+
+    private static final double MIN_ELAPSED_HOURS = 1.0 / 60;
+    private static final double HOUR_MILLIS = 60 * 60 * 1000.0;
+
+    @ConfigProperty(name = "fraud.travel.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.travel.max-cards", defaultValue = "1000000")
+    long maxCards;
+
+    private CountryCentroids centroids;
+    private LastSeenLocationTable table;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder unknownCountries = new LongAdder();
+    private final LongAdder countryChanges = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        centroids = CountryCentroids.load();
+        table = new LastSeenLocationTable(enabled ? maxCards : 0);
+    }
+
+    /**
+     * Record a card-present transaction and return the speed implied by the
+     * card's previous location, or 0 if there is nothing to compare with.
+     */
+    public double recordAndSpeed(String cardKey, String country, String channel, long eventMillis,
+                                 CountryIndex countryIndex) {
+        if (!enabled || cardKey == null || "ECOM".equalsIgnoreCase(channel)) {
+            return 0.0;
+        }
+        lookups.increment();
+        int location = centroids.idOf(country, countryIndex);
+        if (location < 0) {
+            unknownCountries.increment();
+            return 0.0;
+        }
+
+        long previous = table.swap(Fingerprints.hi(cardKey), Fingerprints.lo(cardKey), location, eventMillis);
+        if (previous == LastSeenLocationTable.NONE) {
+            return 0.0;
+        }
+        int previousLocation = LastSeenLocationTable.location(previous);
+        if (previousLocation == location) {
+            return 0.0;
+        }
+        countryChanges.increment();
+        double hours = Math.abs(eventMillis - LastSeenLocationTable.millis(previous)) / HOUR_MILLIS;
+        return centroids.distanceKm(previousLocation, location) / Math.max(hours, MIN_ELAPSED_HOURS);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("countries", centroids.size());
+        stats.put("distance_matrix_bytes", centroids.sizeInBytes());
+        stats.put("card_capacity", table.capacity());
+        stats.put("table_bytes", table.sizeInBytes());
+        stats.put("lookups", lookups.sum());
+        stats.put("unknown_countries", unknownCountries.sum());
+        stats.put("country_changes", countryChanges.sum());
+        return stats;
+    }
+}
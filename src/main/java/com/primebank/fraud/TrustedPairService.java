@@ -0,0 +1,147 @@
+package com.primebank.fraud;
+
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Allowlist of trusted (card hash, merchant) pairs, e.g. utilities and
+ * subscriptions, that may skip CardFraudDecision below an amount ceiling.
+ *
+ * <pre>
+ * CREATE TABLE fraud_trusted_pair (
+ *     card_hash   VARCHAR(128)  NOT NULL,
+ *     merchant_id VARCHAR(64)   NOT NULL,
+ *     max_amount  DECIMAL(18,2) NOT NULL,
+ *     is_active   BIT           NOT NULL DEFAULT 1,
+ *     PRIMARY KEY (card_hash, merchant_id)
+ * )
+ * </pre>
+ *
+ * The ceiling is compared with txn_amount as sent; a transaction without
+ * one always goes through DMN. The counters show how much DMN work the
+ * fast path saves.
+ */
+@ApplicationScoped
+public class TrustedPairService {
+
+    private static final String SELECT_SQL =
+        "SELECT card_hash, merchant_id, max_amount FROM fraud_trusted_pair WHERE is_active = 1";
+
+    @Inject
+    DataSource dataSource;
+
+    @ConfigProperty(name = "fraud.trusted-pairs.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.trusted-pairs.fetch-size", defaultValue = "10000")
+    int fetchSize;
+
+    private volatile TrustedPairTable table = TrustedPairTable.EMPTY;
+    private volatile Instant loadedAt;
+
+    // Fast-path hits, pairs found but over their ceiling, and full DMN evaluations
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder overCeiling = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder evaluationNanos = new LongAdder();
+
+    void onStart(@Observes StartupEvent ev) {
+        // Own thread rather than the common pool: a large load can take minutes
+        Thread loader = new Thread(this::reload, "trusted-pair-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @Scheduled(every = "{fraud.trusted-pairs.refresh-interval}",
+               delayed = "{fraud.trusted-pairs.refresh-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledReload() {
+        reload();
+    }
+
+    /**
+     * True if the pair is trusted and the amount is within its ceiling.
+     * Callers must apply hard blocks (country FRAUD, blocklists) first and
+     * pass NaN when the transaction has no amount, which is never trusted.
+     */
+    public boolean isTrusted(String cardHash, String merchantId, double amount) {
+        if (!enabled || Double.isNaN(amount)) {
+            return false;
+        }
+        double ceiling = table.ceiling(cardHash, merchantId);
+        if (Double.isNaN(ceiling)) {
+            return false;
+        }
+        if (amount > ceiling) {
+            overCeiling.increment();
+            return false;
+        }
+        hits.increment();
+        return true;
+    }
+
+    /** Record a full DMN evaluation, used to estimate the time the fast path saves. */
+    public void recordEvaluation(long nanos) {
+        evaluations.increment();
+        evaluationNanos.add(nanos);
+    }
+
+    /** Reload the allowlist. Failures keep the table currently in use. */
+    public synchronized void reload() {
+        if (!enabled) {
+            return;
+        }
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(SELECT_SQL,
+                 ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            ps.setFetchSize(fetchSize);
+            TrustedPairTable.Builder builder = TrustedPairTable.builder(table.size());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    double ceiling = rs.getDouble(3);
+                    if (!rs.wasNull()) {
+                        builder.put(rs.getString(1), rs.getString(2), ceiling);
+                    }
+                }
+            }
+            this.table = builder.build();
+            this.loadedAt = Instant.now();
+
+        } catch (Exception e) {
+            System.err.println("Failed to reload trusted card/merchant pairs: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long evalCount = evaluations.sum();
+        long avgEvalNanos = evalCount == 0 ? 0 : evaluationNanos.sum() / evalCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pairs", table.size());
+        stats.put("table_bytes", table.sizeInBytes());
+        stats.put("loaded_at", loadedAt == null ? null : loadedAt.toString());
+        stats.put("fast_path_hits", hitCount);
+        stats.put("over_ceiling", overCeiling.sum());
+        stats.put("dmn_evaluations", evalCount);
+        stats.put("fast_path_ratio", hitCount + evalCount == 0 ? 0.0 : (double) hitCount / (hitCount + evalCount));
+        stats.put("avg_dmn_micros", avgEvalNanos / 1_000L);
+        stats.put("estimated_saved_ms", hitCount * avgEvalNanos / 1_000_000L);
+        return stats;
+    }
+}
@@ -0,0 +1,126 @@
+package com.primebank.fraud;
+
+/**
+ * Immutable open-addressing table of trusted (card hash, merchant ID)
+ * pairs and their amount ceilings.
+ *
+ * Each pair is stored as a 128-bit fingerprint plus a double ceiling in
+ * three parallel primitive arrays (24 bytes per slot, load factor at most
+ * 0.5), so a million pairs cost about 48 MB and no per-entry objects.
+ */
+final class TrustedPairTable {
+
+    static final TrustedPairTable EMPTY = builder(0).build();
+
+    private final long[] hi;
+    // lo == 0 marks an empty slot (Fingerprints never produces it)
+    private final long[] lo;
+    private final double[] ceilings;
+    private final int mask;
+    private final int size;
+
+    private TrustedPairTable(long[] hi, long[] lo, double[] ceilings, int size) {
+        this.hi = hi;
+        this.lo = lo;
+        this.ceilings = ceilings;
+        this.mask = hi.length - 1;
+        this.size = size;
+    }
+
+    static Builder builder(int expectedPairs) {
+        return new Builder(expectedPairs);
+    }
+
+    /** Amount ceiling for the pair, or NaN if the pair is not trusted. */
+    double ceiling(String cardHash, String merchantId) {
+        if (Fingerprints.isBlank(cardHash) || Fingerprints.isBlank(merchantId)) {
+            return Double.NaN;
+        }
+        long h = Fingerprints.pairHi(cardHash, merchantId);
+        long l = Fingerprints.pairLo(cardHash, merchantId);
+        int slot = (int) Fingerprints.fmix64(l) & mask;
+        while (lo[slot] != 0) {
+            if (hi[slot] == h && lo[slot] == l) {
+                return ceilings[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return Double.NaN;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long sizeInBytes() {
+        return hi.length * 24L;
+    }
+
+    static final class Builder {
+
+        private long[] hi;
+        private long[] lo;
+        private double[] ceilings;
+        private int size;
+
+        private Builder(int expectedPairs) {
+            allocate(tableSizeFor(expectedPairs));
+        }
+
+        /** Add or replace a pair; the last ceiling wins. */
+        Builder put(String cardHash, String merchantId, double ceiling) {
+            if (Fingerprints.isBlank(cardHash) || Fingerprints.isBlank(merchantId) || Double.isNaN(ceiling)) {
+                return this;
+            }
+            if ((size + 1) * 2 > hi.length) {
+                grow();
+            }
+            insert(Fingerprints.pairHi(cardHash, merchantId), Fingerprints.pairLo(cardHash, merchantId), ceiling);
+            return this;
+        }
+
+        TrustedPairTable build() {
+            return new TrustedPairTable(hi, lo, ceilings, size);
+        }
+
+        private void insert(long h, long l, double ceiling) {
+            int mask = hi.length - 1;
+            int slot = (int) Fingerprints.fmix64(l) & mask;
+            while (lo[slot] != 0) {
+                if (hi[slot] == h && lo[slot] == l) {
+                    ceilings[slot] = ceiling;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            hi[slot] = h;
+            lo[slot] = l;
+            ceilings[slot] = ceiling;
+            size++;
+        }
+
+        private void grow() {
+            long[] oldHi = hi;
+            long[] oldLo = lo;
+            double[] oldCeilings = ceilings;
+            allocate(oldHi.length << 1);
+            size = 0;
+            for (int i = 0; i < oldHi.length; i++) {
+                if (oldLo[i] != 0) {
+                    insert(oldHi[i], oldLo[i], oldCeilings[i]);
+                }
+            }
+        }
+
+        private void allocate(int slots) {
+            hi = new long[slots];
+            lo = new long[slots];
+            ceilings = new double[slots];
+        }
+
+        private static int tableSizeFor(int expectedPairs) {
+            int needed = Math.max(16, expectedPairs * 2);
+            return Integer.highestOneBit(needed - 1) << 1;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.primebank.fraud;
+
+/** Per-user MyPrime activity features from {@link UserActivityStore}. */
+public final class UserActivity {
+
+    public static final UserActivity NONE = new UserActivity(0, 0, 0, null);
+
+    private final int logins1hr;
+    private final int devices1day;
+    private final int otpFailures1hr;
+    private final Boolean newDevice;
+
+    UserActivity(int logins1hr, int devices1day, int otpFailures1hr, Boolean newDevice) {
+        this.logins1hr = logins1hr;
+        this.devices1day = devices1day;
+        this.otpFailures1hr = otpFailures1hr;
+        this.newDevice = newDevice;
+    }
+
+    public int getLogins1hr() {
+        return logins1hr;
+    }
+
+    public int getDevices1day() {
+        return devices1day;
+    }
+
+    public int getOtpFailures1hr() {
+        return otpFailures1hr;
+    }
+
+    /** Null when unknown: no device, or less than a day of history for the user. */
+    public Boolean isNewDevice() {
+        return newDevice;
+    }
+}
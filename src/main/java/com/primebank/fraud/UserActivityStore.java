@@ -0,0 +1,153 @@
+package com.primebank.fraud;
+
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MyPrime digital-channel velocity per user: logins and failed OTPs in the
+ * last hour, distinct devices in the last day, and whether the device is
+ * new to the user.
+ *
+ * Users live in a {@link StripedStore}, like the card velocity windows,
+ * and are dropped after a day idle. Each user holds one fixed-size
+ * {@link UserActivityWindow}.
+ * State is in memory only; after a restart the features build up again,
+ * and whether a device is new stays unknown (null) until a user's window
+ * has a full day behind it.
+ */
+@ApplicationScoped
+public class UserActivityStore {
+
+    private static final long IDLE_MILLIS = UserActivityWindow.DAY_MILLIS;
+    private static final int STRIPES = 64;
+
+    @ConfigProperty(name = "fraud.myprime.activity.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.myprime.activity.max-users", defaultValue = "1000000")
+    int maxUsers;
+
+    private StripedStore<UserActivityWindow> users;
+
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder otpFailures = new LongAdder();
+    private final LongAdder rejectedUsers = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        // 15-minute ticks; 128 slots cover the one-day idle period
+        users = new StripedStore<>(STRIPES, maxUsers, IDLE_MILLIS, 15 * MinuteRing.MINUTE_MILLIS, 128,
+            window -> window.lastEventMillis);
+    }
+
+    /**
+     * Record a login (optionally from a device, optionally with a failed OTP)
+     * and return the user's features including it.
+     * @return NONE when disabled, without a user key, or when the store is full
+     */
+    public UserActivity recordLogin(String userKey, String deviceId, boolean otpFailed, long eventMillis) {
+        if (!enabled || userKey == null) {
+            return UserActivity.NONE;
+        }
+        long device = Fingerprints.isBlank(deviceId) ? 0 : Fingerprints.lo(deviceId);
+
+        StripedStore.Stripe<UserActivityWindow> stripe = users.stripeFor(userKey);
+        UserActivityWindow created = null;
+        UserActivity activity;
+        stripe.lock.lock();
+        try {
+            UserActivityWindow window = stripe.entries.get(userKey);
+            if (window == null) {
+                if (!users.hasRoom(stripe)) {
+                    rejectedUsers.increment();
+                    return UserActivity.NONE;
+                }
+                window = new UserActivityWindow(eventMillis);
+                stripe.entries.put(userKey, window);
+                created = window;
+            }
+            Boolean newDevice = window.recordLogin(eventMillis, device);
+            if (otpFailed) {
+                window.recordOtpFailure(eventMillis);
+                otpFailures.increment();
+            }
+            logins.increment();
+            activity = new UserActivity(window.loginsAt(eventMillis), window.devicesAt(eventMillis),
+                window.otpFailuresAt(eventMillis), newDevice);
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (created != null) {
+            users.track(userKey, created);
+        }
+        return activity;
+    }
+
+    /**
+     * The user's features at {@code atMillis} without recording anything,
+     * for decisions that are not logins.
+     * @return NONE when disabled, without a user key, or for an unknown user
+     */
+    public UserActivity read(String userKey, String deviceId, long atMillis) {
+        if (!enabled || userKey == null) {
+            return UserActivity.NONE;
+        }
+        long device = Fingerprints.isBlank(deviceId) ? 0 : Fingerprints.lo(deviceId);
+
+        StripedStore.Stripe<UserActivityWindow> stripe = users.stripeFor(userKey);
+        stripe.lock.lock();
+        try {
+            UserActivityWindow window = stripe.entries.get(userKey);
+            if (window == null) {
+                return UserActivity.NONE;
+            }
+            return new UserActivity(window.loginsAt(atMillis), window.devicesAt(atMillis),
+                window.otpFailuresAt(atMillis), window.isNewDevice(device, atMillis));
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /** Count a failed OTP reported after the decision. Unknown users are not added. */
+    public void recordOtpFailure(String userKey, long eventMillis) {
+        if (!enabled || userKey == null) {
+            return;
+        }
+        StripedStore.Stripe<UserActivityWindow> stripe = users.stripeFor(userKey);
+        stripe.lock.lock();
+        try {
+            UserActivityWindow window = stripe.entries.get(userKey);
+            if (window != null) {
+                window.recordOtpFailure(eventMillis);
+                otpFailures.increment();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Scheduled(every = "{fraud.velocity.expiry-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void expireIdleUsers() {
+        users.expireIdle(System.currentTimeMillis());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("users", users.size());
+        stats.put("max_users", users.capacity());
+        stats.put("logins", logins.sum());
+        stats.put("otp_failures", otpFailures.sum());
+        stats.put("rejected_users", rejectedUsers.sum());
+        stats.put("expired_users", users.expired());
+        return stats;
+    }
+}
@@ -0,0 +1,129 @@
+package com.primebank.fraud;
+
+/**
+ * Digital-channel activity of one MyPrime user: logins and failed OTPs over
+ * the last hour in one-minute buckets, and the devices seen in the last day.
+ *
+ * Fixed size per user (2 x 60 ints, 16 devices, about 1 KB with headers).
+ * Distinct devices saturate at {@link #MAX_DEVICES}; past that the device
+ * seen longest ago is forgotten. Not thread-safe: guarded by the owning
+ * stripe of {@link UserActivityStore}.
+ */
+final class UserActivityWindow extends MinuteRing {
+
+    static final int MAX_DEVICES = 16;
+    static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    final int[] logins = new int[SLOTS];
+    final int[] otpFailures = new int[SLOTS];
+    // Device fingerprints (0 = empty) and when each was last seen
+    final long[] devices = new long[MAX_DEVICES];
+    final long[] deviceSeenMillis = new long[MAX_DEVICES];
+    long lastEventMillis;
+    // First event this window saw: device answers need a full day after it
+    final long trackedSinceMillis;
+
+    UserActivityWindow(long eventMillis) {
+        super(eventMillis);
+        this.lastEventMillis = eventMillis;
+        this.trackedSinceMillis = eventMillis;
+    }
+
+    /**
+     * Count a login from {@code device} (0 when unknown).
+     * @return {@link #isNewDevice} for the device before this login
+     */
+    Boolean recordLogin(long eventMillis, long device) {
+        Boolean newDevice = isNewDevice(device, eventMillis);
+        int slot = slotFor(eventMillis / MINUTE_MILLIS);
+        if (slot >= 0) {
+            logins[slot]++;
+        }
+        lastEventMillis = Math.max(lastEventMillis, eventMillis);
+        if (device != 0) {
+            recordDevice(device, eventMillis);
+        }
+        return newDevice;
+    }
+
+    /**
+     * Whether {@code device} was not seen in the day before {@code atMillis}.
+     * @return null when unknown: no device, or the window has not yet covered
+     *         that whole day (new user, restart, expiry or partition handoff)
+     */
+    Boolean isNewDevice(long device, long atMillis) {
+        if (device == 0) {
+            return null;
+        }
+        for (int i = 0; i < MAX_DEVICES; i++) {
+            if (devices[i] == device && deviceSeenMillis[i] > atMillis - DAY_MILLIS) {
+                return Boolean.FALSE;
+            }
+        }
+        return trackedSinceMillis <= atMillis - DAY_MILLIS ? Boolean.TRUE : null;
+    }
+
+    void recordOtpFailure(long eventMillis) {
+        int slot = slotFor(eventMillis / MINUTE_MILLIS);
+        if (slot >= 0) {
+            otpFailures[slot]++;
+        }
+        lastEventMillis = Math.max(lastEventMillis, eventMillis);
+    }
+
+    int loginsAt(long atMillis) {
+        return sumLastHour(logins, atMillis);
+    }
+
+    int otpFailuresAt(long atMillis) {
+        return sumLastHour(otpFailures, atMillis);
+    }
+
+    /** Distinct devices seen in the day up to {@code atMillis}. */
+    int devicesAt(long atMillis) {
+        int n = 0;
+        for (int i = 0; i < MAX_DEVICES; i++) {
+            if (devices[i] != 0 && deviceSeenMillis[i] > atMillis - DAY_MILLIS && deviceSeenMillis[i] <= atMillis) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void recordDevice(long device, long eventMillis) {
+        int victim = 0;
+        for (int i = 0; i < MAX_DEVICES; i++) {
+            if (devices[i] == device) {
+                deviceSeenMillis[i] = Math.max(deviceSeenMillis[i], eventMillis);
+                return;
+            }
+            if (devices[i] == 0) {
+                victim = i;
+                break;
+            }
+            if (deviceSeenMillis[i] < deviceSeenMillis[victim]) {
+                victim = i;
+            }
+        }
+        devices[victim] = device;
+        deviceSeenMillis[victim] = eventMillis;
+    }
+
+    @Override
+    void clearSlot(int slot) {
+        logins[slot] = 0;
+        otpFailures[slot] = 0;
+    }
+
+    private int sumLastHour(int[] ring, long atMillis) {
+        long at = atMillis / MINUTE_MILLIS;
+        int sum = 0;
+        for (int back = 0; back < SLOTS; back++) {
+            int slot = slotBack(at, back);
+            if (slot >= 0) {
+                sum += ring[slot];
+            }
+        }
+        return sum;
+    }
+}
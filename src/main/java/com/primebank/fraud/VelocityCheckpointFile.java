@@ -0,0 +1,142 @@
+package com.primebank.fraud;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time copy of the velocity store, read back through a memory map.
+ *
+ * <pre>
+ * int   magic ('FVC1')
+ * int   payload length
+ * long  CRC32 of payload
+ * payload:
+ *   int  first log segment not covered by this checkpoint
+ *   long highest journal seq at checkpoint time
+ *   n x (short key length, key UTF-8 bytes, window)   see CardVelocityWindow.writeTo
+ *   short -1
+ * </pre>
+ *
+ * Written to a temp file, forced and atomically renamed, like the rule
+ * snapshot file.
+ */
+final class VelocityCheckpointFile {
+
+    private static final int MAGIC = 0x46564331; // "FVC1"
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+
+    interface Loader {
+        void load(String cardKey, CardVelocityWindow window);
+    }
+
+    static final class Header {
+        final int logSegment;
+        final long maxSeq;
+
+        Header(int logSegment, long maxSeq) {
+            this.logSegment = logSegment;
+            this.maxSeq = maxSeq;
+        }
+    }
+
+    private VelocityCheckpointFile() {
+    }
+
+    /**
+     * Write a checkpoint from {@code chunkCount} pre-serialized chunks of
+     * card records (one per stripe), so no stripe lock is held during I/O.
+     */
+    static void write(Path file, int logSegment, long maxSeq, int chunkCount, IntFunction<byte[]> chunks)
+            throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            CRC32 crc = new CRC32();
+            long length = 0;
+            ch.position(HEADER_BYTES);
+
+            ByteBuffer start = ByteBuffer.allocate(4 + 8).putInt(logSegment).putLong(maxSeq);
+            length += write(ch, crc, start.flip());
+            for (int i = 0; i < chunkCount; i++) {
+                byte[] chunk = chunks.apply(i);
+                length += write(ch, crc, ByteBuffer.wrap(chunk));
+            }
+            length += write(ch, crc, ByteBuffer.allocate(2).putShort((short) -1).flip());
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("velocity checkpoint too large: " + length + " bytes");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt((int) length).putLong(crc.getValue()).flip();
+            ch.write(header, 0);
+            ch.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load every card of the checkpoint.
+     * @return the header, or null if there is no checkpoint
+     */
+    static Header read(Path file, Loader loader) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) {
+                throw new IllegalStateException("not a velocity checkpoint");
+            }
+            int length = buf.getInt();
+            long expectedCrc = buf.getLong();
+            if (length < 0 || length > buf.remaining()) {
+                throw new IllegalStateException("truncated velocity checkpoint");
+            }
+            ByteBuffer payload = buf.slice();
+            payload.limit(length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                throw new IllegalStateException("velocity checkpoint checksum mismatch");
+            }
+
+            Header header = new Header(payload.getInt(), payload.getLong());
+            byte[] key = new byte[256];
+            while (true) {
+                int keyLength = payload.getShort();
+                if (keyLength < 0) {
+                    break;
+                }
+                if (keyLength > key.length) {
+                    key = new byte[keyLength];
+                }
+                payload.get(key, 0, keyLength);
+                loader.load(new String(key, 0, keyLength, StandardCharsets.UTF_8),
+                    CardVelocityWindow.readFrom(payload));
+            }
+            return header;
+        }
+    }
+
+    private static int write(FileChannel ch, CRC32 crc, ByteBuffer buf) throws IOException {
+        crc.update(buf.duplicate());
+        int n = buf.remaining();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        return n;
+    }
+}
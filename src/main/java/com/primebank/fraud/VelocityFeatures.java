@@ -0,0 +1,41 @@
+package com.primebank.fraud;
+
+/** Per-card window aggregates computed by {@link VelocityStore}, including the current transaction. */
+public final class VelocityFeatures {
+
+    public static final VelocityFeatures NONE = new VelocityFeatures(0, 0, 0, 0, 0);
+
+    private final int txnCount5;
+    private final double txnAmount5;
+    private final int txnCount30;
+    private final double txnAmount30;
+    private final int mcc6011Count1hr;
+
+    VelocityFeatures(int txnCount5, double txnAmount5, int txnCount30, double txnAmount30, int mcc6011Count1hr) {
+        this.txnCount5 = txnCount5;
+        this.txnAmount5 = txnAmount5;
+        this.txnCount30 = txnCount30;
+        this.txnAmount30 = txnAmount30;
+        this.mcc6011Count1hr = mcc6011Count1hr;
+    }
+
+    public int getTxnCount5() {
+        return txnCount5;
+    }
+
+    public double getTxnAmount5() {
+        return txnAmount5;
+    }
+
+    public int getTxnCount30() {
+        return txnCount30;
+    }
+
+    public double getTxnAmount30() {
+        return txnAmount30;
+    }
+
+    public int getMcc6011Count1hr() {
+        return mcc6011Count1hr;
+    }
+}
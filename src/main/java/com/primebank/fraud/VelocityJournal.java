@@ -0,0 +1,242 @@
+package com.primebank.fraud;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only change log of velocity events in pre-sized, memory-mapped
+ * segment files ({@code velocity-000042.log}).
+ *
+ * Appends reserve space with a CAS and copy the record into the mapping;
+ * there is no fsync on the request path. A record is
+ *
+ * <pre>
+ * int    length of the rest (written last: 0 = not committed)
+ * int    CRC32 of the payload
+ * long   seq, long eventMillis, double amount, byte flags,
+ * short  key length, key UTF-8 bytes
+ * </pre>
+ *
+ * Replay stops at the first uncommitted or corrupt record of a segment.
+ * Old segments are deleted once a checkpoint covers them.
+ */
+final class VelocityJournal {
+
+    private static final String PREFIX = "velocity-";
+    private static final String SUFFIX = ".log";
+    private static final int RECORD_HEADER = 4 + 4;
+    private static final int FIXED_PAYLOAD = 8 + 8 + 8 + 1 + 2;
+    static final int FLAG_CASH = 1;
+
+    interface Replayer {
+        void replay(String cardKey, long seq, long eventMillis, double amount, boolean cash);
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path file;
+        final MappedByteBuffer buf;
+        final AtomicInteger tail = new AtomicInteger();
+
+        Segment(int id, Path file, MappedByteBuffer buf) {
+            this.id = id;
+            this.file = file;
+            this.buf = buf;
+        }
+
+        /** @return the record offset, or -1 if the segment is full */
+        int reserve(int bytes) {
+            while (true) {
+                int pos = tail.get();
+                if (pos + bytes > buf.capacity()) {
+                    return -1;
+                }
+                if (tail.compareAndSet(pos, pos + bytes)) {
+                    return pos;
+                }
+            }
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private volatile Segment current;
+
+    VelocityJournal(Path dir, int segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Replay every segment with id {@code >= fromSegment}, then open a fresh
+     * segment for new appends. Must run before the first append.
+     * @return number of records replayed
+     */
+    long recover(int fromSegment, Replayer replayer) throws IOException {
+        Files.createDirectories(dir);
+        int maxId = fromSegment - 1;
+        long records = 0;
+        for (Path file : listSegments()) {
+            int id = segmentId(file);
+            maxId = Math.max(maxId, id);
+            if (id < fromSegment) {
+                continue;
+            }
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                records += replaySegment(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), replayer);
+            }
+            // Replayed segments stay until the next checkpoint covers them
+            segments.add(new Segment(id, file, null));
+        }
+        current = openSegment(maxId + 1);
+        return records;
+    }
+
+    void append(String cardKey, long seq, long eventMillis, double amount, boolean cash) {
+        byte[] key = cardKey.getBytes(StandardCharsets.UTF_8);
+        int payload = FIXED_PAYLOAD + key.length;
+        int bytes = RECORD_HEADER + payload;
+
+        Segment seg = current;
+        int pos;
+        while ((pos = seg.reserve(bytes)) < 0) {
+            seg = rotateFrom(seg);
+        }
+
+        MappedByteBuffer buf = seg.buf;
+        int p = pos + RECORD_HEADER;
+        buf.putLong(p, seq);
+        buf.putLong(p + 8, eventMillis);
+        buf.putDouble(p + 16, amount);
+        buf.put(p + 24, (byte) (cash ? FLAG_CASH : 0));
+        buf.putShort(p + 25, (short) key.length);
+        buf.put(p + FIXED_PAYLOAD, key);
+
+        buf.putInt(pos + 4, crc(buf, p, payload));
+        // Commit marker last: replay ignores the record until this is set
+        buf.putInt(pos, payload);
+    }
+
+    /**
+     * Start a new segment; everything appended before returns is in older
+     * segments.
+     * @return id of the new segment
+     */
+    synchronized int rotate() throws IOException {
+        current = openSegment(current.id + 1);
+        return current.id;
+    }
+
+    /** Flush dirty pages of every open segment to disk. */
+    void force() {
+        for (Segment seg : segments) {
+            if (seg.buf != null) {
+                seg.buf.force();
+            }
+        }
+    }
+
+    /** Delete segments older than {@code segmentId}; a checkpoint now covers them. */
+    void deleteBefore(int segmentId) {
+        for (Segment seg : segments) {
+            if (seg.id < segmentId) {
+                segments.remove(seg);
+                try {
+                    Files.deleteIfExists(seg.file);
+                } catch (IOException e) {
+                    System.err.println("Failed to delete velocity log segment " + seg.file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    private synchronized Segment rotateFrom(Segment full) {
+        if (current == full) {
+            try {
+                current = openSegment(full.id + 1);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open velocity log segment", e);
+            }
+        }
+        return current;
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Path file = dir.resolve(String.format("%s%06d%s", PREFIX, id, SUFFIX));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Mapping extends the file with zeros, so unwritten space reads as "not committed"
+            Segment seg = new Segment(id, file, ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+            segments.add(seg);
+            return seg;
+        }
+    }
+
+    private static long replaySegment(MappedByteBuffer buf, Replayer replayer) {
+        long records = 0;
+        int pos = 0;
+        byte[] key = new byte[256];
+        while (pos + RECORD_HEADER + FIXED_PAYLOAD <= buf.capacity()) {
+            int payload = buf.getInt(pos);
+            if (payload < FIXED_PAYLOAD || pos + RECORD_HEADER + payload > buf.capacity()) {
+                break;
+            }
+            int p = pos + RECORD_HEADER;
+            if (crc(buf, p, payload) != buf.getInt(pos + 4)) {
+                break;
+            }
+
+            int keyLength = buf.getShort(p + 25);
+            if (keyLength < 0 || FIXED_PAYLOAD + keyLength != payload) {
+                break;
+            }
+            if (keyLength > key.length) {
+                key = new byte[keyLength];
+            }
+            buf.get(p + FIXED_PAYLOAD, key, 0, keyLength);
+            replayer.replay(new String(key, 0, keyLength, StandardCharsets.UTF_8),
+                buf.getLong(p), buf.getLong(p + 8), buf.getDouble(p + 16),
+                (buf.get(p + 24) & FLAG_CASH) != 0);
+            records++;
+            pos += RECORD_HEADER + payload;
+        }
+        return records;
+    }
+
+    private static int crc(MappedByteBuffer buf, int offset, int length) {
+        CRC32 crc = new CRC32();
+        // Absolute slice: safe while other threads append elsewhere in the mapping
+        crc.update(buf.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort((a, b) -> Integer.compare(segmentId(a), segmentId(b)));
+        return files;
+    }
+
+    private static int segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
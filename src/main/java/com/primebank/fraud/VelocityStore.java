@@ -0,0 +1,430 @@
+package com.primebank.fraud;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * In-process sliding-window velocity per card, so callers no longer
+ * precompute txn_count_5 / txn_amount_5 / txn_count_30 / txn_amount_30 /
+ * mcc_6011_txn_count_1hr.
+ *
+ * Cards live in a {@link StripedStore}; recording a transaction and
+ * reading its windows happen under one stripe lock acquisition, so
+ * concurrent decisions for a card never miss each other. Idle cards (no
+ * event for an hour) are dropped. The number of tracked cards is capped;
+ * once full, new cards get no server-side features until others expire.
+ *
+ * Persistence: every recorded event is appended to a memory-mapped
+ * {@link VelocityJournal} and the whole store is checkpointed periodically
+ * ({@link VelocityCheckpointFile}); a restart loads the checkpoint and
+ * replays the log written since. Nothing is fsynced on the request path.
+ * Loss window:
+ * <ul>
+ *   <li>process crash or kill: none, the mapped pages already belong to the
+ *       OS page cache (except records being written at that instant, and
+ *       any that follow one of them in the same segment);</li>
+ *   <li>host crash or power loss: at most one flush interval
+ *       ({@code fraud.velocity.persistence.flush-interval}, default 1s).</li>
+ * </ul>
+ */
+@ApplicationScoped
+public class VelocityStore {
+
+    static final String CASH_MCC = "6011";
+
+    private static final long IDLE_MILLIS = MinuteRing.SLOTS * MinuteRing.MINUTE_MILLIS;
+    private static final String CHECKPOINT_FILE = "velocity-checkpoint.bin";
+
+    @ConfigProperty(name = "fraud.velocity.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "fraud.velocity.stripes", defaultValue = "64")
+    int stripeCount;
+
+    @ConfigProperty(name = "fraud.velocity.max-cards", defaultValue = "1000000")
+    int maxCards;
+
+    @ConfigProperty(name = "fraud.velocity.persistence.enabled", defaultValue = "true")
+    boolean persistenceEnabled;
+
+    @ConfigProperty(name = "fraud.velocity.persistence.dir", defaultValue = "data/velocity")
+    String persistenceDir;
+
+    @ConfigProperty(name = "fraud.velocity.persistence.segment-mb", defaultValue = "64")
+    int segmentMb;
+
+    private StripedStore<CardVelocityWindow> cards;
+
+    // Null while persistence is disabled or broken
+    private volatile VelocityJournal journal;
+    private final AtomicLong seq = new AtomicLong();
+    private volatile Instant lastCheckpointAt;
+    private volatile long lastCheckpointMillis;
+    private volatile long recoveryMillis;
+    private volatile long replayedRecords;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder tooOld = new LongAdder();
+    private final LongAdder rejectedCards = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        // One-minute ticks; 64 slots cover the one-hour idle period
+        cards = new StripedStore<>(stripeCount, maxCards, IDLE_MILLIS, MinuteRing.MINUTE_MILLIS, 64,
+            window -> window.lastEventMillis);
+    }
+
+    /**
+     * Record a transaction and return the card's windows including it.
+     * @return NONE when disabled, without a card key, or when the store is full
+     */
+    public VelocityFeatures recordAndRead(String cardKey, long eventMillis, double amount, String mccCode) {
+        if (!enabled || cardKey == null) {
+            return VelocityFeatures.NONE;
+        }
+        boolean cash = CASH_MCC.equals(mccCode);
+
+        StripedStore.Stripe<CardVelocityWindow> stripe = cards.stripeFor(cardKey);
+        CardVelocityWindow created = null;
+        VelocityFeatures features;
+        stripe.lock.lock();
+        try {
+            CardVelocityWindow window = stripe.entries.get(cardKey);
+            if (window == null) {
+                if (!cards.hasRoom(stripe)) {
+                    rejectedCards.increment();
+                    return VelocityFeatures.NONE;
+                }
+                window = new CardVelocityWindow(eventMillis);
+                stripe.entries.put(cardKey, window);
+                created = window;
+            }
+            if (window.record(eventMillis, amount, cash)) {
+                recorded.increment();
+                window.lastSeq = seq.incrementAndGet();
+                journal(cardKey, window.lastSeq, eventMillis, amount, cash);
+            } else {
+                tooOld.increment();
+            }
+            features = window.read(eventMillis);
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (created != null) {
+            cards.track(cardKey, created);
+        }
+        return features;
+    }
+
+    // Appended under the stripe lock, so each card's records are in seq order
+    private void journal(String cardKey, long eventSeq, long eventMillis, double amount, boolean cash) {
+        VelocityJournal j = journal;
+        if (j == null) {
+            return;
+        }
+        try {
+            j.append(cardKey, eventSeq, eventMillis, amount, cash);
+        } catch (RuntimeException | InternalError e) {
+            // e.g. disk full; keep deciding, just stop persisting
+            journal = null;
+            System.err.println("Velocity journal disabled after write failure: " + e);
+        }
+    }
+
+    /** Read without recording, e.g. for as-of re-scoring. */
+    public VelocityFeatures read(String cardKey, long atMillis) {
+        if (!enabled || cardKey == null) {
+            return VelocityFeatures.NONE;
+        }
+        StripedStore.Stripe<CardVelocityWindow> stripe = cards.stripeFor(cardKey);
+        stripe.lock.lock();
+        try {
+            CardVelocityWindow window = stripe.entries.get(cardKey);
+            return window == null ? VelocityFeatures.NONE : window.read(atMillis);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    void onStart(@Observes StartupEvent ev) {
+        if (persistenceEnabled) {
+            recover();
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent ev) {
+        checkpoint();
+        VelocityJournal j = journal;
+        if (j != null) {
+            j.force();
+        }
+    }
+
+    /** Load the last checkpoint and replay the log written after it. */
+    private synchronized void recover() {
+        long start = System.currentTimeMillis();
+        Path dir = Paths.get(persistenceDir);
+        long now = start;
+
+        VelocityCheckpointFile.Header header = null;
+        try {
+            header = VelocityCheckpointFile.read(dir.resolve(CHECKPOINT_FILE), (cardKey, window) -> {
+                if (!cards.isIdle(window, now)) {
+                    restore(cardKey, window);
+                }
+            });
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable velocity checkpoint: " + e.getMessage());
+            cards.clear();
+        }
+        if (header != null) {
+            seq.set(header.maxSeq);
+        }
+
+        try {
+            VelocityJournal j = new VelocityJournal(dir, segmentMb * 1024 * 1024);
+            replayedRecords = j.recover(header == null ? 0 : header.logSegment,
+                (cardKey, eventSeq, eventMillis, amount, cash) -> replay(cardKey, eventSeq, eventMillis, amount, cash, now));
+            journal = j;
+        } catch (Exception e) {
+            System.err.println("Velocity persistence disabled: " + e.getMessage());
+        }
+
+        cards.trackAll();
+        recoveryMillis = System.currentTimeMillis() - start;
+        System.err.println("Recovered velocity state for " + cards.size() + " cards (" + replayedRecords
+            + " log records replayed) in " + recoveryMillis + " ms");
+    }
+
+    private void restore(String cardKey, CardVelocityWindow window) {
+        StripedStore.Stripe<CardVelocityWindow> stripe = cards.stripeFor(cardKey);
+        if (cards.hasRoom(stripe)) {
+            stripe.entries.put(cardKey, window);
+        }
+    }
+
+    private void replay(String cardKey, long eventSeq, long eventMillis, double amount, boolean cash, long now) {
+        if (eventSeq > seq.get()) {
+            seq.set(eventSeq);
+        }
+        if (eventMillis + IDLE_MILLIS <= now) {
+            return;
+        }
+        StripedStore.Stripe<CardVelocityWindow> stripe = cards.stripeFor(cardKey);
+        CardVelocityWindow window = stripe.entries.get(cardKey);
+        if (window == null) {
+            if (!cards.hasRoom(stripe)) {
+                return;
+            }
+            window = new CardVelocityWindow(eventMillis);
+            stripe.entries.put(cardKey, window);
+        } else if (eventSeq <= window.lastSeq) {
+            // Already in the checkpoint
+            return;
+        }
+        window.record(eventMillis, amount, cash);
+        window.lastSeq = eventSeq;
+    }
+
+    @Scheduled(every = "{fraud.velocity.persistence.flush-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void flushJournal() {
+        VelocityJournal j = journal;
+        if (j != null) {
+            j.force();
+        }
+    }
+
+    @Scheduled(every = "{fraud.velocity.persistence.checkpoint-interval}",
+               delayed = "{fraud.velocity.persistence.checkpoint-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledCheckpoint() {
+        checkpoint();
+    }
+
+    /**
+     * Write a checkpoint and drop the log segments it covers. Each stripe is
+     * copied under its lock and written to disk after the lock is released.
+     */
+    synchronized void checkpoint() {
+        VelocityJournal j = journal;
+        if (j == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            // Every event in older segments is in memory once the stripes are copied
+            int segment = j.rotate();
+            long maxSeq = seq.get();
+            VelocityCheckpointFile.write(Paths.get(persistenceDir, CHECKPOINT_FILE), segment, maxSeq,
+                cards.stripeCount(), i -> serialize(cards.stripe(i), start));
+            j.deleteBefore(segment);
+
+            lastCheckpointAt = Instant.now();
+            lastCheckpointMillis = System.currentTimeMillis() - start;
+
+        } catch (Exception e) {
+            System.err.println("Failed to write velocity checkpoint: " + e.getMessage());
+        }
+    }
+
+    private byte[] serialize(StripedStore.Stripe<CardVelocityWindow> stripe, long now) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        stripe.lock.lock();
+        try {
+            for (Map.Entry<String, CardVelocityWindow> e : stripe.entries.entrySet()) {
+                CardVelocityWindow window = e.getValue();
+                if (cards.isIdle(window, now)) {
+                    continue;
+                }
+                byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(key.length);
+                out.write(key);
+                window.writeTo(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize velocity stripe", e);
+        } finally {
+            stripe.lock.unlock();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Remove the cards {@code moving} selects and serialize them for another
+     * node: n x (short key length, key UTF-8 bytes, window), then short -1.
+     */
+    byte[] exportCards(Predicate<String> moving) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (int i = 0; i < cards.stripeCount(); i++) {
+                StripedStore.Stripe<CardVelocityWindow> stripe = cards.stripe(i);
+                stripe.lock.lock();
+                try {
+                    Iterator<Map.Entry<String, CardVelocityWindow>> it = stripe.entries.entrySet().iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<String, CardVelocityWindow> e = it.next();
+                        if (moving.test(e.getKey())) {
+                            byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                            out.writeShort(key.length);
+                            out.write(key);
+                            e.getValue().writeTo(out);
+                            it.remove();
+                        }
+                    }
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+            out.writeShort(-1);
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize velocity handoff", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Merge cards serialized by {@link #exportCards} into the store. Cards
+     * already present (events that arrived after the ownership change) are
+     * merged bucket by bucket.
+     * @return number of cards imported
+     */
+    int importCards(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        long now = System.currentTimeMillis();
+        int imported = 0;
+        byte[] key = new byte[256];
+        while (true) {
+            int keyLength = in.getShort();
+            if (keyLength < 0) {
+                break;
+            }
+            if (keyLength > key.length) {
+                key = new byte[keyLength];
+            }
+            in.get(key, 0, keyLength);
+            String cardKey = new String(key, 0, keyLength, StandardCharsets.UTF_8);
+            CardVelocityWindow incoming = CardVelocityWindow.readFrom(in);
+            if (cards.isIdle(incoming, now)) {
+                continue;
+            }
+
+            StripedStore.Stripe<CardVelocityWindow> stripe = cards.stripeFor(cardKey);
+            boolean created = false;
+            stripe.lock.lock();
+            try {
+                CardVelocityWindow window = stripe.entries.get(cardKey);
+                if (window != null) {
+                    window.merge(incoming);
+                } else if (cards.hasRoom(stripe)) {
+                    window = incoming;
+                    stripe.entries.put(cardKey, window);
+                    created = true;
+                } else {
+                    rejectedCards.increment();
+                    continue;
+                }
+                // Sequence numbers are per node: local log records up to now are already in the window
+                window.lastSeq = seq.get();
+            } finally {
+                stripe.lock.unlock();
+            }
+            if (created) {
+                cards.track(cardKey, incoming);
+            }
+            imported++;
+        }
+        return imported;
+    }
+
+    @Scheduled(every = "{fraud.velocity.expiry-interval}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void expireIdleCards() {
+        cards.expireIdle(System.currentTimeMillis());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("cards", cards.size());
+        stats.put("max_cards", cards.capacity());
+        stats.put("stripes", cards.stripeCount());
+        stats.put("recorded", recorded.sum());
+        stats.put("too_old", tooOld.sum());
+        stats.put("rejected_cards", rejectedCards.sum());
+        stats.put("expired_cards", cards.expired());
+        VelocityJournal j = journal;
+        stats.put("persistence", j != null);
+        stats.put("journal_segments", j == null ? 0 : j.segmentCount());
+        stats.put("last_checkpoint", lastCheckpointAt == null ? null : lastCheckpointAt.toString());
+        stats.put("last_checkpoint_ms", lastCheckpointMillis);
+        stats.put("recovery_ms", recoveryMillis);
+        stats.put("replayed_records", replayedRecords);
+        return stats;
+    }
+}
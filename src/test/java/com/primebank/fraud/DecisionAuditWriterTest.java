@@ -0,0 +1,310 @@
+package com.primebank.fraud;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link DecisionAuditWriter} against an embedded H2 database: batching,
+ * column limits, row quarantine, outage spill and replay, and the
+ * request-path overflow.
+ */
+class DecisionAuditWriterTest {
+
+    private static final String DDL =
+        "CREATE TABLE fraud_decision_audit (" +
+        " audit_id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+        " model VARCHAR(16) NOT NULL," +
+        " transaction_id VARCHAR(64)," +
+        " decision VARCHAR(32) CHECK (decision <> 'POISON')," +
+        " reason VARCHAR(256)," +
+        " rules_version BIGINT NOT NULL," +
+        " fast_path BOOLEAN NOT NULL," +
+        " as_of BOOLEAN NOT NULL," +
+        " decided_at TIMESTAMP NOT NULL," +
+        " inputs CLOB)";
+
+    private static final Map<String, Object> INPUTS = Map.of("txn_amount", 12.5, "txn_channel", "POS");
+
+    @TempDir
+    Path spillDir;
+
+    private JdbcDataSource database;
+    private final AtomicBoolean down = new AtomicBoolean();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void createTable() throws Exception {
+        database = new JdbcDataSource();
+        database.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection con = database.getConnection(); Statement st = con.createStatement()) {
+            st.execute(DDL);
+        }
+    }
+
+    @Test
+    void insertsEveryRowInBatches() throws Exception {
+        DecisionAuditWriter writer = writer(database, 10_000, 100, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        writer.start();
+        for (int i = 0; i < 1_234; i++) {
+            submit(writer, "T" + i, "NORMAL", "OK");
+        }
+        writer.close();
+
+        assertEquals(1_234, count("1 = 1"));
+        assertEquals(1_234L, writer.stats().get("inserted"));
+        assertTrue((Long) writer.stats().get("batches") >= 13);
+    }
+
+    @Test
+    void cutsTextToTheColumnWidths() throws Exception {
+        DecisionAuditWriter writer = writer(database, 100, 10, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        writer.start();
+        submit(writer, "T".repeat(100), "NORMAL", "R".repeat(300));
+        writer.close();
+
+        try (Connection con = database.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT transaction_id, reason FROM fraud_decision_audit")) {
+            assertTrue(rs.next());
+            assertEquals(DecisionAuditWriter.TRANSACTION_ID_MAX, rs.getString(1).length());
+            assertEquals(DecisionAuditWriter.REASON_MAX, rs.getString(2).length());
+        }
+        assertEquals(2L, writer.stats().get("truncated"));
+    }
+
+    @Test
+    void quarantinesARejectedRowAndKeepsTheRestOfItsBatch() throws Exception {
+        DecisionAuditWriter writer = writer(database, 1_000, 100, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        writer.start();
+        for (int i = 0; i < 100; i++) {
+            submit(writer, "T" + i, i == 37 ? "POISON" : "NORMAL", "OK");
+        }
+        writer.close();
+
+        assertEquals(99, count("1 = 1"));
+        assertEquals(0, count("transaction_id = 'T37'"));
+        assertEquals(1L, writer.stats().get("quarantined"));
+        assertEquals(1, Files.readAllLines(spillDir.resolve(DecisionAuditWriter.QUARANTINE_FILE)).size());
+        assertFalse(Files.exists(spillDir.resolve(DecisionAuditWriter.SPILL_FILE)));
+    }
+
+    @Test
+    void spillsDuringAnOutageAndReplaysEachRowOnce() throws Exception {
+        DecisionAuditWriter writer = writer(flaky(database), 10_000, 50, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        writer.start();
+        down.set(true);
+        for (int i = 0; i < 500; i++) {
+            submit(writer, "T" + i, "NORMAL", "OK");
+        }
+        await(() -> (Long) writer.stats().get("spilled") == 500);
+        assertEquals(0, count("1 = 1"));
+
+        down.set(false);
+        await(() -> (Long) writer.stats().get("replayed") == 500);
+        writer.close();
+
+        assertEquals(500, count("1 = 1"));
+        try (Connection con = database.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(DISTINCT transaction_id) FROM fraud_decision_audit")) {
+            rs.next();
+            assertEquals(500, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void replaysSpilledRowsUnderSteadyTraffic() throws Exception {
+        DecisionAuditWriter writer = writer(flaky(database), 10_000, 50, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        writer.start();
+        down.set(true);
+        for (int i = 0; i < 500; i++) {
+            submit(writer, "S" + i, "NORMAL", "OK");
+        }
+        await(() -> (Long) writer.stats().get("spilled") == 500);
+
+        down.set(false);
+        // Never 100 ms without a decision
+        try (Traffic traffic = new Traffic(writer)) {
+            await(() -> (Long) writer.stats().get("replayed") == 500);
+        }
+        writer.close();
+
+        assertEquals(500, count("transaction_id LIKE 'S%'"));
+        assertFalse(Files.exists(spillDir.resolve(DecisionAuditWriter.SPILL_FILE)));
+    }
+
+    @Test
+    void replaysTheSpillFileOfAnEarlierProcess() throws Exception {
+        DecisionAuditWriter earlier = writer(flaky(database), 10_000, 50, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        earlier.start();
+        down.set(true);
+        for (int i = 0; i < 120; i++) {
+            submit(earlier, "S" + i, "NORMAL", "OK");
+        }
+        earlier.close();
+        assertTrue(Files.exists(spillDir.resolve(DecisionAuditWriter.SPILL_FILE)));
+
+        down.set(false);
+        DecisionAuditWriter writer = writer(database, 10_000, 50, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        writer.start();
+        try (Traffic traffic = new Traffic(writer)) {
+            await(() -> (Long) writer.stats().get("replayed") == 120);
+        }
+        writer.close();
+
+        assertEquals(120, count("transaction_id LIKE 'S%'"));
+        assertEquals(0L, writer.stats().get("spilled"));
+    }
+
+    @Test
+    void dropsRatherThanSpillingPastTheCap() throws Exception {
+        DecisionAuditWriter writer = writer(flaky(database), 10_000, 10, DecisionAuditWriter.Overflow.SPILL, 4_096);
+        writer.start();
+        down.set(true);
+        for (int i = 0; i < 200; i++) {
+            submit(writer, "T" + i, "NORMAL", "OK");
+        }
+        await(() -> (Long) writer.stats().get("spilled") + (Long) writer.stats().get("dropped") == 200);
+        writer.close();
+
+        assertTrue((Long) writer.stats().get("dropped") > 0);
+        assertTrue(Files.size(spillDir.resolve(DecisionAuditWriter.SPILL_FILE)) <= 4_096);
+    }
+
+    @Test
+    void fullQueueDropsOnTheCallerWithoutTouchingTheDisk() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean stall = new AtomicBoolean();
+        DataSource stalled = proxy(database, () -> {
+            if (stall.get()) {
+                release.await();
+            }
+        });
+        DecisionAuditWriter writer = writer(stalled, 10, 1, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        writer.start();
+        stall.set(true);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            submit(writer, "T" + i, "NORMAL", "OK");
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue((Long) writer.stats().get("dropped_queue_full") > 900);
+        assertFalse(Files.exists(spillDir.resolve(DecisionAuditWriter.SPILL_FILE)));
+        assertTrue(elapsedMillis < 1_000, "submit blocked for " + elapsedMillis + " ms");
+        release.countDown();
+        writer.close();
+    }
+
+    @Test
+    void refusesToStartWithoutTheTable() throws Exception {
+        try (Connection con = database.getConnection(); Statement st = con.createStatement()) {
+            st.execute("DROP TABLE fraud_decision_audit");
+        }
+        DecisionAuditWriter writer = writer(database, 10, 10, DecisionAuditWriter.Overflow.SPILL, 1 << 20);
+        assertThrows(IllegalStateException.class, writer::start);
+    }
+
+    private DecisionAuditWriter writer(DataSource dataSource, int queueCapacity, int batchSize,
+                                       DecisionAuditWriter.Overflow overflow, long spillMaxBytes) {
+        return new DecisionAuditWriter(dataSource, objectMapper, queueCapacity, batchSize, 20,
+            overflow, spillDir, spillMaxBytes);
+    }
+
+    private static void submit(DecisionAuditWriter writer, String transactionId, String decision, String reason) {
+        writer.submit(DecisionRecord.MODEL_CARD, (byte) 0, 1, transactionId, decision, reason, INPUTS);
+    }
+
+    private int count(String where) throws SQLException {
+        try (Connection con = database.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM fraud_decision_audit WHERE " + where)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /** The database, unreachable while {@link #down} is set. */
+    private DataSource flaky(DataSource target) {
+        return proxy(target, () -> {
+            if (down.get()) {
+                throw new SQLException("Connection refused", "08001");
+            }
+        });
+    }
+
+    /** A decision every millisecond until closed. */
+    private static final class Traffic implements AutoCloseable {
+        private final AtomicBoolean stop = new AtomicBoolean();
+        private final Thread thread;
+
+        Traffic(DecisionAuditWriter writer) {
+            thread = new Thread(() -> {
+                for (int i = 0; !stop.get(); i++) {
+                    submit(writer, "L" + i, "NORMAL", "OK");
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            stop.set(true);
+            thread.join();
+        }
+    }
+
+    private interface BeforeConnect {
+        void run() throws Exception;
+    }
+
+    private static DataSource proxy(DataSource target, BeforeConnect beforeConnect) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+            (p, method, args) -> {
+                if (method.getName().equals("getConnection")) {
+                    beforeConnect.run();
+                }
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition not met within 30 s");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.primebank.fraud;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link DecisionJournal} restarts: sequence numbers continue across
+ * restarts, and readers stop at a record that was never committed.
+ */
+class DecisionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void continuesTheSequenceAfterARestart() throws Exception {
+        DecisionJournal journal = start();
+        append(journal, "T1");
+        append(journal, "T2");
+        journal.onStop(null);
+
+        journal = start();
+        append(journal, "T3");
+        journal.onStop(null);
+
+        assertEquals(List.of(1L, 2L, 3L), seqs());
+    }
+
+    @Test
+    void continuesTheSequenceAfterARestartWithoutDecisions() throws Exception {
+        DecisionJournal journal = start();
+        append(journal, "T1");
+        journal.onStop(null);
+        // Leaves an empty newest segment behind
+        start().onStop(null);
+
+        journal = start();
+        append(journal, "T2");
+        journal.onStop(null);
+
+        assertEquals(List.of(1L, 2L), seqs());
+    }
+
+    @Test
+    void readsUpToAnUncommittedRecord() throws Exception {
+        DecisionJournal journal = start();
+        append(journal, "T1");
+        append(journal, "T2");
+        journal.onStop(null);
+        // Crash before the second record's length was written
+        Path segment = DecisionJournalReader.segmentFile(dir, 1);
+        int second = DecisionJournalReader.SEGMENT_HEADER + DecisionRecord.RECORD_HEADER + firstPayload(segment);
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(4), second);
+        }
+
+        assertEquals(List.of(1L), seqs());
+
+        journal = start();
+        append(journal, "T3");
+        journal.onStop(null);
+
+        assertEquals(List.of(1L, 2L), seqs());
+    }
+
+    private DecisionJournal start() {
+        DecisionJournal journal = new DecisionJournal();
+        journal.enabled = true;
+        journal.dir = dir.toString();
+        journal.segmentMb = 1;
+        journal.retentionHours = 24;
+        journal.maxSegments = 100;
+        journal.queueCapacity = 1_000;
+        journal.flushIntervalMillis = 100;
+        journal.onStart(null);
+        return journal;
+    }
+
+    private static void append(DecisionJournal journal, String transactionId) {
+        journal.append(DecisionRecord.MODEL_CARD, (byte) 0, 1, transactionId, "NORMAL", "OK",
+            Map.of("txn_amount", 12.5));
+    }
+
+    private List<Long> seqs() throws Exception {
+        List<Long> seqs = new ArrayList<>();
+        DecisionJournalReader.read(dir, 0, record -> seqs.add(record.getSeq()));
+        return seqs;
+    }
+
+    private static int firstPayload(Path segment) throws Exception {
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            ch.read(length, DecisionJournalReader.SEGMENT_HEADER);
+            return length.flip().getInt();
+        }
+    }
+}
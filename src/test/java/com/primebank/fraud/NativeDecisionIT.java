@@ -0,0 +1,55 @@
+package com.primebank.fraud;
+
+import io.quarkus.test.junit.QuarkusIntegrationTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Runs against the packaged application; {@code ./mvnw verify -Dnative}
+ * points it at the native binary. Checks that the DMN models the two
+ * orchestrators evaluate are in the image and give a verdict. Needs what
+ * the benchmark needs: MSSQL, or a last-known-good rule snapshot.
+ */
+@QuarkusIntegrationTest
+class NativeDecisionIT {
+
+    private static final String MYPRIME_LOGIN = "{"
+        + "\"txn_id\": \"IT_MYPRIME_001\","
+        + "\"user_id\": \"IT_USER_001\","
+        + "\"login_timestamp\": \"2026-01-13T14:30:00Z\","
+        + "\"device_id\": \"IT_DEVICE_001\","
+        + "\"ml_fraud_score_myprime\": 0.1"
+        + "}";
+
+    @Test
+    void cardDecisionEvaluatesTheCardModel() throws Exception {
+        given()
+            .contentType(ContentType.JSON)
+            .body(Files.readString(Path.of("bench/card-decision.json")))
+        .when()
+            .post("/CardFraudDecision")
+        .then()
+            .statusCode(200)
+            .body("transaction_id", equalTo("BENCH_001"))
+            .body("fraud_decision", notNullValue());
+    }
+
+    @Test
+    void myPrimeDecisionEvaluatesTheMyPrimeModel() {
+        given()
+            .contentType(ContentType.JSON)
+            .body(MYPRIME_LOGIN)
+        .when()
+            .post("/fraud/myprime/decision")
+        .then()
+            .statusCode(200)
+            .body("FinalDecision", notNullValue());
+    }
+}
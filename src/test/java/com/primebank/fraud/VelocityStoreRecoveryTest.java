@@ -0,0 +1,136 @@
+package com.primebank.fraud;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link VelocityStore} restarts over its change log and checkpoint. A crash
+ * is a store that is dropped without {@code onStop}: its mapped log pages
+ * are already in the page cache, so the next store sees them.
+ */
+class VelocityStoreRecoveryTest {
+
+    private static final String CARD = "CARD-1";
+    // int length + int CRC + seq, millis, amount, flags, key length + key bytes
+    private static final int RECORD_BYTES = 4 + 4 + 8 + 8 + 8 + 1 + 2 + CARD.length();
+
+    @TempDir
+    Path dir;
+
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    void replaysTheLogAfterACrash() {
+        VelocityStore store = start();
+        store.recordAndRead(CARD, now - 3_000, 10, "5411");
+        store.recordAndRead(CARD, now - 2_000, 20, VelocityStore.CASH_MCC);
+        store.recordAndRead(CARD, now - 1_000, 30, "5411");
+
+        VelocityStore recovered = start();
+
+        VelocityFeatures features = recovered.read(CARD, now);
+        assertEquals(3, features.getTxnCount5());
+        assertEquals(60.0, features.getTxnAmount5());
+        assertEquals(1, features.getMcc6011Count1hr());
+        assertEquals(3L, recovered.stats().get("replayed_records"));
+        assertEquals(4, recovered.recordAndRead(CARD, now, 40, "5411").getTxnCount5());
+    }
+
+    @Test
+    void countsEachEventOnceAcrossCheckpointAndLog() {
+        VelocityStore store = start();
+        store.recordAndRead(CARD, now - 4_000, 10, "5411");
+        store.recordAndRead(CARD, now - 3_000, 10, "5411");
+        store.checkpoint();
+        store.recordAndRead(CARD, now - 2_000, 10, "5411");
+        store.recordAndRead(CARD, now - 1_000, 10, "5411");
+
+        VelocityStore recovered = start();
+
+        assertEquals(4, recovered.read(CARD, now).getTxnCount5());
+        assertEquals(40.0, recovered.read(CARD, now).getTxnAmount5());
+        assertEquals(2L, recovered.stats().get("replayed_records"));
+    }
+
+    @Test
+    void keepsEventsRecordedAfterRestartingFromACheckpoint() {
+        VelocityStore store = start();
+        store.recordAndRead(CARD, now - 3_000, 10, "5411");
+        store.recordAndRead(CARD, now - 2_000, 10, "5411");
+        store.onStop(null);
+
+        // Sequence numbers continue after the checkpoint, so this event is not taken as already in it
+        start().recordAndRead(CARD, now - 1_000, 10, "5411");
+
+        assertEquals(3, start().read(CARD, now).getTxnCount5());
+    }
+
+    @Test
+    void stopsReplayAtATornRecord() throws Exception {
+        VelocityStore store = start();
+        store.recordAndRead(CARD, now - 3_000, 10, "5411");
+        store.recordAndRead(CARD, now - 2_000, 10, "5411");
+        store.recordAndRead(CARD, now - 1_000, 10, "5411");
+        // Third record half written: its amount no longer matches the CRC
+        overwrite(dir.resolve("velocity-000000.log"), 2 * RECORD_BYTES + 8 + 16, 99.0);
+
+        VelocityStore recovered = start();
+
+        assertEquals(2, recovered.read(CARD, now).getTxnCount5());
+        assertEquals(2L, recovered.stats().get("replayed_records"));
+        assertEquals(3, recovered.recordAndRead(CARD, now, 10, "5411").getTxnCount5());
+    }
+
+    @Test
+    void startsFromTheLogWhenTheCheckpointIsCorrupt() throws Exception {
+        VelocityStore store = start();
+        store.recordAndRead(CARD, now - 3_000, 10, "5411");
+        store.checkpoint();
+        store.recordAndRead(CARD, now - 2_000, 10, "5411");
+        overwrite(dir.resolve("velocity-checkpoint.bin"), 20, 0.0);
+
+        VelocityStore recovered = start();
+
+        // The segments the checkpoint covered are gone; the newer log still replays
+        assertEquals(1, recovered.read(CARD, now).getTxnCount5());
+        assertEquals(true, recovered.stats().get("persistence"));
+    }
+
+    @Test
+    void dropsCardsIdleForAnHour() {
+        VelocityStore store = start();
+        store.recordAndRead("IDLE", now - 2 * 3_600_000L, 10, "5411");
+        store.recordAndRead(CARD, now - 1_000, 10, "5411");
+
+        VelocityStore recovered = start();
+
+        assertEquals(1L, recovered.stats().get("cards"));
+        assertEquals(VelocityFeatures.NONE, recovered.read("IDLE", now));
+    }
+
+    private VelocityStore start() {
+        VelocityStore store = new VelocityStore();
+        store.enabled = true;
+        store.stripeCount = 4;
+        store.maxCards = 1_000;
+        store.persistenceEnabled = true;
+        store.persistenceDir = dir.toString();
+        store.segmentMb = 1;
+        store.init();
+        store.onStart(null);
+        return store;
+    }
+
+    private static void overwrite(Path file, long offset, double value) throws Exception {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(8).putDouble(value).flip(), offset);
+        }
+    }
+}